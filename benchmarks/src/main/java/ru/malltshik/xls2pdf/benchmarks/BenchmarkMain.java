@@ -0,0 +1,27 @@
+package ru.malltshik.xls2pdf.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks chosen on the command line, all of them by default, with the allocation rate of the
+ * GC profiler and the peak heap of {@link PeakMemoryProfiler} added to the throughput. Takes the JMH
+ * command line options, e.g. {@code -p rows=100000 -p format=XLSX StageBenchmark.content}.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .addProfiler(PeakMemoryProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,142 @@
+package ru.malltshik.xls2pdf.benchmarks;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.FontFactory;
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.pdf.PdfWriter;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.*;
+import ru.malltshik.xls2pdf.converter.ConversionEngine;
+import ru.malltshik.xls2pdf.converter.ConversionOptions;
+import ru.malltshik.xls2pdf.converter.OutputFormat;
+import ru.malltshik.xls2pdf.converter.Xls2HtmlConverter;
+import ru.malltshik.xls2pdf.formula.FormulaEvaluationPolicy;
+import ru.malltshik.xls2pdf.html.MarkupWriter;
+import ru.malltshik.xls2pdf.render.*;
+import ru.malltshik.xls2pdf.stream.XlsStreamingReader;
+import ru.malltshik.xls2pdf.stream.XlsxStreamingReader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the stages of a conversion of one generated sheet, each measured on its own, and of whole
+ * conversions. The stages after loading start from the sheet model extracted once per trial:
+ * <ul>
+ * <li>{@code load}: reading the workbook file into a sheet model, with the user model or streaming</li>
+ * <li>{@code styles}: writing the css rules of the styles the sheet uses, as the HTML conversion does</li>
+ * <li>{@code content}: writing the sheet as an HTML table</li>
+ * <li>{@code pdfLayout}: laying the sheet out into a PDF with the direct backend and the default options</li>
+ * </ul>
+ * Output goes to a null stream, so writing is measured without any I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class StageBenchmark {
+
+    private static final ConversionOptions OPTIONS = ConversionOptions.defaults();
+    private static final List<Integer> SHEETS = Collections.singletonList(0);
+
+    @Param({"XLSX", "XLS"})
+    public WorkbookGenerator.Format format;
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    @Param({"10"})
+    public int columns;
+
+    @Param({"10", "200"})
+    public int styles;
+
+    @Param({"0", "0.2"})
+    public double mergedDensity;
+
+    @Param({"0", "0.2"})
+    public double formulaDensity;
+
+    @Param({"16"})
+    public int textLength;
+
+    private Path file;
+    private ExtractedWorkbook workbook;
+    private SheetModel model;
+    private ConversionEngine engine;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        file = WorkbookGenerator.defaults().withFormat(format).withRows(rows).withColumns(columns)
+                .withStyles(styles).withMergedDensity(mergedDensity).withFormulaDensity(formulaDensity)
+                .withTextLength(textLength).writeTempFile();
+        workbook = ExtractedWorkbook.extract(
+                UserModelReader.open(file.toFile(), FormulaEvaluationPolicy.EVALUATE, false),
+                Collections.singleton(0));
+        model = workbook.model(0);
+        engine = new ConversionEngine();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        workbook.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public SheetModel load() throws IOException {
+        try (WorkbookReader reader = UserModelReader.open(file.toFile(), FormulaEvaluationPolicy.EVALUATE,
+                false)) {
+            return reader.model(0);
+        }
+    }
+
+    @Benchmark
+    public SheetModel loadStreaming() throws IOException {
+        try (WorkbookReader reader = format == WorkbookGenerator.Format.XLSX
+                ? new XlsxStreamingReader(file.toFile()) : new XlsStreamingReader(file.toFile())) {
+            return reader.model(0);
+        }
+    }
+
+    @Benchmark
+    public String styles() throws IOException {
+        return Xls2HtmlConverter.styleRules(workbook, SHEETS);
+    }
+
+    @Benchmark
+    public long content() throws IOException {
+        MarkupWriter out = new MarkupWriter(new NullOutputStream());
+        model.replay(new HtmlSheetRenderer(out, model.getStyles()));
+        out.close();
+        return out.size();
+    }
+
+    @Benchmark
+    public Document pdfLayout() throws DocumentException {
+        Document doc = new Document(PageSize.A2);
+        PdfWriter.getInstance(doc, new NullOutputStream());
+        doc.open();
+        model.replay(new PdfSheetRenderer(doc, model.getStyles(), OPTIONS.getPdfFlushRows(),
+                FontFactory.getFontImp(), OPTIONS.isPrintSetup()));
+        doc.close();
+        return doc;
+    }
+
+    @Benchmark
+    public void endToEndHtml() throws IOException {
+        engine.convert(file, new NullOutputStream(), OutputFormat.HTML);
+    }
+
+    @Benchmark
+    public void endToEndPdf() throws IOException {
+        engine.convert(file, new NullOutputStream(), OutputFormat.PDF);
+    }
+}
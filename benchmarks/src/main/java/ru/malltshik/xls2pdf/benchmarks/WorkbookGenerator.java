@@ -0,0 +1,236 @@
+package ru.malltshik.xls2pdf.benchmarks;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Immutable description of a synthetic workbook of one sheet. Start from {@link #defaults()} and derive with
+ * the {@code with*} methods. The same description always generates the same cells.
+ * <p>
+ * Column {@code A} holds numbers, the other columns alternate numbers and texts, any of them replaced by a
+ * formula on column {@code A} at the formula density. Cells take the styles in turn. Merged regions are
+ * 2x2 blocks of a grid laid over the sheet, each block merged at the merged density, so they never overlap.
+ * Formulas are evaluated before writing, so readers that render cached results see the same values.
+ */
+public final class WorkbookGenerator {
+
+    public enum Format {
+        XLSX, XLS
+    }
+
+    private static final WorkbookGenerator DEFAULTS = new WorkbookGenerator(Format.XLSX, 1000, 10, 10, 0, 0,
+            16, 42);
+    private static final IndexedColors[] FILLS = {IndexedColors.WHITE, IndexedColors.LIGHT_YELLOW,
+            IndexedColors.LIGHT_GREEN, IndexedColors.LIGHT_BLUE, IndexedColors.GREY_25_PERCENT};
+    private static final BorderStyle[] BORDERS = {BorderStyle.NONE, BorderStyle.THIN, BorderStyle.MEDIUM,
+            BorderStyle.DASHED};
+    private static final HorizontalAlignment[] ALIGNMENTS = {HorizontalAlignment.GENERAL,
+            HorizontalAlignment.LEFT, HorizontalAlignment.CENTER, HorizontalAlignment.RIGHT};
+
+    private final Format format;
+    private final int rows;
+    private final int columns;
+    private final int styles;
+    private final double mergedDensity;
+    private final double formulaDensity;
+    private final int textLength;
+    private final long seed;
+
+    private WorkbookGenerator(Format format, int rows, int columns, int styles, double mergedDensity,
+                              double formulaDensity, int textLength, long seed) {
+        this.format = format;
+        this.rows = rows;
+        this.columns = columns;
+        this.styles = styles;
+        this.mergedDensity = mergedDensity;
+        this.formulaDensity = formulaDensity;
+        this.textLength = textLength;
+        this.seed = seed;
+    }
+
+    /**
+     * @return XLSX of 1000 rows by 10 columns, 10 styles, texts of 16 characters, no merged regions or formulas
+     */
+    public static WorkbookGenerator defaults() {
+        return DEFAULTS;
+    }
+
+    public WorkbookGenerator withFormat(Format format) {
+        return new WorkbookGenerator(format, rows, columns, styles, mergedDensity, formulaDensity, textLength,
+                seed);
+    }
+
+    public WorkbookGenerator withRows(int rows) {
+        if (rows < 1)
+            throw new IllegalArgumentException("Rows must be positive: " + rows);
+        return new WorkbookGenerator(format, rows, columns, styles, mergedDensity, formulaDensity, textLength,
+                seed);
+    }
+
+    public WorkbookGenerator withColumns(int columns) {
+        if (columns < 1)
+            throw new IllegalArgumentException("Columns must be positive: " + columns);
+        return new WorkbookGenerator(format, rows, columns, styles, mergedDensity, formulaDensity, textLength,
+                seed);
+    }
+
+    /**
+     * @param styles number of distinct cell styles the cells take in turn
+     */
+    public WorkbookGenerator withStyles(int styles) {
+        if (styles < 1)
+            throw new IllegalArgumentException("Styles must be positive: " + styles);
+        return new WorkbookGenerator(format, rows, columns, styles, mergedDensity, formulaDensity, textLength,
+                seed);
+    }
+
+    /**
+     * @param mergedDensity share of the 2x2 blocks of the sheet that are merged, from 0 to 1
+     */
+    public WorkbookGenerator withMergedDensity(double mergedDensity) {
+        return new WorkbookGenerator(format, rows, columns, styles, share(mergedDensity, "Merged density"),
+                formulaDensity, textLength, seed);
+    }
+
+    /**
+     * @param formulaDensity share of the cells outside column {@code A} that are formulas, from 0 to 1
+     */
+    public WorkbookGenerator withFormulaDensity(double formulaDensity) {
+        return new WorkbookGenerator(format, rows, columns, styles, mergedDensity,
+                share(formulaDensity, "Formula density"), textLength, seed);
+    }
+
+    /**
+     * @param textLength number of characters of a text cell
+     */
+    public WorkbookGenerator withTextLength(int textLength) {
+        if (textLength < 1)
+            throw new IllegalArgumentException("Text length must be positive: " + textLength);
+        return new WorkbookGenerator(format, rows, columns, styles, mergedDensity, formulaDensity, textLength,
+                seed);
+    }
+
+    public WorkbookGenerator withSeed(long seed) {
+        return new WorkbookGenerator(format, rows, columns, styles, mergedDensity, formulaDensity, textLength,
+                seed);
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * @return suffix of a file of the format, with the dot
+     */
+    public String getSuffix() {
+        return format == Format.XLSX ? ".xlsx" : ".xls";
+    }
+
+    /**
+     * @return the workbook in a new temporary file, for the caller to delete
+     */
+    public Path writeTempFile() throws IOException {
+        Path file = Files.createTempFile("generated", getSuffix());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * Writes the workbook to the stream, which is left open.
+     *
+     * @throws IllegalArgumentException when the sheet does not fit into an XLS sheet
+     */
+    public void write(OutputStream out) throws IOException {
+        if (format == Format.XLS && (rows > 65536 || columns > 256))
+            throw new IllegalArgumentException("XLS sheets hold up to 65536 rows and 256 columns");
+        try (Workbook wb = format == Format.XLSX ? new XSSFWorkbook() : new HSSFWorkbook()) {
+            fill(wb);
+            wb.getCreationHelper().createFormulaEvaluator().evaluateAll();
+            wb.write(out);
+        }
+    }
+
+    private void fill(Workbook wb) {
+        Random random = new Random(seed);
+        CellStyle[] cellStyles = createStyles(wb);
+        Sheet sheet = wb.createSheet("Generated");
+        for (int c = 0; c < columns; c++)
+            sheet.setColumnWidth(c, 256 * Math.min(textLength + 2, 60));
+        char[] text = new char[textLength];
+        for (int r = 0; r < rows; r++) {
+            Row row = sheet.createRow(r);
+            for (int c = 0; c < columns; c++) {
+                Cell cell = row.createCell(c);
+                cell.setCellStyle(cellStyles[(r * columns + c) % cellStyles.length]);
+                if (c > 0 && random.nextDouble() < formulaDensity) {
+                    cell.setCellFormula("A" + (r + 1) + "*" + c);
+                } else if (c % 2 == 0) {
+                    cell.setCellValue(r * 100 + c + random.nextInt(100) / 100d);
+                } else {
+                    for (int i = 0; i < text.length; i++)
+                        text[i] = (char) ('a' + random.nextInt(26));
+                    cell.setCellValue(new String(text));
+                }
+            }
+        }
+        if (mergedDensity > 0) {
+            for (int r = 0; r + 1 < rows; r += 2) {
+                for (int c = 0; c + 1 < columns; c += 2) {
+                    if (random.nextDouble() < mergedDensity)
+                        sheet.addMergedRegionUnsafe(new CellRangeAddress(r, r + 1, c, c + 1));
+                }
+            }
+        }
+    }
+
+    private CellStyle[] createStyles(Workbook wb) {
+        CellStyle[] cellStyles = new CellStyle[styles];
+        String[] formats = {"General", "0.00", "#,##0", "dd.mm.yyyy"};
+        for (int i = 0; i < styles; i++) {
+            Font font = wb.createFont();
+            font.setBold(i % 2 == 1);
+            font.setItalic(i % 3 == 1);
+            font.setFontHeightInPoints((short) (9 + i % 5));
+            CellStyle style = wb.createCellStyle();
+            style.setFont(font);
+            style.setFillForegroundColor(FILLS[i % FILLS.length].getIndex());
+            style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+            BorderStyle border = BORDERS[(i / 2) % BORDERS.length];
+            style.setBorderTop(border);
+            style.setBorderRight(border);
+            style.setBorderBottom(border);
+            style.setBorderLeft(border);
+            style.setAlignment(ALIGNMENTS[(i / 3) % ALIGNMENTS.length]);
+            style.setDataFormat(wb.createDataFormat().getFormat(formats[(i / 5) % formats.length]));
+            cellStyles[i] = style;
+        }
+        return cellStyles;
+    }
+
+    private static double share(double value, String name) {
+        if (!(value >= 0 && value <= 1))
+            throw new IllegalArgumentException(name + " must be from 0 to 1: " + value);
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return format + " " + rows + "x" + columns + " (" + CellReference.convertNumToColString(columns - 1)
+                + "), " + styles + " styles, merged " + mergedDensity + ", formulas " + formulaDensity
+                + ", text " + textLength;
+    }
+}
@@ -0,0 +1,297 @@
+package ru.malltshik.xls2pdf.converter;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.poi.util.TempFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the conversions of a {@link ConversionEngine} on an executor and completes a future with the
+ * {@link ConversionResult} of each. Thread safe, share one per engine.
+ * <pre>
+ * AsyncConversionEngine async = new AsyncConversionEngine(engine, Executors.newCachedThreadPool(),
+ *         ConversionLimits.defaults().withMaxRunning(4));
+ * async.convert(source, target, OutputFormat.PDF).thenAccept(result -&gt; LOGGER.info("{}", result));
+ * </pre>
+ * The engine rather than the executor limits the conversions: at most {@link ConversionLimits#getMaxRunning()}
+ * run at once and the workbook files of the running ones take at most
+ * {@link ConversionLimits#getMaxRunningBytes()}. Further conversions wait in a queue in the order they came,
+ * beyond the queue they are handled by the {@link RejectionPolicy}. So any executor can be passed, including
+ * an unbounded one: a cached thread pool on Java 8, a virtual thread per task executor on Java 21.
+ */
+public final class AsyncConversionEngine {
+
+    private final ConversionEngine engine;
+    private final Executor executor;
+    private final ConversionLimits limits;
+    private final Deque<Task> queue = new ArrayDeque<>();
+    private int running;
+    private long runningBytes;
+
+    public AsyncConversionEngine(ConversionEngine engine, Executor executor) {
+        this(engine, executor, ConversionLimits.defaults());
+    }
+
+    /**
+     * @param executor runs the conversions, one task per conversion
+     */
+    public AsyncConversionEngine(ConversionEngine engine, Executor executor, ConversionLimits limits) {
+        this.engine = Objects.requireNonNull(engine, "Conversion engine must be non null");
+        this.executor = Objects.requireNonNull(executor, "Executor must be non null");
+        this.limits = Objects.requireNonNull(limits, "Conversion limits must be non null");
+    }
+
+    public ConversionLimits getLimits() {
+        return limits;
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * Converts with the options of the engine.
+     *
+     * @see #convert(InputStream, OutputStream, OutputFormat, ConversionOptions)
+     */
+    public CompletableFuture<ConversionResult> convert(InputStream source, OutputStream target,
+                                                       OutputFormat format) {
+        return convert(source, target, format, engine.getOptions());
+    }
+
+    /**
+     * Copies the source to a temporary file before returning, so its size is known and the caller may close
+     * it right away; the source is left open.
+     *
+     * @see #convert(Path, OutputStream, OutputFormat, ConversionOptions)
+     */
+    public CompletableFuture<ConversionResult> convert(InputStream source, OutputStream target,
+                                                       OutputFormat format, ConversionOptions options) {
+        Objects.requireNonNull(source, "Source must be non null");
+        checkArguments(target, format, options);
+        Path spilled;
+        try {
+            spilled = TempFile.createTempFile("xls2pdf", ".workbook").toPath();
+        } catch (IOException e) {
+            return failed(e);
+        }
+        try {
+            Files.copy(source, spilled, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            delete(spilled);
+            return failed(e);
+        }
+        return submit(new Task(spilled, true, target, format, options));
+    }
+
+    /**
+     * Converts with the options of the engine.
+     *
+     * @see #convert(Path, OutputStream, OutputFormat, ConversionOptions)
+     */
+    public CompletableFuture<ConversionResult> convert(Path source, OutputStream target, OutputFormat format) {
+        return convert(source, target, format, engine.getOptions());
+    }
+
+    /**
+     * Queues the conversion of the workbook file, see
+     * {@link ConversionEngine#convert(Path, OutputStream, OutputFormat, ConversionOptions)}. The target is
+     * closed when the conversion ran. Cancelling the future drops a queued conversion, a running one is
+     * finished.
+     *
+     * @return future of the result, failed with a {@link RejectedExecutionException} when the queue is full
+     * or the executor rejects the conversion, with the exception of the conversion when it fails
+     */
+    public CompletableFuture<ConversionResult> convert(Path source, OutputStream target, OutputFormat format,
+                                                       ConversionOptions options) {
+        Objects.requireNonNull(source, "Source must be non null");
+        checkArguments(target, format, options);
+        try {
+            WorkbookReaders.existing(source.toFile());
+        } catch (IOException e) {
+            return failed(e);
+        }
+        return submit(new Task(source, false, target, format, options));
+    }
+
+    private CompletableFuture<ConversionResult> submit(Task task) {
+        List<Task> started;
+        synchronized (this) {
+            while (!queue.isEmpty() || !canStart(task)) {
+                if (queue.size() < limits.getMaxQueued()) {
+                    queue.add(task);
+                    task.future.whenComplete((result, e) -> {
+                        if (task.future.isCancelled())
+                            dequeue(task);
+                    });
+                    return task.future;
+                }
+                if (limits.getRejection() == RejectionPolicy.ABORT) {
+                    task.reject(new RejectedExecutionException("Conversion queue is full: " + queue.size()));
+                    return task.future;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    task.reject(new RejectedExecutionException("Interrupted while waiting for the queue", e));
+                    return task.future;
+                }
+            }
+            started = new ArrayList<>(1);
+            start(task, started);
+        }
+        execute(started);
+        return task.future;
+    }
+
+    private boolean canStart(Task task) {
+        return running < limits.getMaxRunning()
+                && (running == 0 || runningBytes + task.sourceBytes <= limits.getMaxRunningBytes());
+    }
+
+    private void start(Task task, List<Task> started) {
+        running++;
+        runningBytes += task.sourceBytes;
+        started.add(task);
+    }
+
+    /**
+     * Hands the tasks to the executor outside of the lock, an executor may run them on the calling thread.
+     */
+    private void execute(List<Task> started) {
+        for (Task task : started) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.reject(e);
+                execute(release(task));
+            }
+        }
+    }
+
+    /**
+     * Frees the limits taken by the task.
+     *
+     * @return queued tasks that can start now, to {@link #execute(List)}
+     */
+    private synchronized List<Task> release(Task task) {
+        List<Task> started = new ArrayList<>();
+        running--;
+        runningBytes -= task.sourceBytes;
+        while (!queue.isEmpty() && canStart(queue.peek()))
+            start(queue.poll(), started);
+        notifyAll();
+        return started;
+    }
+
+    private void dequeue(Task task) {
+        synchronized (this) {
+            if (!queue.remove(task))
+                return;
+            notifyAll();
+        }
+        task.discard();
+    }
+
+    private static void checkArguments(OutputStream target, OutputFormat format, ConversionOptions options) {
+        Objects.requireNonNull(target, "Target must be non null");
+        Objects.requireNonNull(format, "Output format must be non null");
+        Objects.requireNonNull(options, "Conversion options must be non null");
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // a temporary file left behind
+        }
+    }
+
+    private static CompletableFuture<ConversionResult> failed(Throwable e) {
+        CompletableFuture<ConversionResult> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private final class Task implements Runnable {
+
+        private final Path source;
+        private final boolean spilled;
+        private final OutputStream target;
+        private final OutputFormat format;
+        private final ConversionOptions options;
+        private final long sourceBytes;
+        private final long submitted = System.nanoTime();
+        private final CompletableFuture<ConversionResult> future = new CompletableFuture<>();
+
+        private Task(Path source, boolean spilled, OutputStream target, OutputFormat format,
+                     ConversionOptions options) {
+            this.source = source;
+            this.spilled = spilled;
+            this.target = target;
+            this.format = format;
+            this.options = options;
+            this.sourceBytes = source.toFile().length();
+        }
+
+        /**
+         * The limits are freed before the future completes, so a caller that waits for the future finds
+         * them free.
+         */
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                discard();
+                execute(release(this));
+                return;
+            }
+            ConversionResult result = null;
+            Throwable failure = null;
+            try {
+                long started = System.nanoTime();
+                CountingOutputStream out = new CountingOutputStream(target);
+                engine.convert(source, out, format, options);
+                result = new ConversionResult(format, sourceBytes, out.getByteCount(),
+                        Duration.ofNanos(started - submitted), Duration.ofNanos(System.nanoTime() - started));
+            } catch (Throwable e) {
+                failure = e;
+            }
+            discard();
+            List<Task> started = release(this);
+            if (failure == null)
+                future.complete(result);
+            else
+                future.completeExceptionally(failure);
+            execute(started);
+        }
+
+        private void reject(RejectedExecutionException e) {
+            discard();
+            future.completeExceptionally(e);
+        }
+
+        private void discard() {
+            if (spilled)
+                delete(source);
+        }
+    }
+}
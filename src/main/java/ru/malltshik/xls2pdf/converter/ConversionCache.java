@@ -0,0 +1,457 @@
+package ru.malltshik.xls2pdf.converter;
+
+import org.apache.poi.util.TempFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the output of recent conversions, so converting the same workbook again only copies the stored bytes
+ * to the target. Thread safe, share one cache per engine.
+ * <pre>
+ * ConversionCache cache = new ConversionCache(engine, 64 &lt;&lt; 20, Paths.get("/var/cache/xls2pdf"), 1L &lt;&lt; 30);
+ * cache.convert(source, target, OutputFormat.PDF);
+ * </pre>
+ * Outputs are keyed by the SHA-256 hash of the workbook bytes, the output format, the options that change the
+ * output and the library version. They are kept in memory and, when a directory is given, in files of the
+ * directory, which outlive the JVM. Both tiers are bounded by their size in bytes and drop the least recently
+ * used outputs first; a disk hit that fits in memory is moved to the memory tier as well.
+ * <p>
+ * A stream source is copied to a temporary file while it is hashed, so it is read once. Calls for the same key
+ * while it is converted wait for that conversion rather than converting again.
+ */
+public final class ConversionCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConversionCache.class);
+
+    private static final String VERSION = readVersion();
+    private static final Pattern STORED_NAME = Pattern.compile("[0-9a-f]{64}\\.(html|pdf|csv)");
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final ConversionEngine engine;
+    private final MemoryTier memory;
+    private final DiskTier disk;
+    private final ConcurrentMap<String, CompletableFuture<byte[]>> conversions = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Cache kept in memory only.
+     *
+     * @param maxMemoryBytes total size of the outputs kept in memory
+     */
+    public ConversionCache(ConversionEngine engine, long maxMemoryBytes) {
+        this.engine = Objects.requireNonNull(engine, "Conversion engine must be non null");
+        this.memory = new MemoryTier(maxMemoryBytes);
+        this.disk = null;
+    }
+
+    /**
+     * Cache kept in memory and in the directory. Outputs already in the directory are used, the least recently
+     * used ones are dropped until they fit.
+     *
+     * @param maxMemoryBytes total size of the outputs kept in memory
+     * @param directory      directory of the stored outputs, created when missing
+     * @param maxDiskBytes   total size of the outputs kept in the directory
+     * @throws IOException when the directory can not be created or listed
+     */
+    public ConversionCache(ConversionEngine engine, long maxMemoryBytes, Path directory, long maxDiskBytes)
+            throws IOException {
+        this.engine = Objects.requireNonNull(engine, "Conversion engine must be non null");
+        this.memory = new MemoryTier(maxMemoryBytes);
+        this.disk = new DiskTier(Objects.requireNonNull(directory, "Cache directory must be non null"),
+                maxDiskBytes);
+    }
+
+    /**
+     * @return calls served from the cache, including calls that waited for the same conversion
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return hits served from the directory
+     */
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    /**
+     * @return calls that converted the workbook
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Converts with the options of the engine.
+     *
+     * @see #convert(InputStream, OutputStream, OutputFormat, ConversionOptions)
+     */
+    public void convert(InputStream source, OutputStream target, OutputFormat format) throws IOException {
+        convert(source, target, format, engine.getOptions());
+    }
+
+    /**
+     * Writes the stored output of the workbook to the target, converting it first unless stored.
+     * The target is closed when done, the source is left open.
+     *
+     * @see ConversionEngine#convert(InputStream, OutputStream, OutputFormat, ConversionOptions)
+     */
+    public void convert(InputStream source, OutputStream target, OutputFormat format, ConversionOptions options)
+            throws IOException {
+        Objects.requireNonNull(source, "Source must be non null");
+        Objects.requireNonNull(format, "Output format must be non null");
+        Objects.requireNonNull(options, "Conversion options must be non null");
+        Path input = TempFile.createTempFile("xls2pdf", ".workbook").toPath();
+        try {
+            MessageDigest digest = sha256();
+            Files.copy(new DigestInputStream(source, digest), input, StandardCopyOption.REPLACE_EXISTING);
+            convert(key(digest, format, options), input, target, format, options);
+        } finally {
+            Files.deleteIfExists(input);
+        }
+    }
+
+    /**
+     * Converts with the options of the engine.
+     *
+     * @see #convert(Path, OutputStream, OutputFormat, ConversionOptions)
+     */
+    public void convert(Path source, OutputStream target, OutputFormat format) throws IOException {
+        convert(source, target, format, engine.getOptions());
+    }
+
+    /**
+     * Writes the stored output of the workbook file to the target, converting it first unless stored.
+     * The target is closed when done.
+     *
+     * @see ConversionEngine#convert(Path, OutputStream, OutputFormat, ConversionOptions)
+     */
+    public void convert(Path source, OutputStream target, OutputFormat format, ConversionOptions options)
+            throws IOException {
+        Objects.requireNonNull(format, "Output format must be non null");
+        Objects.requireNonNull(options, "Conversion options must be non null");
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(WorkbookReaders.existing(source.toFile()))) {
+            byte[] buffer = new byte[1 << 16];
+            for (int n; (n = in.read(buffer)) >= 0; )
+                digest.update(buffer, 0, n);
+        }
+        convert(key(digest, format, options), source, target, format, options);
+    }
+
+    private void convert(String key, Path source, OutputStream target, OutputFormat format,
+                         ConversionOptions options) throws IOException {
+        try (OutputStream out = target) {
+            while (!writeStored(key, out)) {
+                CompletableFuture<byte[]> conversion = new CompletableFuture<>();
+                CompletableFuture<byte[]> running = conversions.putIfAbsent(key, conversion);
+                if (running == null) {
+                    try {
+                        if (!writeStored(key, out)) {
+                            misses.incrementAndGet();
+                            convert(key, source, out, format, options, conversion);
+                        }
+                    } finally {
+                        // releases the waiting calls to look up the stored output when it was not converted here
+                        conversion.complete(null);
+                        conversions.remove(key, conversion);
+                    }
+                    return;
+                }
+                byte[] bytes = await(running);
+                if (bytes != null) {
+                    hits.incrementAndGet();
+                    out.write(bytes);
+                    return;
+                }
+                // the output is only in the directory, or was not stored at all
+            }
+        }
+    }
+
+    /**
+     * Converts into the directory, or into memory without one, then stores the output and writes it to the
+     * target. Waiting calls are released as soon as the output is stored, an output too large for memory
+     * is written to the target first.
+     */
+    private void convert(String key, Path source, OutputStream target, OutputFormat format,
+                         ConversionOptions options, CompletableFuture<byte[]> conversion) throws IOException {
+        try {
+            if (disk == null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                engine.convert(source, out, format, options);
+                byte[] bytes = out.toByteArray();
+                memory.put(key, bytes);
+                conversion.complete(bytes);
+                target.write(bytes);
+                return;
+            }
+            Path produced = Files.createTempFile(disk.directory, "conversion", TEMP_SUFFIX);
+            try {
+                engine.convert(source, new BufferedOutputStream(Files.newOutputStream(produced)), format, options);
+                if (memory.fits(Files.size(produced))) {
+                    byte[] bytes = Files.readAllBytes(produced);
+                    memory.put(key, bytes);
+                    conversion.complete(bytes);
+                    store(key, produced);
+                    target.write(bytes);
+                } else {
+                    try {
+                        Files.copy(produced, target);
+                    } finally {
+                        store(key, produced);
+                        conversion.complete(null);
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(produced);
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            conversion.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * A conversion that could not be stored in the directory is still written to the target.
+     */
+    private void store(String key, Path produced) {
+        try {
+            disk.put(key, produced);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to store conversion {}: {}", key, e.toString());
+        }
+    }
+
+    private boolean writeStored(String key, OutputStream target) throws IOException {
+        byte[] bytes = memory.get(key);
+        if (bytes == null && disk != null) {
+            Stored stored = disk.open(key);
+            if (stored == null)
+                return false;
+            try (InputStream in = stored.in) {
+                diskHits.incrementAndGet();
+                if (memory.fits(stored.length)) {
+                    bytes = new byte[(int) stored.length];
+                    new DataInputStream(in).readFully(bytes);
+                    memory.put(key, bytes);
+                } else {
+                    hits.incrementAndGet();
+                    copy(in, target);
+                    return true;
+                }
+            }
+        }
+        if (bytes == null)
+            return false;
+        hits.incrementAndGet();
+        target.write(bytes);
+        return true;
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> conversion) throws IOException {
+        try {
+            return conversion.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the same conversion");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IllegalArgumentException)
+                throw new IllegalArgumentException(cause.getMessage(), cause);
+            throw new IOException("Same conversion failed: " + cause, cause);
+        }
+    }
+
+    private static String key(MessageDigest digest, OutputFormat format, ConversionOptions options) {
+        digest.update((byte) 0);
+        digest.update((format + "\u0000" + options.fingerprint() + "\u0000" + VERSION)
+                .getBytes(StandardCharsets.UTF_8));
+        StringBuilder key = new StringBuilder(70);
+        for (byte b : digest.digest())
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return key.append('.').append(format.name().toLowerCase(Locale.ROOT)).toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        for (int n; (n = in.read(buffer)) >= 0; )
+            out.write(buffer, 0, n);
+    }
+
+    /**
+     * @return version of the library from the properties filtered by the build, so outputs of an older
+     * version are not served after an upgrade
+     */
+    private static String readVersion() {
+        try (InputStream in = ConversionCache.class.getResourceAsStream("/xls2pdf.properties")) {
+            if (in != null) {
+                Properties properties = new Properties();
+                properties.load(in);
+                return properties.getProperty("version", "unknown");
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read library version: {}", e.toString());
+        }
+        return "unknown";
+    }
+
+    private static final class MemoryTier {
+
+        private final long maxBytes;
+        private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long size;
+
+        private MemoryTier(long maxBytes) {
+            if (maxBytes < 0)
+                throw new IllegalArgumentException("Memory cache size must not be negative: " + maxBytes);
+            this.maxBytes = maxBytes;
+        }
+
+        private boolean fits(long length) {
+            return length <= maxBytes;
+        }
+
+        private synchronized byte[] get(String key) {
+            return entries.get(key);
+        }
+
+        private synchronized void put(String key, byte[] bytes) {
+            if (!fits(bytes.length))
+                return;
+            byte[] old = entries.put(key, bytes);
+            size += bytes.length - (old == null ? 0 : old.length);
+            for (Iterator<byte[]> eldest = entries.values().iterator(); size > maxBytes; ) {
+                size -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    private static final class DiskTier {
+
+        private final Path directory;
+        private final long maxBytes;
+        /**
+         * Sizes of the stored files by key, least recently used first.
+         */
+        private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+        private long size;
+
+        private DiskTier(Path directory, long maxBytes) throws IOException {
+            if (maxBytes < 0)
+                throw new IllegalArgumentException("Disk cache size must not be negative: " + maxBytes);
+            this.directory = Files.createDirectories(directory);
+            this.maxBytes = maxBytes;
+            List<Path> stored = new ArrayList<>();
+            try (Stream<Path> paths = Files.list(directory)) {
+                for (Path path : (Iterable<Path>) paths::iterator) {
+                    String name = path.getFileName().toString();
+                    if (name.endsWith(TEMP_SUFFIX))
+                        delete(path);
+                    else if (STORED_NAME.matcher(name).matches() && Files.isRegularFile(path))
+                        stored.add(path);
+                }
+            }
+            Map<Path, FileTime> used = new HashMap<>();
+            for (Path path : stored)
+                used.put(path, Files.getLastModifiedTime(path));
+            stored.sort(Comparator.comparing(used::get));
+            for (Path path : stored) {
+                long length = Files.size(path);
+                files.put(path.getFileName().toString(), length);
+                size += length;
+            }
+            evict();
+            LOGGER.debug("Using {} stored conversions of {}", files.size(), directory);
+        }
+
+        /**
+         * @return the stored output opened for reading, {@code null} when not stored
+         */
+        private synchronized Stored open(String key) throws IOException {
+            Long length = files.get(key);
+            if (length == null)
+                return null;
+            Path path = directory.resolve(key);
+            try {
+                InputStream in = Files.newInputStream(path);
+                Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+                return new Stored(in, length);
+            } catch (NoSuchFileException e) {
+                files.remove(key);
+                size -= length;
+                return null;
+            }
+        }
+
+        /**
+         * Moves the file into the directory under the key, unless it is larger than the whole tier.
+         */
+        private synchronized void put(String key, Path file) throws IOException {
+            long length = Files.size(file);
+            if (length > maxBytes)
+                return;
+            Files.move(file, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Long old = files.put(key, length);
+            size += length - (old == null ? 0 : old);
+            evict();
+        }
+
+        private void evict() {
+            for (Iterator<Map.Entry<String, Long>> eldest = files.entrySet().iterator(); size > maxBytes; ) {
+                Map.Entry<String, Long> entry = eldest.next();
+                size -= entry.getValue();
+                eldest.remove();
+                delete(directory.resolve(entry.getKey()));
+            }
+        }
+
+        private static void delete(Path path) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to delete stored conversion {}: {}", path, e.toString());
+            }
+        }
+    }
+
+    private static final class Stored {
+
+        private final InputStream in;
+        private final long length;
+
+        private Stored(InputStream in, long length) {
+            this.in = in;
+            this.length = length;
+        }
+    }
+}
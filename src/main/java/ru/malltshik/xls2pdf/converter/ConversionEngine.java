@@ -0,0 +1,173 @@
+package ru.malltshik.xls2pdf.converter;
+
+import com.itextpdf.text.DocumentException;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Long-lived entry point for converting many workbooks, e.g. in a server. Create one per configuration and
+ * share it: the engine is immutable and thread safe, every call keeps its state in a converter of its own,
+ * while the parts that do not depend on the workbook are loaded once and shared by all calls.
+ * <pre>
+ * ConversionEngine engine = new ConversionEngine(ConversionOptions.defaults().withStreaming(true));
+ * engine.convert(source, target, OutputFormat.PDF);
+ * </pre>
+ */
+public final class ConversionEngine {
+
+    private final ConversionOptions options;
+    private final ConversionResources resources;
+
+    public ConversionEngine() {
+        this(ConversionOptions.defaults());
+    }
+
+    /**
+     * @param options options of the calls that do not pass their own
+     */
+    public ConversionEngine(ConversionOptions options) {
+        this.options = Objects.requireNonNull(options, "Conversion options must be non null");
+        this.resources = ConversionResources.shared();
+    }
+
+    public ConversionOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Converts with the options of the engine.
+     *
+     * @see #convert(InputStream, OutputStream, OutputFormat, ConversionOptions)
+     */
+    public void convert(InputStream source, OutputStream target, OutputFormat format) throws IOException {
+        convert(source, target, format, options);
+    }
+
+    /**
+     * Reads the workbook from the source and writes it to the target, which is closed when done.
+     * The source is left open.
+     *
+     * @throws IllegalArgumentException when the source can not be read as a workbook or a chosen sheet is missing
+     * @throws IOException              when reading or writing fails
+     */
+    public void convert(InputStream source, OutputStream target, OutputFormat format, ConversionOptions options)
+            throws IOException {
+        convert(WorkbookReaders.source(source), target, format, options);
+    }
+
+    /**
+     * Converts with the options of the engine.
+     *
+     * @see #convert(Path, OutputStream, OutputFormat, ConversionOptions)
+     */
+    public void convert(Path source, OutputStream target, OutputFormat format) throws IOException {
+        convert(source, target, format, options);
+    }
+
+    /**
+     * Reads the workbook from the file and writes it to the target, which is closed when done.
+     * The file is read as needed rather than loaded as a whole, which takes less memory than
+     * converting a stream of the same file.
+     *
+     * @throws IllegalArgumentException when the file can not be read as a workbook or a chosen sheet is missing
+     * @throws IOException              when reading or writing fails
+     */
+    public void convert(Path source, OutputStream target, OutputFormat format, ConversionOptions options)
+            throws IOException {
+        convert(WorkbookReaders.source(source), target, format, options);
+    }
+
+    /**
+     * Converts with the options of the engine.
+     *
+     * @see #convert(Workbook, OutputStream, OutputFormat, ConversionOptions)
+     */
+    public void convert(Workbook source, OutputStream target, OutputFormat format) throws IOException {
+        convert(source, target, format, options);
+    }
+
+    /**
+     * Converts a workbook already in memory, e.g. one filled from a template, and writes it to the target,
+     * which is closed when done. The workbook is left open, the streaming option does not apply. Calls must
+     * not share a workbook, POI workbooks are not thread safe.
+     *
+     * @throws IllegalArgumentException when a chosen sheet is missing
+     * @throws IOException              when writing fails
+     */
+    public void convert(Workbook source, OutputStream target, OutputFormat format, ConversionOptions options)
+            throws IOException {
+        convert(WorkbookReaders.source(source), target, format, options);
+    }
+
+    /**
+     * Converts with the options of the engine.
+     *
+     * @see #convert(InputStream, Map, ConversionOptions)
+     */
+    public void convert(InputStream source, Map<OutputFormat, OutputStream> targets) throws IOException {
+        convert(source, targets, options);
+    }
+
+    /**
+     * Reads the workbook from the source once and writes it to a target per format, see
+     * {@link MultiTargetConverter}. The targets are closed when done, the source is left open.
+     *
+     * @throws IllegalArgumentException when the source can not be read as a workbook or a chosen sheet is missing
+     * @throws IOException              when reading or writing fails
+     */
+    public void convert(InputStream source, Map<OutputFormat, OutputStream> targets, ConversionOptions options)
+            throws IOException {
+        new MultiTargetConverter(WorkbookReaders.source(source), targets, options, resources).convert();
+    }
+
+    /**
+     * Converts with the options of the engine.
+     *
+     * @see #convert(Path, Map, ConversionOptions)
+     */
+    public void convert(Path source, Map<OutputFormat, OutputStream> targets) throws IOException {
+        convert(source, targets, options);
+    }
+
+    /**
+     * Reads the workbook from the file once and writes it to a target per format, see
+     * {@link MultiTargetConverter}. The targets are closed when done.
+     *
+     * @throws IllegalArgumentException when the file can not be read as a workbook or a chosen sheet is missing
+     * @throws IOException              when reading or writing fails
+     */
+    public void convert(Path source, Map<OutputFormat, OutputStream> targets, ConversionOptions options)
+            throws IOException {
+        new MultiTargetConverter(WorkbookReaders.source(source), targets, options, resources).convert();
+    }
+
+    private void convert(WorkbookReaders.Source source, OutputStream target, OutputFormat format,
+                         ConversionOptions options) throws IOException {
+        Objects.requireNonNull(format, "Output format must be non null");
+        switch (format) {
+            case HTML:
+                new Xls2HtmlConverter(source, target, options, resources).convert();
+                break;
+            case PDF:
+                try {
+                    new Xls2PdfConverter(source, target, options, resources).convert();
+                } catch (DocumentException e) {
+                    throw new IOException("Unable to write PDF", e);
+                }
+                break;
+            case CSV:
+                new MultiTargetConverter(source, Collections.singletonMap(format, target), options, resources)
+                        .convert();
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported output format: " + format);
+        }
+    }
+}
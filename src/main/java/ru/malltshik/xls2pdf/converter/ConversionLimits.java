@@ -0,0 +1,87 @@
+package ru.malltshik.xls2pdf.converter;
+
+import java.util.Objects;
+
+/**
+ * Immutable limits of an {@link AsyncConversionEngine}. Start from {@link #defaults()} and derive with the
+ * {@code with*} methods.
+ */
+public final class ConversionLimits {
+
+    private static final ConversionLimits DEFAULTS = new ConversionLimits(
+            Runtime.getRuntime().availableProcessors(), 256, Runtime.getRuntime().maxMemory() / 16,
+            RejectionPolicy.ABORT);
+
+    private final int maxRunning;
+    private final int maxQueued;
+    private final long maxRunningBytes;
+    private final RejectionPolicy rejection;
+
+    private ConversionLimits(int maxRunning, int maxQueued, long maxRunningBytes, RejectionPolicy rejection) {
+        this.maxRunning = maxRunning;
+        this.maxQueued = maxQueued;
+        this.maxRunningBytes = maxRunningBytes;
+        this.rejection = rejection;
+    }
+
+    /**
+     * @return as many running conversions as processors, 256 queued ones and running workbooks of a
+     * sixteenth of the maximum heap in total, aborting conversions beyond the queue
+     */
+    public static ConversionLimits defaults() {
+        return DEFAULTS;
+    }
+
+    public int getMaxRunning() {
+        return maxRunning;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public long getMaxRunningBytes() {
+        return maxRunningBytes;
+    }
+
+    public RejectionPolicy getRejection() {
+        return rejection;
+    }
+
+    /**
+     * @param maxRunning number of conversions running at once
+     */
+    public ConversionLimits withMaxRunning(int maxRunning) {
+        if (maxRunning < 1)
+            throw new IllegalArgumentException("Max running conversions must be positive: " + maxRunning);
+        return new ConversionLimits(maxRunning, maxQueued, maxRunningBytes, rejection);
+    }
+
+    /**
+     * @param maxQueued number of conversions waiting to run, {@code 0} to queue none
+     */
+    public ConversionLimits withMaxQueued(int maxQueued) {
+        if (maxQueued < 0)
+            throw new IllegalArgumentException("Max queued conversions must not be negative: " + maxQueued);
+        return new ConversionLimits(maxRunning, maxQueued, maxRunningBytes, rejection);
+    }
+
+    /**
+     * @param maxRunningBytes total size of the workbook files of the running conversions. The heap a
+     *                        conversion takes grows with its workbook, so this bounds the heap taken by
+     *                        conversions at once. A workbook larger than the limit runs alone.
+     */
+    public ConversionLimits withMaxRunningBytes(long maxRunningBytes) {
+        if (maxRunningBytes < 1)
+            throw new IllegalArgumentException("Max running bytes must be positive: " + maxRunningBytes);
+        return new ConversionLimits(maxRunning, maxQueued, maxRunningBytes, rejection);
+    }
+
+    /**
+     * @param rejection what to do with a conversion that arrives while the queue is full
+     */
+    public ConversionLimits withRejection(RejectionPolicy rejection) {
+        Objects.requireNonNull(rejection, "Rejection policy must be non null");
+        return new ConversionLimits(maxRunning, maxQueued, maxRunningBytes, rejection);
+    }
+}
@@ -0,0 +1,260 @@
+package ru.malltshik.xls2pdf.converter;
+
+import ru.malltshik.xls2pdf.formula.FormulaEvaluationPolicy;
+import ru.malltshik.xls2pdf.metrics.ConversionListener;
+import ru.malltshik.xls2pdf.render.SheetWindow;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executor;
+
+/**
+ * Immutable settings of a conversion. Start from {@link #defaults()} and derive with the {@code with*} methods.
+ */
+public final class ConversionOptions {
+
+    public static final int DEFAULT_PDF_FLUSH_ROWS = 1000;
+
+    private static final ConversionOptions DEFAULTS = new ConversionOptions(FormulaEvaluationPolicy.EVALUATE,
+            false, false, PdfBackend.DIRECT, DEFAULT_PDF_FLUSH_ROWS, true, null, null, null, null, null,
+            ConversionListener.NONE);
+
+    private final FormulaEvaluationPolicy formulaPolicy;
+    private final boolean evaluateAll;
+    private final boolean streaming;
+    private final PdfBackend pdfBackend;
+    private final int pdfFlushRows;
+    private final boolean printSetup;
+    private final List<Integer> sheetIndexes;
+    private final List<String> sheetNames;
+    private final Executor executor;
+    private final Path fontDirectory;
+    private final SheetWindow window;
+    private final ConversionListener listener;
+
+    private ConversionOptions(FormulaEvaluationPolicy formulaPolicy, boolean evaluateAll, boolean streaming,
+                              PdfBackend pdfBackend, int pdfFlushRows, boolean printSetup,
+                              List<Integer> sheetIndexes, List<String> sheetNames, Executor executor,
+                              Path fontDirectory, SheetWindow window, ConversionListener listener) {
+        this.formulaPolicy = formulaPolicy;
+        this.evaluateAll = evaluateAll;
+        this.streaming = streaming;
+        this.pdfBackend = pdfBackend;
+        this.pdfFlushRows = pdfFlushRows;
+        this.printSetup = printSetup;
+        this.sheetIndexes = sheetIndexes;
+        this.sheetNames = sheetNames;
+        this.executor = executor;
+        this.fontDirectory = fontDirectory;
+        this.window = window;
+        this.listener = listener;
+    }
+
+    public static ConversionOptions defaults() {
+        return DEFAULTS;
+    }
+
+    public FormulaEvaluationPolicy getFormulaPolicy() {
+        return formulaPolicy;
+    }
+
+    public boolean isEvaluateAll() {
+        return evaluateAll;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public PdfBackend getPdfBackend() {
+        return pdfBackend;
+    }
+
+    public int getPdfFlushRows() {
+        return pdfFlushRows;
+    }
+
+    public boolean isPrintSetup() {
+        return printSetup;
+    }
+
+    /**
+     * @return indexes of the sheets to convert, {@code null} unless chosen by {@link #withSheets(int...)}
+     */
+    public List<Integer> getSheetIndexes() {
+        return sheetIndexes;
+    }
+
+    /**
+     * @return names of the sheets to convert, {@code null} unless chosen by {@link #withSheetNames(String...)}
+     */
+    public List<String> getSheetNames() {
+        return sheetNames;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public Path getFontDirectory() {
+        return fontDirectory;
+    }
+
+    /**
+     * @return part of every sheet to convert, {@code null} for the whole sheets
+     */
+    public SheetWindow getWindow() {
+        return window;
+    }
+
+    /**
+     * @return receiver of the metrics of every conversion, {@link ConversionListener#NONE} by default
+     */
+    public ConversionListener getListener() {
+        return listener;
+    }
+
+    public ConversionOptions withFormulaPolicy(FormulaEvaluationPolicy formulaPolicy) {
+        Objects.requireNonNull(formulaPolicy, "Formula evaluation policy must be non null");
+        return new ConversionOptions(formulaPolicy, evaluateAll, streaming, pdfBackend, pdfFlushRows, printSetup,
+                sheetIndexes, sheetNames, executor, fontDirectory, window, listener);
+    }
+
+    /**
+     * @param evaluateAll evaluate every formula of the workbook before rendering
+     */
+    public ConversionOptions withEvaluateAll(boolean evaluateAll) {
+        return new ConversionOptions(formulaPolicy, evaluateAll, streaming, pdfBackend, pdfFlushRows, printSetup,
+                sheetIndexes, sheetNames, executor, fontDirectory, window, listener);
+    }
+
+    /**
+     * @param streaming read {@code .xlsx} input with the SAX event model and {@code .xls} input with the HSSF
+     *                  event API instead of loading the whole workbook.
+     *                  Formulas are not evaluated then, their cached results are rendered.
+     */
+    public ConversionOptions withStreaming(boolean streaming) {
+        return new ConversionOptions(formulaPolicy, evaluateAll, streaming, pdfBackend, pdfFlushRows, printSetup,
+                sheetIndexes, sheetNames, executor, fontDirectory, window, listener);
+    }
+
+    /**
+     * @param pdfBackend how {@link Xls2PdfConverter} lays the sheet out, {@link PdfBackend#DIRECT} by default
+     */
+    public ConversionOptions withPdfBackend(PdfBackend pdfBackend) {
+        Objects.requireNonNull(pdfBackend, "PDF backend must be non null");
+        return new ConversionOptions(formulaPolicy, evaluateAll, streaming, pdfBackend, pdfFlushRows, printSetup,
+                sheetIndexes, sheetNames, executor, fontDirectory, window, listener);
+    }
+
+    /**
+     * @param pdfFlushRows number of rows after which the {@link PdfBackend#DIRECT} backend lays out the rows
+     *                     built so far and writes finished pages to the output, {@code 0} lays the sheet out
+     *                     as one table when the document is closed
+     */
+    public ConversionOptions withPdfFlushRows(int pdfFlushRows) {
+        if (pdfFlushRows < 0)
+            throw new IllegalArgumentException("PDF flush rows must not be negative: " + pdfFlushRows);
+        return new ConversionOptions(formulaPolicy, evaluateAll, streaming, pdfBackend, pdfFlushRows, printSetup,
+                sheetIndexes, sheetNames, executor, fontDirectory, window, listener);
+    }
+
+    /**
+     * @param printSetup lay every sheet out by its print setup with the {@link PdfBackend#DIRECT} backend:
+     *                   paper size, orientation, margins, scale or fit to page width, column widths and manual
+     *                   row breaks; {@code false} lays all sheets out on A2 pages at the page width
+     * @see ru.malltshik.xls2pdf.render.PageSetup
+     */
+    public ConversionOptions withPrintSetup(boolean printSetup) {
+        return new ConversionOptions(formulaPolicy, evaluateAll, streaming, pdfBackend, pdfFlushRows, printSetup,
+                sheetIndexes, sheetNames, executor, fontDirectory, window, listener);
+    }
+
+    /**
+     * @param sheets indexes of the sheets to convert in the order to output them, none to convert all sheets
+     */
+    public ConversionOptions withSheets(int... sheets) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int sheet : sheets) {
+            if (sheet < 0)
+                throw new IllegalArgumentException("Sheet index must not be negative: " + sheet);
+            indexes.add(sheet);
+        }
+        return new ConversionOptions(formulaPolicy, evaluateAll, streaming, pdfBackend, pdfFlushRows, printSetup,
+                indexes.isEmpty() ? null : Collections.unmodifiableList(indexes), null, executor, fontDirectory,
+                window, listener);
+    }
+
+    /**
+     * @param sheets names of the sheets to convert in the order to output them, none to convert all sheets
+     */
+    public ConversionOptions withSheetNames(String... sheets) {
+        List<String> names = new ArrayList<>();
+        for (String sheet : sheets)
+            names.add(Objects.requireNonNull(sheet, "Sheet name must be non null"));
+        return new ConversionOptions(formulaPolicy, evaluateAll, streaming, pdfBackend, pdfFlushRows, printSetup,
+                null, names.isEmpty() ? null : Collections.unmodifiableList(names), executor,
+                fontDirectory, window, listener);
+    }
+
+    /**
+     * @param executor runs the {@link PdfBackend#DIRECT} layout of the sheets in parallel, one task per sheet,
+     *                 {@code null} to lay them out one after another on the calling thread. Sheets are still
+     *                 read one after another, the workbook readers are not thread safe. With the
+     *                 {@link PdfBackend#HTML} backend it runs the HTML producer, one task per conversion that
+     *                 lasts as long as the conversion; {@code null} starts a thread per conversion instead.
+     *                 The task must not run on the converting thread.
+     */
+    public ConversionOptions withExecutor(Executor executor) {
+        return new ConversionOptions(formulaPolicy, evaluateAll, streaming, pdfBackend, pdfFlushRows, printSetup,
+                sheetIndexes, sheetNames, executor, fontDirectory, window, listener);
+    }
+
+    /**
+     * @param fontDirectory directory of the TrueType and OpenType fonts the PDF is written with, scanned once
+     *                      per JVM. Used fonts are embedded as subsets. {@code null} leaves the fonts to iText:
+     *                      the standard PDF fonts, which are not embedded and cover Latin text only.
+     * @see ru.malltshik.xls2pdf.font.FontRegistry
+     */
+    public ConversionOptions withFontDirectory(Path fontDirectory) {
+        return new ConversionOptions(formulaPolicy, evaluateAll, streaming, pdfBackend, pdfFlushRows, printSetup,
+                sheetIndexes, sheetNames, executor, fontDirectory, window, listener);
+    }
+
+    /**
+     * @param window part of every chosen sheet to convert, e.g. {@link SheetWindow#rows(int, int)} for a page
+     *               of a preview, {@code null} to convert the whole sheets
+     */
+    public ConversionOptions withWindow(SheetWindow window) {
+        return new ConversionOptions(formulaPolicy, evaluateAll, streaming, pdfBackend, pdfFlushRows, printSetup,
+                sheetIndexes, sheetNames, executor, fontDirectory, window, listener);
+    }
+
+    /**
+     * @param listener receives the timings and counts of every conversion, {@link ConversionListener#NONE}
+     *                 to measure nothing
+     * @see ru.malltshik.xls2pdf.metrics.HistogramListener
+     */
+    public ConversionOptions withListener(ConversionListener listener) {
+        Objects.requireNonNull(listener, "Conversion listener must be non null");
+        return new ConversionOptions(formulaPolicy, evaluateAll, streaming, pdfBackend, pdfFlushRows, printSetup,
+                sheetIndexes, sheetNames, executor, fontDirectory, window, listener);
+    }
+
+    /**
+     * @return the options that change the output of a conversion, as text for {@link ConversionCache} keys.
+     * The executor and the listener do not change the output, so they are left out.
+     */
+    String fingerprint() {
+        StringBuilder text = new StringBuilder()
+                .append(formulaPolicy).append(';').append(evaluateAll).append(';').append(streaming).append(';')
+                .append(pdfBackend).append(';').append(pdfFlushRows).append(';').append(printSetup).append(';')
+                .append(sheetIndexes).append(';');
+        if (sheetNames != null) {
+            for (String name : sheetNames)
+                text.append(name.length()).append(':').append(name);
+        }
+        return text.append(';').append(fontDirectory == null ? null : fontDirectory.toAbsolutePath().normalize())
+                .append(';').append(window).toString();
+    }
+}
@@ -0,0 +1,138 @@
+package ru.malltshik.xls2pdf.converter;
+
+import com.itextpdf.text.FontProvider;
+import com.itextpdf.tool.xml.XMLWorkerFontProvider;
+import com.itextpdf.tool.xml.XMLWorkerHelper;
+import com.itextpdf.tool.xml.css.CssFile;
+import com.itextpdf.tool.xml.html.TagProcessorFactory;
+import com.itextpdf.tool.xml.html.Tags;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static ru.malltshik.xls2pdf.html.MarkupWriter.bytes;
+
+/**
+ * Immutable parts of a conversion that do not depend on the workbook. Loaded once and shared by all
+ * conversions, so it must stay thread safe.
+ * <p>
+ * For the XMLWorker backend this includes the parsed style sheets and the tag processors, which
+ * {@code XMLWorkerHelper.parseXHtml} would rebuild for every document, and the parsed workbook rules of
+ * recently converted style sets. Parsed style sheets are only read by XMLWorker, so they can be shared.
+ */
+final class ConversionResources {
+
+    /**
+     * Number of distinct workbook style sets whose parsed css is kept.
+     */
+    private static final int WORKBOOK_CSS_CACHE_SIZE = 64;
+
+    private final byte[] standardCss;
+    private final CssFile xmlWorkerCss;
+    private final CssFile standardCssFile;
+    private final TagProcessorFactory tagProcessors;
+    private final Map<String, CssFile> workbookCss = new LinkedHashMap<String, CssFile>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CssFile> eldest) {
+            return size() > WORKBOOK_CSS_CACHE_SIZE;
+        }
+    };
+
+    private ConversionResources() {
+        String css = readStandardCss();
+        this.standardCss = bytes(css);
+        this.xmlWorkerCss = XMLWorkerHelper.getCSS(XMLWorkerHelper.class.getResourceAsStream("/default.css"));
+        this.standardCssFile = parse(css);
+        this.tagProcessors = Tags.getHtmlTagProcessorFactory();
+    }
+
+    /**
+     * @return resources of the class loader, loaded on first use
+     */
+    static ConversionResources shared() {
+        return Holder.SHARED;
+    }
+
+    /**
+     * @return excelStyle.css with normalized line separators
+     */
+    byte[] getStandardCss() {
+        return standardCss;
+    }
+
+    /**
+     * @return XMLWorker's own default style sheet
+     */
+    CssFile getXmlWorkerCss() {
+        return xmlWorkerCss;
+    }
+
+    /**
+     * @return excelStyle.css parsed for XMLWorker
+     */
+    CssFile getStandardCssFile() {
+        return standardCssFile;
+    }
+
+    TagProcessorFactory getTagProcessors() {
+        return tagProcessors;
+    }
+
+    /**
+     * @return font provider of XMLWorker with the fonts of the system directories, scanned on first use
+     */
+    FontProvider getFontProvider() {
+        return FontHolder.FONTS;
+    }
+
+    /**
+     * @param rules css rules of the styles of a workbook
+     * @return the rules parsed for XMLWorker, shared by the conversions of workbooks with the same rules
+     */
+    CssFile workbookCss(String rules) {
+        synchronized (workbookCss) {
+            CssFile css = workbookCss.get(rules);
+            if (css != null)
+                return css;
+        }
+        CssFile css = parse(rules);
+        synchronized (workbookCss) {
+            workbookCss.put(rules, css);
+        }
+        return css;
+    }
+
+    private static CssFile parse(String css) {
+        return XMLWorkerHelper.getCSS(new ByteArrayInputStream(css.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String readStandardCss() {
+        StringBuilder sb = new StringBuilder();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                ConversionResources.class.getClassLoader().getResourceAsStream("excelStyle.css"),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                sb.append(line).append(System.lineSeparator());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Reading standard css", e);
+        }
+        return sb.toString();
+    }
+
+    private static final class Holder {
+
+        private static final ConversionResources SHARED = new ConversionResources();
+    }
+
+    private static final class FontHolder {
+
+        private static final FontProvider FONTS = new XMLWorkerFontProvider();
+    }
+}
@@ -0,0 +1,59 @@
+package ru.malltshik.xls2pdf.converter;
+
+import java.time.Duration;
+
+/**
+ * Outcome of a conversion completed by {@link AsyncConversionEngine}.
+ */
+public final class ConversionResult {
+
+    private final OutputFormat format;
+    private final long sourceBytes;
+    private final long outputBytes;
+    private final Duration queueTime;
+    private final Duration conversionTime;
+
+    ConversionResult(OutputFormat format, long sourceBytes, long outputBytes, Duration queueTime,
+                     Duration conversionTime) {
+        this.format = format;
+        this.sourceBytes = sourceBytes;
+        this.outputBytes = outputBytes;
+        this.queueTime = queueTime;
+        this.conversionTime = conversionTime;
+    }
+
+    public OutputFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return size of the workbook file
+     */
+    public long getSourceBytes() {
+        return sourceBytes;
+    }
+
+    /**
+     * @return number of bytes written to the target
+     */
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    /**
+     * @return time from the call until the conversion started
+     */
+    public Duration getQueueTime() {
+        return queueTime;
+    }
+
+    public Duration getConversionTime() {
+        return conversionTime;
+    }
+
+    @Override
+    public String toString() {
+        return format + " of " + sourceBytes + " bytes: " + outputBytes + " bytes in " + conversionTime.toMillis()
+                + " ms after " + queueTime.toMillis() + " ms queued";
+    }
+}
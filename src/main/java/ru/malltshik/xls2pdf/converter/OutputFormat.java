@@ -0,0 +1,22 @@
+package ru.malltshik.xls2pdf.converter;
+
+/**
+ * Target format of a {@link ConversionEngine} conversion.
+ */
+public enum OutputFormat {
+
+    /**
+     * XHTML page as written by {@link Xls2HtmlConverter}.
+     */
+    HTML,
+
+    /**
+     * PDF document as written by {@link Xls2PdfConverter}.
+     */
+    PDF,
+
+    /**
+     * Display texts of the cells as comma separated values in UTF-8, as written by {@link MultiTargetConverter}.
+     */
+    CSV
+}
@@ -0,0 +1,17 @@
+package ru.malltshik.xls2pdf.converter;
+
+/**
+ * How {@link Xls2PdfConverter} produces the PDF.
+ */
+public enum PdfBackend {
+
+    /**
+     * Builds iText tables straight from the sheet.
+     */
+    DIRECT,
+
+    /**
+     * Renders the sheet to HTML first and lays it out with XMLWorker.
+     */
+    HTML
+}
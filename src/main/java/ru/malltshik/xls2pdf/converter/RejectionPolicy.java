@@ -0,0 +1,17 @@
+package ru.malltshik.xls2pdf.converter;
+
+/**
+ * What {@link AsyncConversionEngine} does with a conversion that arrives while its queue is full.
+ */
+public enum RejectionPolicy {
+
+    /**
+     * Fails the future of the conversion with a {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    ABORT,
+
+    /**
+     * Blocks the calling thread until the queue has room.
+     */
+    BLOCK
+}
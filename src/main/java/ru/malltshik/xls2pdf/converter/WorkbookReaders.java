@@ -0,0 +1,183 @@
+package ru.malltshik.xls2pdf.converter;
+
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import ru.malltshik.xls2pdf.formula.FormulaEngine;
+import ru.malltshik.xls2pdf.metrics.ConversionRecorder;
+import ru.malltshik.xls2pdf.metrics.ConversionStage;
+import ru.malltshik.xls2pdf.render.ExtractedWorkbook;
+import ru.malltshik.xls2pdf.render.SheetContentHandler;
+import ru.malltshik.xls2pdf.render.SheetWindow;
+import ru.malltshik.xls2pdf.render.UserModelReader;
+import ru.malltshik.xls2pdf.render.WorkbookReader;
+import ru.malltshik.xls2pdf.stream.XlsStreamingReader;
+import ru.malltshik.xls2pdf.stream.XlsxStreamingReader;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Picks the {@link WorkbookReader} for an input according to the conversion options.
+ */
+final class WorkbookReaders {
+
+    private WorkbookReaders() {
+    }
+
+    /**
+     * Input of a conversion, opened once the options are checked.
+     */
+    interface Source {
+
+        /**
+         * @throws IllegalArgumentException when the input can not be read as a workbook
+         */
+        WorkbookReader open(ConversionOptions options);
+    }
+
+    static Source source(InputStream in) {
+        Objects.requireNonNull(in, "Input source must be non null");
+        return options -> open(in, options);
+    }
+
+    static Source source(Path file) {
+        Objects.requireNonNull(file, "Input file must be non null");
+        return options -> open(file, options);
+    }
+
+    /**
+     * The workbook is read from memory whatever the streaming option and is left open when the conversion
+     * is done.
+     */
+    static Source source(Workbook workbook) {
+        Objects.requireNonNull(workbook, "Input workbook must be non null");
+        return options -> UserModelReader.borrow(workbook, options.getFormulaPolicy(), options.isEvaluateAll());
+    }
+
+    /**
+     * @throws FileNotFoundException when the file does not exist or is not a regular file
+     */
+    static Path existing(File file) throws FileNotFoundException {
+        if (!file.isFile())
+            throw new FileNotFoundException(file.getPath());
+        return file.toPath();
+    }
+
+    /**
+     * Every reader needs the workbook in a file to read it lazily, so the stream is copied to a temporary
+     * file first, deleted when the reader is closed.
+     *
+     * @throws IllegalArgumentException when the input can not be read as a workbook
+     */
+    static WorkbookReader open(InputStream in, ConversionOptions options) {
+        try {
+            if (options.isStreaming()) {
+                in = FileMagic.prepareToCheckMagic(in);
+                switch (FileMagic.valueOf(in)) {
+                    case OOXML:
+                        return XlsxStreamingReader.open(in);
+                    case OLE2:
+                        return XlsStreamingReader.open(in);
+                    default:
+                        break;
+                }
+            }
+            return UserModelReader.open(in, options.getFormulaPolicy(), options.isEvaluateAll());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to initialize converter", e);
+        }
+    }
+
+    /**
+     * Reads the workbook from the file as needed, without copying it.
+     *
+     * @throws IllegalArgumentException when the file can not be read as a workbook
+     */
+    static WorkbookReader open(Path file, ConversionOptions options) {
+        try {
+            if (options.isStreaming()) {
+                FileMagic magic;
+                try (InputStream in = FileMagic.prepareToCheckMagic(Files.newInputStream(file))) {
+                    magic = FileMagic.valueOf(in);
+                }
+                switch (magic) {
+                    case OOXML:
+                        return new XlsxStreamingReader(file.toFile());
+                    case OLE2:
+                        return new XlsStreamingReader(file.toFile());
+                    default:
+                        break;
+                }
+            }
+            return UserModelReader.open(file.toFile(), options.getFormulaPolicy(), options.isEvaluateAll());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to initialize converter", e);
+        }
+    }
+
+    /**
+     * @return indexes of the sheets chosen by the options in output order, all sheets by default
+     * @throws IllegalArgumentException when a chosen sheet is not in the workbook
+     */
+    static List<Integer> selectSheets(WorkbookReader reader, ConversionOptions options) {
+        List<String> names = reader.getSheetNames();
+        List<Integer> sheets = new ArrayList<>();
+        if (options.getSheetIndexes() != null) {
+            for (int sheet : options.getSheetIndexes()) {
+                if (sheet >= names.size())
+                    throw new IllegalArgumentException("No sheet " + sheet + " in workbook of " + names.size());
+                sheets.add(sheet);
+            }
+        } else if (options.getSheetNames() != null) {
+            for (String name : options.getSheetNames()) {
+                int sheet = names.indexOf(name);
+                if (sheet < 0)
+                    throw new IllegalArgumentException("No sheet " + name + " in workbook");
+                sheets.add(sheet);
+            }
+        } else {
+            for (int sheet = 0; sheet < names.size(); sheet++)
+                sheets.add(sheet);
+        }
+        return sheets;
+    }
+
+    /**
+     * Reports the part of the sheet chosen by the window to the handler, the whole sheet without a window.
+     */
+    static void read(WorkbookReader reader, int sheet, SheetWindow window, SheetContentHandler handler)
+            throws IOException {
+        CellRangeAddress range = window == null ? null : window.rangeOf(reader, sheet);
+        if (range == null)
+            reader.read(sheet, handler);
+        else
+            reader.read(sheet, range, handler);
+    }
+
+    /**
+     * Replaces a reader that holds the POI workbook by the models of the chosen sheets, recording the time
+     * it takes and the formulas evaluated meanwhile.
+     *
+     * @return the models, the reader itself when it does not hold the workbook
+     */
+    static WorkbookReader extract(WorkbookReader reader, List<Integer> sheets, ConversionRecorder recorder)
+            throws IOException {
+        if (!reader.holdsWorkbook())
+            return reader;
+        long start = recorder.clock();
+        WorkbookReader extracted = ExtractedWorkbook.extract(reader, sheets);
+        recorder.stage(ConversionStage.EXTRACT, start);
+        FormulaEngine formulas = reader.getFormulas();
+        if (formulas != null)
+            recorder.formulas(formulas.getEvaluated(), formulas.getEvaluationNanos());
+        return extracted;
+    }
+}
@@ -1,48 +1,50 @@
 package ru.malltshik.xls2pdf.converter;
 
-import org.apache.commons.lang.StringUtils;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
-import org.apache.poi.ss.format.CellFormat;
-import org.apache.poi.ss.format.CellFormatResult;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.ss.util.PaneInformation;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import ru.malltshik.xls2pdf.helpers.HtmlHelper;
-import ru.malltshik.xls2pdf.helpers.impl.HSSFHtmlHelper;
-import ru.malltshik.xls2pdf.helpers.impl.XSSFHtmlHelper;
-import ru.malltshik.xls2pdf.utils.ExcelUtils;
+import org.apache.poi.ss.usermodel.Workbook;
+import ru.malltshik.xls2pdf.html.MarkupWriter;
+import ru.malltshik.xls2pdf.metrics.ConversionCounter;
+import ru.malltshik.xls2pdf.metrics.ConversionListener;
+import ru.malltshik.xls2pdf.metrics.ConversionRecorder;
+import ru.malltshik.xls2pdf.metrics.ConversionStage;
+import ru.malltshik.xls2pdf.render.HtmlSheetRenderer;
+import ru.malltshik.xls2pdf.render.SheetContentHandler;
+import ru.malltshik.xls2pdf.render.WorkbookReader;
+import ru.malltshik.xls2pdf.style.RenderStyle;
 
 import java.io.*;
-import java.text.DecimalFormat;
-import java.util.*;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
-import static com.itextpdf.text.Element.*;
-import static org.apache.poi.hssf.record.ExtendedFormatRecord.*;
-import static org.apache.poi.ss.usermodel.CellType.FORMULA;
+import static ru.malltshik.xls2pdf.html.MarkupWriter.bytes;
+import static ru.malltshik.xls2pdf.render.HtmlSheetRenderer.DEFAULTS_CLASS;
 
 public class Xls2HtmlConverter {
 
-    private final Workbook wb;
-    private final Appendable output;
+    private WorkbookReader reader;
     private final OutputStream target;
+    private final ConversionOptions options;
+    private final List<Integer> sheets;
+    private final ConversionResources resources;
+    /**
+     * Shared with the {@link Xls2PdfConverter} that renders the page, which then reports the metrics.
+     */
+    private final ConversionRecorder recorder;
+    private final boolean ownsRecorder;
     private boolean completeHTML;
-    private Formatter out;
-    private boolean gotBounds;
-    private int firstColumn;
-    private int endColumn;
-    private HtmlHelper helper;
+    private boolean inlineStyles = true;
+    private String styleRules;
+    private MarkupWriter out;
 
-    private static final String DEFAULTS_CLASS = "excelDefaults";
-    private static final String COL_HEAD_CLASS = "colHeader";
-
-    private static final Map<HorizontalAlignment, String> ALIGN = ExcelUtils.mapFor(ALIGN_LEFT, "left",
-            ALIGN_CENTER, "center", ALIGN_RIGHT, "right",
-            ALIGN_JUSTIFIED, "left", ALIGN_CENTER, "center");
-
-    private static final Map<VerticalAlignment, String> VERTICAL_ALIGN = ExcelUtils.mapFor(
-            VERTICAL_BOTTOM, "bottom", VERTICAL_CENTER, "middle", VERTICAL_TOP, "top");
+    static final byte[] PAGE_START = bytes(String.format(
+            "<?xml version=\"1.0\" encoding=\"utf-8\" ?>%n<html>%n<head>%n" +
+                    "<meta http-equiv=\"content-type\" content=\"application/xhtml+xml; charset=UTF-8\"/>%n" +
+                    "</head>%n<body>%n"));
+    static final byte[] PAGE_END = bytes(String.format("</body>%n</html>%n"));
+    static final byte[] STYLE_START = bytes(String.format("<style type=\"text/css\">%n"));
+    static final byte[] STYLE_END = bytes(String.format("</style>%n"));
 
 
     public OutputStream convert() throws IOException {
@@ -51,354 +53,225 @@ public class Xls2HtmlConverter {
     }
 
     public Xls2HtmlConverter(InputStream in, OutputStream out) {
-        Objects.requireNonNull(in, "Input source must be non null");
-        Objects.requireNonNull(out, "Output target must be non null");
-        try {
-            this.wb = WorkbookFactory.create(in);
-            this.target = out;
-            this.output = new OutputStreamWriter(this.target);
-        } catch (IOException | InvalidFormatException e) {
-            throw new IllegalArgumentException("Unable to initialize converter", e);
-        }
-        setupColorMap();
-        completeHTML = true;
+        this(in, out, ConversionOptions.defaults());
     }
 
-    public Xls2HtmlConverter(File in, OutputStream out) throws FileNotFoundException {
-        this(new FileInputStream(in), out);
+    public Xls2HtmlConverter(InputStream in, OutputStream out, ConversionOptions options) {
+        this(in, out, options, ConversionResources.shared());
     }
 
-    private void setupColorMap() {
-        if (wb instanceof HSSFWorkbook)
-            helper = new HSSFHtmlHelper((HSSFWorkbook) wb);
-        else if (wb instanceof XSSFWorkbook)
-            helper = new XSSFHtmlHelper((XSSFWorkbook) wb);
-        else
-            throw new IllegalArgumentException("unknown workbook type: " + wb.getClass().getSimpleName());
+    Xls2HtmlConverter(InputStream in, OutputStream out, ConversionOptions options, ConversionResources resources) {
+        this(WorkbookReaders.source(in), out, options, resources);
     }
 
-    private void printPage() throws IOException {
-        try {
-            ensureOut();
-            if (completeHTML) {
-                out.format("<?xml version=\"1.0\" encoding=\"utf-8\" ?>%n");
-                out.format("<html>%n");
-                out.format("<head>%n");
-                out.format("<meta http-equiv=\"content-type\" content=\"application/xhtml+xml; charset=UTF-8\"/>%n");
-                out.format("</head>%n");
-                out.format("<body>%n");
-            }
-
-            print();
+    /**
+     * Reads the workbook from the file as needed instead of loading a copy of the whole file first,
+     * which takes less memory for a large workbook.
+     */
+    public Xls2HtmlConverter(Path in, OutputStream out) {
+        this(in, out, ConversionOptions.defaults());
+    }
 
-            if (completeHTML) {
-                out.format("</body>%n");
-                out.format("</html>%n");
-            }
-        } finally {
-            if (out != null)
-                out.close();
-            if (output instanceof Closeable) {
-                Closeable closeable = (Closeable) output;
-                closeable.close();
-            }
-        }
+    public Xls2HtmlConverter(Path in, OutputStream out, ConversionOptions options) {
+        this(WorkbookReaders.source(in), out, options, ConversionResources.shared());
     }
 
-    private void print() {
-        printInlineStyle();
-        printSheets();
+    /**
+     * Converts a workbook already in memory, e.g. one filled from a template, without writing it out and
+     * reading it back. The workbook is left open, the streaming option does not apply.
+     */
+    public Xls2HtmlConverter(Workbook in, OutputStream out) {
+        this(in, out, ConversionOptions.defaults());
     }
 
-    private void printInlineStyle() {
-        out.format("<style type=\"text/css\">%n");
-        printStyles();
-        out.format("</style>%n");
+    public Xls2HtmlConverter(Workbook in, OutputStream out, ConversionOptions options) {
+        this(WorkbookReaders.source(in), out, options, ConversionResources.shared());
     }
 
-    private void ensureOut() {
-        if (out == null)
-            out = new Formatter(output);
+    Xls2HtmlConverter(WorkbookReaders.Source in, OutputStream out, ConversionOptions options,
+                      ConversionResources resources) {
+        this(in, out, options, resources, null);
     }
 
-    private void printStyles() {
-        ensureOut();
-        BufferedReader in = null;
+    /**
+     * @param recorder recorder of the conversion this page is part of, {@code null} for a conversion of
+     *                 its own
+     */
+    Xls2HtmlConverter(WorkbookReaders.Source in, OutputStream out, ConversionOptions options,
+                      ConversionResources resources, ConversionRecorder recorder) {
+        Objects.requireNonNull(out, "Output target must be non null");
+        Objects.requireNonNull(options, "Conversion options must be non null");
+        this.options = options;
+        this.resources = resources;
+        this.target = out;
+        this.ownsRecorder = recorder == null;
+        this.recorder = ownsRecorder ? ConversionRecorder.start(options.getListener()) : recorder;
+        long start = this.recorder.clock();
         try {
-            in = new BufferedReader(new InputStreamReader(
-                    this.getClass().getClassLoader().getResourceAsStream("excelStyle.css")
-            ));
-            String line;
-            while ((line = in.readLine()) != null) {
-                out.format("%s%n", line);
-            }
-        } catch (IOException e) {
-            throw new IllegalStateException("Reading standard css", e);
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    throw new IllegalStateException("Reading standard css", e);
-                }
-            }
+            this.reader = in.open(options);
+        } catch (RuntimeException e) {
+            finish(true);
+            throw e;
         }
-
-        Set<Short> seen = new HashSet<>();
-        for (int i = 0; i < wb.getNumberOfSheets(); i++) {
-            Sheet sheet = wb.getSheetAt(i);
-            Iterator<Row> rows = sheet.rowIterator();
-            while (rows.hasNext()) {
-                Row row = rows.next();
-                for (Cell cell : row) {
-                    CellStyle style = cell.getCellStyle();
-                    if (!seen.contains(style.getIndex())) {
-                        printStyle(style);
-                        seen.add(style.getIndex());
-                    }
-                }
+        this.recorder.stage(ConversionStage.LOAD, start);
+        try {
+            this.sheets = WorkbookReaders.selectSheets(reader, options);
+        } catch (IllegalArgumentException e) {
+            try {
+                reader.close();
+            } catch (IOException closing) {
+                e.addSuppressed(closing);
             }
+            finish(true);
+            throw e;
         }
+        this.recorder.add(ConversionCounter.SHEETS, sheets.size());
+        completeHTML = true;
     }
 
-    private void printStyle(CellStyle style) {
-        out.format(".%s .%s {%n", DEFAULTS_CLASS, styleName(style));
-        styleContents(style);
-        out.format("}%n");
+    public Xls2HtmlConverter(File in, OutputStream out) throws FileNotFoundException {
+        this(in, out, ConversionOptions.defaults());
     }
 
-    private void styleContents(CellStyle style) {
-        styleOut("text-align", style.getAlignmentEnum(), ALIGN);
-        styleOut("vertical-align", style.getVerticalAlignmentEnum(), VERTICAL_ALIGN);
-        fontStyle(style);
-        helper.borderStyles(style, out);
-        helper.colorStyles(style, out);
+    public Xls2HtmlConverter(File in, OutputStream out, ConversionOptions options) throws FileNotFoundException {
+        this(WorkbookReaders.existing(in), out, options);
     }
 
-    private void fontStyle(CellStyle style) {
-        Font font = wb.getFontAt(style.getFontIndex());
-
-        if (font.getBold())
-            out.format("  font-weight: bold;%n");
-        if (font.getItalic())
-            out.format("  font-style: italic;%n");
+    private void printPage() throws IOException {
+        boolean failed = true;
+        try {
+            extract();
+            ensureOut();
+            if (completeHTML)
+                out.raw(PAGE_START);
 
-        int fontheight = font.getFontHeightInPoints();
-        if (fontheight == 9) {
-            fontheight = 10;
-        }
-        out.format("  font-size: %dpt;%n", fontheight);
+            print();
 
-        if (!StringUtils.isEmpty(font.getFontName())) {
-            out.format("  font-family: %s;%n", font.getFontName());
+            if (completeHTML)
+                out.raw(PAGE_END);
+            failed = false;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            try {
+                close();
+            } finally {
+                if (out != null)
+                    recorder.add(ConversionCounter.HTML_BYTES, out.size());
+                finish(failed);
+            }
         }
     }
 
-    private String styleName(CellStyle style) {
-        if (style == null)
-            style = wb.getCellStyleAt((short) 0);
-        StringBuilder sb = new StringBuilder();
-        try (Formatter fmt = new Formatter(sb)) {
-            fmt.format("style_%02d", style.getIndex());
-            return fmt.toString();
-        }
+    private void finish(boolean failed) {
+        if (ownsRecorder)
+            recorder.finish(failed);
     }
 
-    private <K> void styleOut(String attr, K key, Map<K, String> mapping) {
-        String value = mapping.get(key);
-        if (value != null) {
-            out.format("  %s: %s;%n", attr, value);
+    /**
+     * Releases the workbook and closes the target, for a conversion that is given up before {@link #convert()}.
+     */
+    void close() throws IOException {
+        try {
+            reader.close();
+        } finally {
+            if (out != null)
+                out.close();
+            else
+                target.close();
         }
     }
 
-    private static CellType ultimateCellType(Cell c) {
-        CellType type = c.getCellTypeEnum();
-        if (type == FORMULA)
-            type = c.getCachedFormulaResultTypeEnum();
-        return type;
+    /**
+     * Replaces a reader that holds the POI workbook by the models of the chosen sheets, so the workbook is
+     * released before the page is written.
+     */
+    private void extract() throws IOException {
+        reader = WorkbookReaders.extract(reader, sheets, recorder);
     }
 
-    private void printSheets() {
-        ensureOut();
-        Sheet sheet = wb.getSheetAt(0);
-        printSheet(sheet);
+    /**
+     * Leaves the {@code <style>} element out of the page, for a consumer that applies the standard css and
+     * {@link #styleRules()} by itself.
+     */
+    void omitInlineStyles() {
+        inlineStyles = false;
     }
 
-    private void printSheet(Sheet sheet) {
-        ensureOut();
-        out.format("<table class=%s>%n", DEFAULTS_CLASS);
-        printCols(sheet);
-        printSheetContent(sheet);
-        out.format("</table>%n");
+    private void print() throws IOException {
+        if (inlineStyles)
+            printInlineStyle();
+        printSheets();
     }
 
-    private void printCols(Sheet sheet) {
-        out.format("<col/>%n");
-        ensureColumnBounds(sheet);
-        for (int i = firstColumn; i < endColumn; i++) {
-            out.format("<col/>%n");
-        }
+    private void printInlineStyle() throws IOException {
+        out.raw(STYLE_START);
+        printStyles();
+        out.raw(STYLE_END);
     }
 
-    private void ensureColumnBounds(Sheet sheet) {
-        if (gotBounds)
-            return;
-
-        Iterator<Row> iter = sheet.rowIterator();
-        firstColumn = (iter.hasNext() ? Integer.MAX_VALUE : 0);
-        endColumn = 0;
-        while (iter.hasNext()) {
-            Row row = iter.next();
-            short firstCell = row.getFirstCellNum();
-            if (firstCell >= 0) {
-                firstColumn = Math.min(firstColumn, firstCell);
-                endColumn = Math.max(endColumn, row.getLastCellNum());
-            }
-        }
-        gotBounds = true;
+    private void ensureOut() {
+        if (out == null)
+            out = new MarkupWriter(target);
     }
 
-    private void printColumnHeads() {
-        out.format("<thead>%n");
-        out.format("  <tr class=%s>%n", COL_HEAD_CLASS);
-        out.format("    <th class=%s>&#x25CA;</th>%n", COL_HEAD_CLASS);
-        StringBuilder colName = new StringBuilder();
-        for (int i = firstColumn; i < endColumn; i++) {
-            colName.setLength(0);
-            int cnum = i;
-            do {
-                colName.insert(0, (char) ('A' + cnum % 26));
-                cnum /= 26;
-            } while (cnum > 0);
-            out.format("    <th class=%s>%s</th>%n", COL_HEAD_CLASS, colName);
-        }
-        out.format("  </tr>%n");
-        out.format("</thead>%n");
+    private void printStyles() throws IOException {
+        ensureOut();
+        out.raw(resources.getStandardCss());
+        out.raw(styleRules());
     }
 
-    private static CellRangeAddress getMergedRegion(Sheet sheet, int rowNum, int cellNum) {
-        for (int i = 0; i < sheet.getNumMergedRegions(); i++) {
-            CellRangeAddress merged = sheet.getMergedRegion(i);
-            if (merged.isInRange(rowNum, cellNum)) {
-                return merged;
-            }
+    /**
+     * @return css rules of the styles the chosen sheets use, one rule per class
+     */
+    String styleRules() throws IOException {
+        if (styleRules == null) {
+            extract();
+            styleRules = styleRules(reader, sheets, recorder);
         }
-        return null;
+        return styleRules;
     }
 
-    private void printSheetContent(Sheet sheet) {
-        int splitTopRow = -1;
-        boolean isSplit = false;
-        PaneInformation pi = sheet.getPaneInformation();
-        if (pi != null && pi.getActivePane() > 1 && pi.isFreezePane()) {
-            splitTopRow = pi.getHorizontalSplitTopRow();
-        }
-
-        if (splitTopRow < 0) {
-            out.format("<tbody>%n");
-        } else {
-            out.format("<thead>%n");
-            isSplit = true;
-        }
-
-        Iterator<Row> rows = sheet.rowIterator();
-        while (rows.hasNext()) {
-            Row row = rows.next();
-            int rowNum = row.getRowNum();
-
-            out.format("  <tr>%n");
-            for (int i = firstColumn; i < endColumn; i++) {
-                CellRangeAddress mergeRegion = getMergedRegion(sheet, rowNum, i);
-                String spanCol = "";
-                String spanRow = "";
-                if (mergeRegion != null) {
-                    int mergeCol = mergeRegion.getLastColumn() - mergeRegion.getFirstColumn();
-                    int mergeRow = mergeRegion.getLastRow() - mergeRegion.getFirstRow();
-                    if (mergeCol > 0) {
-                        int colSpan = mergeCol + 1;
-                        spanCol = " colspan=\"" + colSpan + "\"";
-                    }
-                    if (mergeRow > 0 && rowNum == mergeRegion.getFirstRow()) {
-                        int rowSpan = mergeRow + 1;
-                        spanRow = " rowspan=\"" + rowSpan + "\"";
-                    } else if (mergeRow > 0) {
-                        continue;
-                    }
-                }
-
-                String content = "&nbsp;";
-                String attrs = "";
-                CellStyle style = null;
-                if (i >= row.getFirstCellNum() && i < row.getLastCellNum()) {
-                    Cell cell = row.getCell(i);
-                    if (cell != null) {
-                        style = cell.getCellStyle();
-                        attrs = tagStyle(style);
-                        CellFormat cf = CellFormat.getInstance(style.getDataFormatString());
-                        CellFormatResult result = cf.apply(cell);
-                        if (cell.getCellTypeEnum() == CellType.FORMULA) {
-                            FormulaEvaluator evaluator = wb.getCreationHelper().createFormulaEvaluator();
-                            CellValue cellValue = evaluator.evaluate(cell);
-                            DecimalFormat df2 = new DecimalFormat("##0.000");
-
-                            content = String.valueOf(df2.format(cellValue.getNumberValue()));
-                        } else
-                            content = result.text;
-
-                        if (!StringUtils.isEmpty(content)) {
-                            content = StringUtils.stripEnd(content, null);
-                        }
-
-                        if (content.equals(""))
-                            content = "&nbsp;";
-                        if (!StringUtils.isEmpty(content) && content.trim().equals("- 0"))
-                            content = "-";
-                    }
-                }
-
-                if (style != null && style.getRotation() == 90) {
-                    out.format("    <td class=\"%s rotate\" %s %s><div><span>%s</span></div></td>%n",
-                            styleName(style), attrs, spanCol + spanRow, content);
-                } else
-                    out.format("    <td class=%s %s %s>%s</td>%n",
-                            styleName(style), attrs, spanCol + spanRow, content);
-
-                if (mergeRegion != null) {
-                    int col = mergeRegion.getLastColumn() - mergeRegion.getFirstColumn();
-                    i += col;
-                }
-
-                if (style != null) {
-
-                }
-            }
-            out.format("  </tr>%n");
+    /**
+     * Writes the style sheet of the sheets as a conversion does, for a page that embeds several conversions
+     * or to measure the stage on its own.
+     *
+     * @return css rules of the styles the sheets use, one rule per class
+     */
+    public static String styleRules(WorkbookReader reader, List<Integer> sheets) throws IOException {
+        return styleRules(reader, sheets, ConversionRecorder.start(ConversionListener.NONE));
+    }
 
-            if (isSplit && rowNum == splitTopRow - 1) {
-                out.format("</thead>%n");
-                out.format("<tbody>%n");
+    /**
+     * @return css rules of the styles the sheets use, one rule per class
+     */
+    static String styleRules(WorkbookReader reader, List<Integer> sheets, ConversionRecorder recorder)
+            throws IOException {
+        long start = recorder.clock();
+        String lineSeparator = System.lineSeparator();
+        StringBuilder rules = new StringBuilder();
+        Set<String> printed = new HashSet<>();
+        for (RenderStyle style : reader.usedStyles(sheets)) {
+            if (printed.add(style.getClassName())) {
+                rules.append('.').append(DEFAULTS_CLASS).append(" .").append(style.getClassName())
+                        .append(" {").append(lineSeparator).append(style.getCss()).append('}')
+                        .append(lineSeparator);
             }
-
         }
-        out.format("</tbody>%n");
+        recorder.stage(ConversionStage.STYLES, start);
+        recorder.add(ConversionCounter.STYLES_EMITTED, printed.size());
+        return rules.toString();
     }
 
-    private String tagStyle(CellStyle style) {
-
-        switch (style.getAlignmentEnum()) {
-            case RIGHT:
-                return "style=\"text-align: right;\"";
-            case CENTER:
-            case CENTER_SELECTION:
-                return "style=\"text-align: center;\"";
-            case GENERAL:
-            case LEFT:
-            case JUSTIFY:
-            case FILL:
-            case DISTRIBUTED:
-            default:
-                return "style=\"text-align: left;\"";
-
-        }
+    /**
+     * Writes the chosen sheets as consecutive tables.
+     */
+    private void printSheets() throws IOException {
+        ensureOut();
+        long start = recorder.clock();
+        SheetContentHandler renderer = recorder.counting(new HtmlSheetRenderer(out, reader.getStyles()));
+        for (int sheet : sheets)
+            WorkbookReaders.read(reader, sheet, options.getWindow(), renderer);
+        recorder.stage(ConversionStage.CONTENT, start);
     }
 }
@@ -2,42 +2,447 @@ package ru.malltshik.xls2pdf.converter;
 
 import com.itextpdf.text.*;
 import com.itextpdf.text.pdf.ColumnText;
+import com.itextpdf.text.pdf.PdfCopy;
 import com.itextpdf.text.pdf.PdfPTable;
+import com.itextpdf.text.pdf.PdfReader;
 import com.itextpdf.text.pdf.PdfWriter;
 import com.itextpdf.tool.xml.ElementList;
-import com.itextpdf.tool.xml.XMLWorkerHelper;
+import com.itextpdf.tool.xml.XMLWorker;
+import com.itextpdf.tool.xml.css.CssFilesImpl;
+import com.itextpdf.tool.xml.css.StyleAttrCSSResolver;
+import com.itextpdf.tool.xml.html.CssAppliersImpl;
+import com.itextpdf.tool.xml.parser.XMLParser;
+import com.itextpdf.tool.xml.pipeline.css.CssResolverPipeline;
+import com.itextpdf.tool.xml.pipeline.end.PdfWriterPipeline;
+import com.itextpdf.tool.xml.pipeline.html.HtmlPipeline;
+import com.itextpdf.tool.xml.pipeline.html.HtmlPipelineContext;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.malltshik.xls2pdf.font.FontRegistry;
+import ru.malltshik.xls2pdf.metrics.ConversionCounter;
+import ru.malltshik.xls2pdf.metrics.ConversionRecorder;
+import ru.malltshik.xls2pdf.metrics.ConversionStage;
+import ru.malltshik.xls2pdf.render.PdfSheetRenderer;
+import ru.malltshik.xls2pdf.render.SheetContentHandler;
+import ru.malltshik.xls2pdf.render.SheetModel;
+import ru.malltshik.xls2pdf.render.SheetWindow;
+import ru.malltshik.xls2pdf.render.WorkbookReader;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
 import java.util.Objects;
-
-import static com.itextpdf.tool.xml.XMLWorkerHelper.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Xls2PdfConverter {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Xls2PdfConverter.class);
 
+    /**
+     * Capacity of the channel between the HTML producer and XMLWorker.
+     */
+    private static final int HTML_PIPE_SIZE = 64 * 1024;
+
     private final Xls2HtmlConverter xls2HtmlConverter;
+    private final PipedInputStream htmlInput;
+    private WorkbookReader reader;
     private final OutputStream target;
+    private final ConversionResources resources;
+    private final int flushRows;
+    private final boolean printSetup;
+    private final List<Integer> sheets;
+    private final Executor executor;
+    private final SheetWindow window;
+    /**
+     * Fonts of the configured directory, {@code null} to leave the fonts to iText and XMLWorker.
+     */
+    private final FontProvider fonts;
+    private final ConversionRecorder recorder;
 
     public OutputStream convert() throws IOException, DocumentException {
-        ByteArrayOutputStream htmlOutput = (ByteArrayOutputStream) xls2HtmlConverter.convert();
-        // TODO dynamical scale
+        boolean failed = true;
+        try {
+            OutputStream converted = reader != null ? convertDirect() : convertHtml();
+            failed = false;
+            return converted;
+        } finally {
+            recorder.finish(failed);
+        }
+    }
+
+    /**
+     * Renders the HTML on a producer thread while XMLWorker parses it from a bounded pipe, so the
+     * document is never held in memory as a whole. A failing side closes its end of the pipe, which
+     * stops the other one; the producer's error is reported first, it is the cause of the consumer's.
+     * <p>
+     * The style sheets are not sent through the pipe: XMLWorker gets them parsed from the shared
+     * {@link ConversionResources}, the workbook rules are collected before the producer starts.
+     * <p>
+     * The producer runs on the executor of the options, it blocks while the pipe is full and so must not
+     * run on the calling thread; without an executor it gets a thread of its own.
+     */
+    private OutputStream convertHtml() throws IOException, DocumentException {
+        String styleRules;
+        AtomicReference<Throwable> producerError = new AtomicReference<>();
+        Future<?> producer;
+        try {
+            styleRules = xls2HtmlConverter.styleRules();
+            xls2HtmlConverter.omitInlineStyles();
+            producer = startProducer(() -> {
+                try {
+                    xls2HtmlConverter.convert();
+                } catch (Throwable e) {
+                    producerError.set(e);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            try {
+                xls2HtmlConverter.close();
+            } catch (IOException closing) {
+                e.addSuppressed(closing);
+            }
+            throw e;
+        }
+
+        long start = recorder.clock();
+        PdfWriter writer;
+        try {
+            // the print setup of the sheets is only applied by the DIRECT backend
+            Document doc = new Document(PageSize.A2);
+            writer = PdfWriter.getInstance(doc, target);
+            doc.open();
+            parser(doc, writer, styleRules).parse(htmlInput, StandardCharsets.UTF_8);
+            doc.close();
+        } catch (IOException | DocumentException | RuntimeException e) {
+            htmlInput.close();
+            join(producer);
+            Throwable cause = producerError.get();
+            if (cause == null)
+                throw e;
+            cause.addSuppressed(e);
+            throw rethrow(cause);
+        }
+        htmlInput.close();
+        join(producer);
+        Throwable cause = producerError.get();
+        if (cause != null)
+            throw rethrow(cause);
+        // the producer records into the same recorder, so the parse is recorded once it is joined
+        recorder.stage(ConversionStage.XML_WORKER, start);
+        recorder.add(ConversionCounter.PDF_PAGES, writer.getCurrentPageNumber() - 1);
+        return target;
+    }
+
+    /**
+     * Same pipeline as {@code XMLWorkerHelper.parseXHtml(writer, doc, in)}, built from the shared parts.
+     * The page is read as UTF-8, the encoding it is written in, rather than in the platform encoding.
+     */
+    private XMLParser parser(Document doc, PdfWriter writer, String styleRules) {
+        CssFilesImpl cssFiles = new CssFilesImpl();
+        cssFiles.add(resources.getXmlWorkerCss());
+        cssFiles.add(resources.getStandardCssFile());
+        cssFiles.add(resources.workbookCss(styleRules));
+        HtmlPipelineContext context = new HtmlPipelineContext(new CssAppliersImpl(
+                fonts == null ? resources.getFontProvider() : fonts));
+        context.setAcceptUnknown(true).autoBookmark(true).setTagFactory(resources.getTagProcessors());
+        HtmlPipeline html = new HtmlPipeline(context, new PdfWriterPipeline(doc, writer));
+        XMLWorker worker = new XMLWorker(new CssResolverPipeline(new StyleAttrCSSResolver(cssFiles), html), true);
+        return new XMLParser(true, worker, StandardCharsets.UTF_8);
+    }
+
+    private Future<?> startProducer(Runnable task) {
+        if (executor != null)
+            return CompletableFuture.runAsync(task, executor);
+        FutureTask<Void> future = new FutureTask<>(task, null);
+        Thread producer = new Thread(future, "xls2pdf-html");
+        producer.setDaemon(true);
+        producer.start();
+        return future;
+    }
+
+    private static void join(Future<?> producer) throws IOException {
+        try {
+            producer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the HTML producer");
+        } catch (ExecutionException e) {
+            // the producer reports its own errors, this is only reached when the executor fails it
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static IOException rethrow(Throwable e) {
+        if (e instanceof IOException)
+            return (IOException) e;
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+        if (e instanceof Error)
+            throw (Error) e;
+        return new IOException("Rendering failed", e);
+    }
+
+    /**
+     * A reader that holds the POI workbook is replaced by the models of the chosen sheets first, so the
+     * workbook is released before the layout starts.
+     */
+    private OutputStream convertDirect() throws IOException, DocumentException {
+        Throwable failure = null;
+        try {
+            reader = WorkbookReaders.extract(reader, sheets, recorder);
+            long start = recorder.clock();
+            if (executor == null)
+                renderSheets();
+            else
+                renderSheetsParallel();
+            recorder.stage(ConversionStage.PDF_LAYOUT, start);
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            close(failure, reader, target);
+        }
+        return target;
+    }
+
+    /**
+     * Closes every one of the closeables even when closing another one fails. Failures are added to the
+     * failure of the conversion as suppressed, without one the first failure is thrown.
+     *
+     * @param failure failure of the conversion, {@code null} when it succeeded
+     */
+    private static void close(Throwable failure, Closeable... closeables) throws IOException {
+        Exception first = null;
+        for (Closeable closeable : closeables) {
+            try {
+                closeable.close();
+            } catch (IOException | RuntimeException e) {
+                if (failure != null)
+                    failure.addSuppressed(e);
+                else if (first == null)
+                    first = e;
+                else
+                    first.addSuppressed(e);
+            }
+        }
+        if (first instanceof IOException)
+            throw (IOException) first;
+        if (first != null)
+            throw (RuntimeException) first;
+    }
+
+    /**
+     * Lays the sheets out one after another into one document, each sheet starting on a new page.
+     */
+    private void renderSheets() throws IOException, DocumentException {
         Document doc = new Document(PageSize.A2);
         PdfWriter writer = PdfWriter.getInstance(doc, target);
         doc.open();
-        getInstance().parseXHtml(writer, doc, new ByteArrayInputStream(htmlOutput.toByteArray()));
+        SheetContentHandler renderer = recorder.counting(
+                new PdfSheetRenderer(doc, reader.getStyles(), flushRows, directFonts(), printSetup));
+        for (int sheet : sheets) {
+            doc.newPage();
+            WorkbookReaders.read(reader, sheet, window, renderer);
+        }
+        doc.close();
+        recorder.add(ConversionCounter.PDF_PAGES, writer.getCurrentPageNumber() - 1);
+    }
+
+    /**
+     * Reads the sheets one after another into models and lays every model out into a PDF fragment
+     * of its own on the executor. Fragments are appended to the target in sheet order as soon as all
+     * sheets before them are. At most one sheet per processor is read but not yet appended: with that many
+     * pending, the next sheet is only read once the first pending one is appended, which bounds the memory
+     * the models and fragments take even when one sheet takes much longer than the others.
+     */
+    private void renderSheetsParallel() throws IOException, DocumentException {
+        int maxPending = Runtime.getRuntime().availableProcessors();
+        Deque<CompletableFuture<byte[]>> fragments = new ArrayDeque<>();
+        Document doc = new Document();
+        PdfCopy copy = new PdfCopy(doc, target);
+        doc.open();
+        Throwable failure = null;
+        try {
+            for (int sheet : sheets) {
+                while (fragments.size() >= maxPending)
+                    appendFirst(copy, fragments);
+                SheetModel model = reader.model(sheet);
+                recorder.model(model);
+                CellRangeAddress range = window == null ? null : window.rangeOf(reader, sheet);
+                fragments.add(CompletableFuture.supplyAsync(() -> renderFragment(model, range), executor));
+                while (!fragments.isEmpty() && fragments.peek().isDone())
+                    appendFirst(copy, fragments);
+            }
+            while (!fragments.isEmpty())
+                appendFirst(copy, fragments);
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            for (CompletableFuture<byte[]> fragment : fragments)
+                fragment.cancel(false);
+            if (failure != null) {
+                try {
+                    doc.close();
+                } catch (RuntimeException closing) {
+                    failure.addSuppressed(closing);
+                }
+            }
+        }
         doc.close();
-        return target;
+    }
+
+    private void appendFirst(PdfCopy copy, Deque<CompletableFuture<byte[]>> fragments)
+            throws IOException, DocumentException {
+        recorder.add(ConversionCounter.PDF_PAGES, append(copy, await(fragments.poll())));
+    }
+
+    /**
+     * @param range part of the sheet to render, {@code null} for the whole sheet
+     */
+    private byte[] renderFragment(SheetModel model, CellRangeAddress range) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Document doc = new Document(PageSize.A2);
+        try {
+            PdfWriter.getInstance(doc, out);
+        } catch (DocumentException e) {
+            throw new CompletionException(e);
+        }
+        doc.open();
+        PdfSheetRenderer renderer = new PdfSheetRenderer(doc, model.getStyles(), flushRows, directFonts(),
+                printSetup);
+        if (range == null)
+            model.replay(renderer);
+        else
+            model.replay(renderer, range);
+        doc.close();
+        return out.toByteArray();
+    }
+
+    private FontProvider directFonts() {
+        return fonts == null ? FontFactory.getFontImp() : fonts;
+    }
+
+    /**
+     * @return number of pages appended
+     */
+    private static int append(PdfCopy copy, byte[] fragment) throws IOException, DocumentException {
+        PdfReader pages = new PdfReader(fragment);
+        try {
+            for (int page = 1; page <= pages.getNumberOfPages(); page++)
+                copy.addPage(copy.getImportedPage(pages, page));
+            copy.freeReader(pages);
+            return pages.getNumberOfPages();
+        } finally {
+            pages.close();
+        }
+    }
+
+    private static byte[] await(Future<byte[]> fragment) throws IOException, DocumentException {
+        try {
+            return fragment.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a sheet to be rendered");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DocumentException)
+                throw (DocumentException) e.getCause();
+            throw rethrow(e.getCause());
+        }
     }
 
     public Xls2PdfConverter(InputStream in, OutputStream out) {
-        Objects.requireNonNull(in, "Input source must be non null");
+        this(in, out, ConversionOptions.defaults());
+    }
+
+    public Xls2PdfConverter(InputStream in, OutputStream out, ConversionOptions options) {
+        this(in, out, options, ConversionResources.shared());
+    }
+
+    Xls2PdfConverter(InputStream in, OutputStream out, ConversionOptions options, ConversionResources resources) {
+        this(WorkbookReaders.source(in), out, options, resources);
+    }
+
+    /**
+     * Reads the workbook from the file as needed instead of loading a copy of the whole file first,
+     * which takes less memory for a large workbook.
+     */
+    public Xls2PdfConverter(Path in, OutputStream out) {
+        this(in, out, ConversionOptions.defaults());
+    }
+
+    public Xls2PdfConverter(Path in, OutputStream out, ConversionOptions options) {
+        this(WorkbookReaders.source(in), out, options, ConversionResources.shared());
+    }
+
+    /**
+     * Converts a workbook already in memory, e.g. one filled from a template, without writing it out and
+     * reading it back. The workbook is left open, the streaming option does not apply.
+     */
+    public Xls2PdfConverter(Workbook in, OutputStream out) {
+        this(in, out, ConversionOptions.defaults());
+    }
+
+    public Xls2PdfConverter(Workbook in, OutputStream out, ConversionOptions options) {
+        this(WorkbookReaders.source(in), out, options, ConversionResources.shared());
+    }
+
+    Xls2PdfConverter(WorkbookReaders.Source in, OutputStream out, ConversionOptions options,
+                     ConversionResources resources) {
         Objects.requireNonNull(out, "Output target must be non null");
-        OutputStream htmlOutput = new ByteArrayOutputStream();
-        this.xls2HtmlConverter = new Xls2HtmlConverter(in, htmlOutput);
+        Objects.requireNonNull(options, "Conversion options must be non null");
+        this.fonts = options.getFontDirectory() == null ? null : FontRegistry.of(options.getFontDirectory());
+        this.recorder = ConversionRecorder.start(options.getListener());
+        if (options.getPdfBackend() == PdfBackend.DIRECT) {
+            long start = recorder.clock();
+            try {
+                this.reader = in.open(options);
+            } catch (RuntimeException e) {
+                recorder.finish(true);
+                throw e;
+            }
+            recorder.stage(ConversionStage.LOAD, start);
+            try {
+                this.sheets = WorkbookReaders.selectSheets(reader, options);
+            } catch (IllegalArgumentException e) {
+                try {
+                    reader.close();
+                } catch (IOException closing) {
+                    e.addSuppressed(closing);
+                }
+                recorder.finish(true);
+                throw e;
+            }
+            recorder.add(ConversionCounter.SHEETS, sheets.size());
+            this.xls2HtmlConverter = null;
+            this.htmlInput = null;
+        } else {
+            this.htmlInput = new PipedInputStream(HTML_PIPE_SIZE);
+            try {
+                this.xls2HtmlConverter = new Xls2HtmlConverter(in, new PipedOutputStream(htmlInput), options,
+                        resources, recorder);
+            } catch (IOException e) {
+                recorder.finish(true);
+                throw new IllegalStateException("Unable to connect HTML pipe", e);
+            } catch (RuntimeException e) {
+                recorder.finish(true);
+                throw e;
+            }
+            this.reader = null;
+            this.sheets = null;
+        }
         target = out;
+        this.resources = resources;
+        flushRows = options.getPdfFlushRows();
+        printSetup = options.isPrintSetup();
+        executor = options.getExecutor();
+        window = options.getWindow();
     }
 
 }
@@ -0,0 +1,227 @@
+package ru.malltshik.xls2pdf.font;
+
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.FontProvider;
+import com.itextpdf.text.pdf.BaseFont;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Fonts of a directory indexed by family, bold and italic, for the PDF output.
+ * <p>
+ * The directory is scanned once per JVM, only the names of the fonts are read then. A font file is loaded
+ * into a {@link BaseFont} on first use and shared by all documents of the JVM. Fonts are embedded with
+ * {@link BaseFont#IDENTITY_H}, so every script the font covers can be written, and only the glyphs a
+ * document uses are embedded.
+ * <p>
+ * A family that is not in the directory is replaced by the fallback family: Arial when present, otherwise
+ * the first family in alphabetical order. A missing bold or italic face is simulated from the regular one.
+ * Thread safe.
+ */
+public final class FontRegistry implements FontProvider {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FontRegistry.class);
+
+    private static final String DEFAULT_FALLBACK = "arial";
+    private static final int BOLD = 1;
+    private static final int ITALIC = 2;
+
+    private static final Map<Path, FontRegistry> SCANNED = new ConcurrentHashMap<>();
+    private static final Map<String, BaseFont> BASE_FONTS = new ConcurrentHashMap<>();
+
+    /**
+     * Faces by family in lower case, indexed by style: regular, bold, italic, bold italic.
+     */
+    private final Map<String, Face[]> families;
+    private final String fallback;
+
+    private FontRegistry(Map<String, Face[]> families, String fallback) {
+        this.families = families;
+        this.fallback = fallback;
+    }
+
+    /**
+     * @return fonts of the directory and its subdirectories, scanned on the first call for the directory
+     */
+    public static FontRegistry of(Path directory) {
+        return SCANNED.computeIfAbsent(directory.toAbsolutePath().normalize(), FontRegistry::scan);
+    }
+
+    /**
+     * @return registry of the same fonts replacing unknown families by the given one
+     * @throws IllegalArgumentException when the family is not in the registry
+     */
+    public FontRegistry withFallback(String family) {
+        String key = key(family);
+        if (!families.containsKey(key))
+            throw new IllegalArgumentException("No font family " + family + " in registry");
+        return new FontRegistry(families, key);
+    }
+
+    /**
+     * @return names of the registered families in lower case
+     */
+    public Set<String> getFamilies() {
+        return Collections.unmodifiableSet(families.keySet());
+    }
+
+    @Override
+    public boolean isRegistered(String family) {
+        return family != null && families.containsKey(key(family));
+    }
+
+    /**
+     * @return the face of the family closest to the style, a face of the fallback family when the family
+     * is unknown
+     */
+    public BaseFont getBaseFont(String family, boolean bold, boolean italic) {
+        return face(family, bold, italic).baseFont();
+    }
+
+    /**
+     * Encoding and embedding are fixed by the registry, the arguments are ignored.
+     */
+    @Override
+    public Font getFont(String family, String encoding, boolean embedded, float size, int style, BaseColor color) {
+        return getFont(family, size, style, color);
+    }
+
+    /**
+     * @param style {@link Font} style bits, bold and italic select the face
+     */
+    public Font getFont(String family, float size, int style, BaseColor color) {
+        if (style == Font.UNDEFINED)
+            return new Font(face(family, false, false).baseFont(), size, style, color);
+        Face face = face(family, (style & BOLD) != 0, (style & ITALIC) != 0);
+        return new Font(face.baseFont(), size, style & ~face.style, color);
+    }
+
+    private Face face(String family, boolean bold, boolean italic) {
+        Face[] faces = family == null ? null : families.get(key(family));
+        if (faces == null)
+            faces = families.get(fallback);
+        int style = (bold ? BOLD : 0) | (italic ? ITALIC : 0);
+        if (faces[style] != null)
+            return faces[style];
+        if (faces[style & BOLD] != null)
+            return faces[style & BOLD];
+        if (faces[style & ITALIC] != null)
+            return faces[style & ITALIC];
+        for (Face face : faces)
+            if (face != null)
+                return face;
+        throw new IllegalStateException("Family without faces: " + family);
+    }
+
+    private static String key(String family) {
+        return family.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static FontRegistry scan(Path directory) {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(Files::isRegularFile).filter(FontRegistry::isFontFile).sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to scan font directory " + directory, e);
+        }
+
+        Map<String, Face[]> families = new HashMap<>();
+        for (Path file : files) {
+            String path = file.toString();
+            try {
+                if (path.toLowerCase(Locale.ROOT).endsWith(".ttc")) {
+                    String[] names = BaseFont.enumerateTTCNames(path);
+                    for (int i = 0; i < names.length; i++)
+                        register(families, path + "," + i);
+                } else {
+                    register(families, path);
+                }
+            } catch (DocumentException | IOException | RuntimeException e) {
+                LOGGER.warn("Skipping font {}: {}", path, e.toString());
+            }
+        }
+        if (families.isEmpty())
+            throw new IllegalArgumentException("No fonts in " + directory);
+
+        String fallback = families.containsKey(DEFAULT_FALLBACK) ? DEFAULT_FALLBACK
+                : new TreeSet<>(families.keySet()).first();
+        LOGGER.debug("Registered {} font families of {}", families.size(), directory);
+        return new FontRegistry(families, fallback);
+    }
+
+    private static boolean isFontFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".ttf") || name.endsWith(".otf") || name.endsWith(".ttc");
+    }
+
+    /**
+     * Faces are told apart by the full name. Of several files for the same face the one with the shortest
+     * full name wins, e.g. "DejaVu Sans" over "DejaVu Sans ExtraLight".
+     */
+    private static void register(Map<String, Face[]> families, String file) throws DocumentException, IOException {
+        Object[] names = BaseFont.getAllFontNames(file, BaseFont.IDENTITY_H, null);
+        String family = englishName((String[][]) names[1]);
+        String fullName = englishName((String[][]) names[2]);
+        if (family == null || fullName == null)
+            return;
+        String lowerName = fullName.toLowerCase(Locale.ROOT);
+        int style = (lowerName.contains("bold") ? BOLD : 0)
+                | (lowerName.contains("italic") || lowerName.contains("oblique") ? ITALIC : 0);
+        Face[] faces = families.computeIfAbsent(key(family), k -> new Face[4]);
+        if (faces[style] == null || fullName.length() < faces[style].fullName.length())
+            faces[style] = new Face(file, fullName, style);
+    }
+
+    /**
+     * @param names name table entries: platform, encoding, language and name
+     * @return the Windows English name, else the first one
+     */
+    private static String englishName(String[][] names) {
+        String first = null;
+        for (String[] name : names) {
+            if ("3".equals(name[0]) && "1033".equals(name[2]))
+                return name[3];
+            if (first == null)
+                first = name[3];
+        }
+        return first;
+    }
+
+    private static final class Face {
+
+        private final String file;
+        private final String fullName;
+        private final int style;
+
+        private Face(String file, String fullName, int style) {
+            this.file = file;
+            this.fullName = fullName;
+            this.style = style;
+        }
+
+        private BaseFont baseFont() {
+            return BASE_FONTS.computeIfAbsent(file, Face::load);
+        }
+
+        private static BaseFont load(String file) {
+            try {
+                return BaseFont.createFont(file, BaseFont.IDENTITY_H, BaseFont.EMBEDDED, BaseFont.NOT_CACHED,
+                        null, null);
+            } catch (DocumentException | IOException e) {
+                throw new IllegalStateException("Unable to load font " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package ru.malltshik.xls2pdf.formula;
+
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+
+import java.text.DecimalFormat;
+import java.util.Objects;
+
+import static org.apache.poi.ss.usermodel.CellType.FORMULA;
+
+/**
+ * Formula support of a single conversion.
+ * <p>
+ * One evaluator is created per workbook and kept for the whole conversion, so POI's evaluation
+ * cache is shared between cells and dependency chains are computed once.
+ * Not thread safe, like the POI evaluator it wraps.
+ */
+public class FormulaEngine {
+
+    public static final String NUMBER_PATTERN = "##0.000";
+
+    private final Workbook wb;
+    private final FormulaEvaluationPolicy policy;
+    private final DecimalFormat numberFormat = new DecimalFormat(NUMBER_PATTERN);
+    private FormulaEvaluator evaluator;
+    private long evaluated;
+    private long evaluationNanos;
+
+    public FormulaEngine(Workbook wb, FormulaEvaluationPolicy policy) {
+        this.wb = Objects.requireNonNull(wb, "Workbook must be non null");
+        this.policy = Objects.requireNonNull(policy, "Formula evaluation policy must be non null");
+    }
+
+    /**
+     * Evaluates all formulas of the workbook up front and stores their results in the cells.
+     * Does nothing for {@link FormulaEvaluationPolicy#CACHED_ONLY}.
+     */
+    public void evaluateAll() {
+        if (policy != FormulaEvaluationPolicy.CACHED_ONLY) {
+            long start = System.nanoTime();
+            evaluator().evaluateAll();
+            evaluationNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * @return display text of a formula cell according to the policy
+     */
+    public String text(Cell cell) {
+        return text(value(cell));
+    }
+
+    /**
+     * @return result of a formula cell according to the policy, {@code null} when there is none
+     */
+    public CellValue value(Cell cell) {
+        if (policy == FormulaEvaluationPolicy.EVALUATE
+                || policy == FormulaEvaluationPolicy.EVALUATE_ON_MISSING_CACHE && !hasCachedResult(cell)) {
+            long start = System.nanoTime();
+            CellValue value = evaluator().evaluate(cell);
+            evaluationNanos += System.nanoTime() - start;
+            evaluated++;
+            return value;
+        }
+        return cachedValue(cell);
+    }
+
+    /**
+     * @return number of formula cells evaluated by {@link #value(Cell)}
+     */
+    public long getEvaluated() {
+        return evaluated;
+    }
+
+    /**
+     * @return time spent evaluating formulas, by {@link #evaluateAll()} included
+     */
+    public long getEvaluationNanos() {
+        return evaluationNanos;
+    }
+
+    /**
+     * @return display text of a formula result, numbers in the {@link #NUMBER_PATTERN}
+     */
+    public String text(CellValue value) {
+        if (value == null)
+            return "";
+        switch (value.getCellTypeEnum()) {
+            case STRING:
+                return value.getStringValue();
+            case BOOLEAN:
+                return String.valueOf(value.getBooleanValue()).toUpperCase();
+            case ERROR:
+                return FormulaError.forInt(value.getErrorValue()).getString();
+            case NUMERIC:
+            default:
+                return numberFormat.format(value.getNumberValue());
+        }
+    }
+
+    public static CellType ultimateCellType(Cell c) {
+        CellType type = c.getCellTypeEnum();
+        if (type == FORMULA)
+            type = c.getCachedFormulaResultTypeEnum();
+        return type;
+    }
+
+    private FormulaEvaluator evaluator() {
+        if (evaluator == null)
+            evaluator = wb.getCreationHelper().createFormulaEvaluator();
+        return evaluator;
+    }
+
+    private static CellValue cachedValue(Cell cell) {
+        switch (ultimateCellType(cell)) {
+            case STRING:
+                return new CellValue(cell.getStringCellValue());
+            case BOOLEAN:
+                return CellValue.valueOf(cell.getBooleanCellValue());
+            case ERROR:
+                return CellValue.getError(cell.getErrorCellValue());
+            case NUMERIC:
+                return new CellValue(cell.getNumericCellValue());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * BIFF formula records always carry a result; XLSX cells may be saved without the {@code <v>} element.
+     */
+    private static boolean hasCachedResult(Cell cell) {
+        return !(cell instanceof XSSFCell) || ((XSSFCell) cell).getCTCell().isSetV();
+    }
+}
@@ -0,0 +1,22 @@
+package ru.malltshik.xls2pdf.formula;
+
+/**
+ * How formula cells get their displayed value.
+ */
+public enum FormulaEvaluationPolicy {
+
+    /**
+     * Render the result stored in the file, never evaluate.
+     */
+    CACHED_ONLY,
+
+    /**
+     * Evaluate every formula cell.
+     */
+    EVALUATE,
+
+    /**
+     * Evaluate only formula cells which have no stored result, e.g. workbooks written by POI or jxls.
+     */
+    EVALUATE_ON_MISSING_CACHE
+}
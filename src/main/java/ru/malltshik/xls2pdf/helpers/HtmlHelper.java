@@ -27,4 +27,19 @@ public interface HtmlHelper {
 
     void borderStyles(CellStyle style, Formatter out);
 
+    /**
+     * @return font color of the style as {@code #rrggbb} or {@code null} for automatic
+     */
+    String fontColor(CellStyle style);
+
+    /**
+     * @return fill foreground color of the style as {@code #rrggbb} or {@code null} when not set
+     */
+    String fillColor(CellStyle style);
+
+    /**
+     * @return colors of the top, right, bottom and left borders as in {@link #borderStyles}
+     */
+    String[] borderColors(CellStyle style);
+
 }
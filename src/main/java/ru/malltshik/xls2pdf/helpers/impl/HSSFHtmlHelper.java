@@ -49,6 +49,22 @@ public class HSSFHtmlHelper implements HtmlHelper {
         }
     }
 
+    public String fontColor(CellStyle style) {
+        return hexColor(((HSSFCellStyle) style).getFont(wb).getColor());
+    }
+
+    public String fillColor(CellStyle style) {
+        return hexColor(style.getFillForegroundColor());
+    }
+
+    private String hexColor(short index) {
+        HSSFColor color = colors.getColor(index);
+        if (index == HSSF_AUTO.getIndex() || color == null)
+            return null;
+        short[] rgb = color.getTriplet();
+        return String.format("#%02x%02x%02x", rgb[0], rgb[1], rgb[2]);
+    }
+
     public void borderStyles(CellStyle style, Formatter out) {
         HSSFCellStyle xstyle = (HSSFCellStyle) style;
         styleOut("border-left", style.getBorderLeftEnum(), BORDER, xstyle.getLeftBorderColor(), out);
@@ -57,6 +73,20 @@ public class HSSFHtmlHelper implements HtmlHelper {
         styleOut("border-bottom", style.getBorderBottomEnum(), BORDER, xstyle.getBottomBorderColor(), out);
     }
 
+    public String[] borderColors(CellStyle style) {
+        HSSFCellStyle xstyle = (HSSFCellStyle) style;
+        return new String[]{borderColor(xstyle.getTopBorderColor()), borderColor(xstyle.getRightBorderColor()),
+                borderColor(xstyle.getBottomBorderColor()), borderColor(xstyle.getLeftBorderColor())};
+    }
+
+    /**
+     * Resolved through the palette: {@code getHexString()} of HSSF colors is not a css color.
+     */
+    private String borderColor(short index) {
+        String color = hexColor(index);
+        return color == null ? AUTO_COLOR : color;
+    }
+
     private <K> void styleOut(String attr, K key, Map<K, String> mapping, short color, Formatter out) {
         String value = mapping.get(key);
         String c = borderStyle(color);
@@ -12,12 +12,17 @@ import java.util.Formatter;
 import java.util.Map;
 
 public class XSSFHtmlHelper implements HtmlHelper {
-    private final XSSFWorkbook wb;
 
     private static final Map<Integer, HSSFColor> colors = HSSFColor.getIndexHash();
 
+    /**
+     * XSSF styles resolve their colors themselves, the helper needs no workbook.
+     */
+    public XSSFHtmlHelper() {
+    }
+
     public XSSFHtmlHelper(XSSFWorkbook wb) {
-        this.wb = wb;
+        this();
     }
 
     public void colorStyles(CellStyle style, Formatter out) {
@@ -47,6 +52,25 @@ public class XSSFHtmlHelper implements HtmlHelper {
                 argb[3], argb[0], argb[1], argb[2]);
     }
 
+    public String fontColor(CellStyle style) {
+        return hexColor(((XSSFCellStyle) style).getFont().getXSSFColor());
+    }
+
+    public String fillColor(CellStyle style) {
+        return hexColor(((XSSFCellStyle) style).getFillForegroundXSSFColor());
+    }
+
+    private String hexColor(XSSFColor color) {
+        if (color == null || color.isAuto())
+            return null;
+        byte[] rgb = color.getRGBWithTint();
+        if (rgb == null)
+            rgb = color.getRGB();
+        if (rgb == null)
+            return null;
+        return String.format("#%02x%02x%02x", rgb[0], rgb[1], rgb[2]);
+    }
+
     public void borderStyles(CellStyle style, Formatter out) {
         XSSFCellStyle xstyle = (XSSFCellStyle) style;
         styleOut("border-left", style.getBorderLeftEnum(), BORDER, xstyle.getLeftBorderXSSFColor(), out);
@@ -55,6 +79,12 @@ public class XSSFHtmlHelper implements HtmlHelper {
         styleOut("border-bottom", style.getBorderBottomEnum(), BORDER, xstyle.getBottomBorderXSSFColor(), out);
     }
 
+    public String[] borderColors(CellStyle style) {
+        XSSFCellStyle xstyle = (XSSFCellStyle) style;
+        return new String[]{borderStyle(xstyle.getTopBorderXSSFColor()), borderStyle(xstyle.getRightBorderXSSFColor()),
+                borderStyle(xstyle.getBottomBorderXSSFColor()), borderStyle(xstyle.getLeftBorderXSSFColor())};
+    }
+
     private <K> void styleOut(String attr, K key, Map<K, String> mapping, Color color, Formatter out) {
         String value = mapping.get(key);
         String c = borderStyle(color);
@@ -0,0 +1,206 @@
+package ru.malltshik.xls2pdf.html;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Buffered UTF-8 markup output.
+ * <p>
+ * Characters are encoded straight into a fixed size byte buffer, numbers are written as ASCII digits
+ * and constant fragments are kept as bytes, so emitting a cell allocates nothing. Text written through
+ * {@link #text(CharSequence)} is escaped for XHTML, markup written through {@link #raw(CharSequence)} is not.
+ * Not thread safe.
+ */
+public final class MarkupWriter implements Flushable, Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    private static final byte[] NEW_LINE = bytes(System.lineSeparator());
+    private static final byte[] AMP = bytes("&amp;");
+    private static final byte[] LT = bytes("&lt;");
+    private static final byte[] GT = bytes("&gt;");
+    private static final byte[] QUOT = bytes("&quot;");
+    private static final byte[] MIN_INT = bytes(String.valueOf(Integer.MIN_VALUE));
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+    private long written;
+
+    public MarkupWriter(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    public MarkupWriter(OutputStream out, int bufferSize) {
+        this.out = Objects.requireNonNull(out, "Output must be non null");
+        // the longest single write is a 4 byte code point
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+    }
+
+    /**
+     * @return UTF-8 bytes of a constant fragment, for use with {@link #raw(byte[])}
+     */
+    public static byte[] bytes(String fragment) {
+        return fragment.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public MarkupWriter raw(byte[] fragment) {
+        if (fragment.length > buffer.length - position) {
+            flushBuffer();
+            if (fragment.length > buffer.length) {
+                write(fragment, 0, fragment.length);
+                return this;
+            }
+        }
+        System.arraycopy(fragment, 0, buffer, position, fragment.length);
+        position += fragment.length;
+        return this;
+    }
+
+    public MarkupWriter raw(CharSequence markup) {
+        for (int i = 0; i < markup.length(); i++) {
+            char c = markup.charAt(i);
+            if (c < 0x80) {
+                ensure(1);
+                buffer[position++] = (byte) c;
+            } else {
+                i = encode(markup, i);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes text content escaping markup characters. Characters not allowed in XML are dropped.
+     */
+    public MarkupWriter text(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    raw(AMP);
+                    break;
+                case '<':
+                    raw(LT);
+                    break;
+                case '>':
+                    raw(GT);
+                    break;
+                case '"':
+                    raw(QUOT);
+                    break;
+                case '\t':
+                case '\n':
+                case '\r':
+                    ensure(1);
+                    buffer[position++] = (byte) c;
+                    break;
+                default:
+                    if (c < 0x20 || c == 0xFFFE || c == 0xFFFF) {
+                        break;
+                    } else if (c < 0x80) {
+                        ensure(1);
+                        buffer[position++] = (byte) c;
+                    } else {
+                        i = encode(text, i);
+                    }
+            }
+        }
+        return this;
+    }
+
+    public MarkupWriter number(int value) {
+        if (value == Integer.MIN_VALUE)
+            return raw(MIN_INT);
+        ensure(11);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10)
+            digits++;
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position = end;
+        return this;
+    }
+
+    public MarkupWriter newLine() {
+        return raw(NEW_LINE);
+    }
+
+    /**
+     * @return number of bytes written so far, including the buffered ones
+     */
+    public long size() {
+        return written + position;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    private int encode(CharSequence chars, int i) {
+        char c = chars.charAt(i);
+        ensure(4);
+        if (c < 0x800) {
+            buffer[position++] = (byte) (0xC0 | c >> 6);
+            buffer[position++] = (byte) (0x80 | c & 0x3F);
+        } else if (Character.isHighSurrogate(c) && i + 1 < chars.length()
+                && Character.isLowSurrogate(chars.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, chars.charAt(++i));
+            buffer[position++] = (byte) (0xF0 | cp >> 18);
+            buffer[position++] = (byte) (0x80 | cp >> 12 & 0x3F);
+            buffer[position++] = (byte) (0x80 | cp >> 6 & 0x3F);
+            buffer[position++] = (byte) (0x80 | cp & 0x3F);
+        } else if (Character.isSurrogate(c)) {
+            buffer[position++] = '?';
+        } else {
+            buffer[position++] = (byte) (0xE0 | c >> 12);
+            buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+            buffer[position++] = (byte) (0x80 | c & 0x3F);
+        }
+        return i;
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.length - position < bytes)
+            flushBuffer();
+    }
+
+    private void flushBuffer() {
+        if (position > 0) {
+            write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private void write(byte[] bytes, int offset, int length) {
+        try {
+            out.write(bytes, offset, length);
+            written += length;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ru.malltshik.xls2pdf.metrics;
+
+/**
+ * Counted quantity of a conversion.
+ */
+public enum ConversionCounter {
+
+    SHEETS,
+
+    /**
+     * Rows written, within the window when one is set.
+     */
+    ROWS,
+
+    /**
+     * Cells written, cells hidden by merged regions left out.
+     */
+    CELLS,
+
+    MERGED_REGIONS,
+
+    /**
+     * Formulas evaluated rather than read from their cached results.
+     */
+    FORMULAS_EVALUATED,
+
+    /**
+     * Css rules written for the used styles.
+     */
+    STYLES_EMITTED,
+
+    /**
+     * Bytes of the HTML page, the intermediate page for the HTML PDF backend.
+     */
+    HTML_BYTES,
+
+    PDF_PAGES
+}
@@ -0,0 +1,21 @@
+package ru.malltshik.xls2pdf.metrics;
+
+/**
+ * Receives the metrics of every conversion made with the options it is set in, see
+ * {@code ConversionOptions.withListener}. Called on the thread that ran the conversion, once it is done,
+ * so implementations shared by concurrent conversions must be thread safe. Exceptions thrown by the listener
+ * are logged and do not fail the conversion.
+ *
+ * @see HistogramListener
+ */
+@FunctionalInterface
+public interface ConversionListener {
+
+    /**
+     * Listener that is not called: conversions with it measure nothing at all.
+     */
+    ConversionListener NONE = metrics -> {
+    };
+
+    void conversionFinished(ConversionMetrics metrics);
+}
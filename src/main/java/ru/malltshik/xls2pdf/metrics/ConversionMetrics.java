@@ -0,0 +1,72 @@
+package ru.malltshik.xls2pdf.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings and counts of one conversion.
+ */
+public final class ConversionMetrics {
+
+    private final long totalNanos;
+    private final long[] stageNanos;
+    private final long[] counts;
+    private final long maxHeapBytes;
+    private final boolean failed;
+
+    ConversionMetrics(long totalNanos, long[] stageNanos, long[] counts, long maxHeapBytes, boolean failed) {
+        this.totalNanos = totalNanos;
+        this.stageNanos = stageNanos;
+        this.counts = counts;
+        this.maxHeapBytes = maxHeapBytes;
+        this.failed = failed;
+    }
+
+    /**
+     * @return time from the creation of the converter until the conversion ended
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return time spent in the stage, {@code 0} for a stage the conversion does not go through
+     */
+    public long getNanos(ConversionStage stage) {
+        return stageNanos[stage.ordinal()];
+    }
+
+    public long getCount(ConversionCounter counter) {
+        return counts[counter.ordinal()];
+    }
+
+    /**
+     * @return largest heap in use seen at the end of a stage or between rows, of the whole JVM rather than
+     * of the conversion alone
+     */
+    public long getMaxHeapBytes() {
+        return maxHeapBytes;
+    }
+
+    /**
+     * @return whether the conversion ended with an exception
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(failed ? "failed in " : "converted in ")
+                .append(TimeUnit.NANOSECONDS.toMillis(totalNanos)).append(" ms");
+        for (ConversionStage stage : ConversionStage.values()) {
+            if (getNanos(stage) > 0) {
+                text.append(", ").append(stage.name().toLowerCase(Locale.ROOT)).append(' ')
+                        .append(TimeUnit.NANOSECONDS.toMillis(getNanos(stage))).append(" ms");
+            }
+        }
+        for (ConversionCounter counter : ConversionCounter.values())
+            text.append(", ").append(counter.name().toLowerCase(Locale.ROOT)).append(' ').append(getCount(counter));
+        return text.append(", max heap ").append(maxHeapBytes >> 20).append(" MB").toString();
+    }
+}
@@ -0,0 +1,120 @@
+package ru.malltshik.xls2pdf.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.malltshik.xls2pdf.render.SheetContentHandler;
+import ru.malltshik.xls2pdf.render.SheetModel;
+
+/**
+ * Collects the metrics of one conversion for its {@link ConversionListener}, used by the converters.
+ * The recorder of {@link ConversionListener#NONE} is shared and records nothing: its methods return at once
+ * and it does not wrap handlers, so a conversion without a listener pays for neither clock nor counters.
+ * <p>
+ * Not thread safe. Threads taking turns on a conversion must hand the recorder over with a happens-before
+ * edge, e.g. a thread join.
+ */
+public final class ConversionRecorder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConversionRecorder.class);
+
+    private static final ConversionRecorder INACTIVE = new ConversionRecorder(ConversionListener.NONE);
+
+    private final ConversionListener listener;
+    private final long started;
+    private final long[] stageNanos = new long[ConversionStage.values().length];
+    private final long[] counts = new long[ConversionCounter.values().length];
+    private long maxHeapBytes;
+    private boolean finished;
+
+    private ConversionRecorder(ConversionListener listener) {
+        this.listener = listener;
+        this.started = System.nanoTime();
+    }
+
+    /**
+     * @return recorder of a conversion starting now
+     */
+    public static ConversionRecorder start(ConversionListener listener) {
+        return listener == ConversionListener.NONE ? INACTIVE : new ConversionRecorder(listener);
+    }
+
+    public boolean isActive() {
+        return this != INACTIVE;
+    }
+
+    /**
+     * @return start time of a stage to pass to {@link #stage(ConversionStage, long)}
+     */
+    public long clock() {
+        return this == INACTIVE ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Adds the time since the start to the stage and samples the heap.
+     */
+    public void stage(ConversionStage stage, long start) {
+        if (this == INACTIVE)
+            return;
+        stageNanos[stage.ordinal()] += System.nanoTime() - start;
+        sampleHeap();
+    }
+
+    public void add(ConversionCounter counter, long amount) {
+        if (this != INACTIVE)
+            counts[counter.ordinal()] += amount;
+    }
+
+    /**
+     * Adds the formulas evaluated by the reader and the time they took.
+     */
+    public void formulas(long evaluated, long nanos) {
+        if (this == INACTIVE)
+            return;
+        counts[ConversionCounter.FORMULAS_EVALUATED.ordinal()] += evaluated;
+        stageNanos[ConversionStage.FORMULAS.ordinal()] += nanos;
+    }
+
+    /**
+     * Adds the rows, cells and merged regions of a model that is rendered without a counting handler.
+     */
+    public void model(SheetModel model) {
+        if (this == INACTIVE)
+            return;
+        add(ConversionCounter.ROWS, model.getRowCount());
+        add(ConversionCounter.CELLS, model.getCellCount());
+        add(ConversionCounter.MERGED_REGIONS, model.getLayout().getMergedRegions().size());
+    }
+
+    /**
+     * @return the handler counting the rows, cells and merged regions it passes on, the handler itself
+     * when inactive
+     */
+    public SheetContentHandler counting(SheetContentHandler handler) {
+        return this == INACTIVE ? handler : new CountingSheetHandler(handler, this);
+    }
+
+    public void sampleHeap() {
+        if (this == INACTIVE)
+            return;
+        Runtime runtime = Runtime.getRuntime();
+        maxHeapBytes = Math.max(maxHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * Passes the metrics to the listener, on the first call only.
+     *
+     * @param failed whether the conversion ended with an exception
+     */
+    public void finish(boolean failed) {
+        if (this == INACTIVE || finished)
+            return;
+        finished = true;
+        sampleHeap();
+        try {
+            listener.conversionFinished(new ConversionMetrics(System.nanoTime() - started, stageNanos.clone(),
+                    counts.clone(), maxHeapBytes, failed));
+        } catch (RuntimeException e) {
+            LOGGER.warn("Conversion listener failed", e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ru.malltshik.xls2pdf.metrics;
+
+/**
+ * Timed part of a conversion. A conversion goes through the stages of its output format and backend only.
+ */
+public enum ConversionStage {
+
+    /**
+     * Opening the workbook: {@code WorkbookFactory.create} for the user model, the workbook parts and shared
+     * strings for streaming.
+     */
+    LOAD,
+
+    /**
+     * Reading the chosen sheets of a user model workbook into sheet models, formula evaluation included.
+     */
+    EXTRACT,
+
+    /**
+     * Evaluating formulas, part of {@link #EXTRACT}.
+     */
+    FORMULAS,
+
+    /**
+     * Collecting the css rules of the used styles.
+     */
+    STYLES,
+
+    /**
+     * Writing the sheets as HTML tables. With the HTML PDF backend this runs alongside {@link #XML_WORKER}.
+     */
+    CONTENT,
+
+    /**
+     * Laying the sheets out into the PDF with the direct backend.
+     */
+    PDF_LAYOUT,
+
+    /**
+     * Parsing the HTML into the PDF with XMLWorker, for the HTML PDF backend.
+     */
+    XML_WORKER
+}
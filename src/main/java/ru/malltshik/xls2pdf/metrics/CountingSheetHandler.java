@@ -0,0 +1,67 @@
+package ru.malltshik.xls2pdf.metrics;
+
+import ru.malltshik.xls2pdf.render.SheetContentHandler;
+import ru.malltshik.xls2pdf.render.SheetLayout;
+import ru.malltshik.xls2pdf.style.RenderStyle;
+
+/**
+ * Counts the rows, cells and merged regions passed on to the target, and samples the heap every
+ * {@link #HEAP_SAMPLE_ROWS} rows.
+ */
+final class CountingSheetHandler implements SheetContentHandler {
+
+    private static final int HEAP_SAMPLE_ROWS = 1024;
+
+    private final SheetContentHandler target;
+    private final ConversionRecorder recorder;
+    private long rows;
+    private long cells;
+
+    CountingSheetHandler(SheetContentHandler target, ConversionRecorder recorder) {
+        this.target = target;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public void startSheet(SheetLayout layout) {
+        recorder.add(ConversionCounter.MERGED_REGIONS, layout.getMergedRegions().size());
+        target.startSheet(layout);
+    }
+
+    @Override
+    public void startRow(int rowNum) {
+        if (++rows % HEAP_SAMPLE_ROWS == 0)
+            recorder.sampleHeap();
+        target.startRow(rowNum);
+    }
+
+    @Override
+    public void cell(int column, String text, RenderStyle style) {
+        cells++;
+        target.cell(column, text, style);
+    }
+
+    @Override
+    public void cell(int column, String text, double value, RenderStyle style) {
+        cells++;
+        target.cell(column, text, value, style);
+    }
+
+    @Override
+    public void endRow(int rowNum) {
+        target.endRow(rowNum);
+    }
+
+    /**
+     * Adds the counts of the sheet to the recorder. A reader stopped early at the end of a window still ends
+     * the sheet.
+     */
+    @Override
+    public void endSheet() {
+        recorder.add(ConversionCounter.ROWS, rows);
+        recorder.add(ConversionCounter.CELLS, cells);
+        rows = 0;
+        cells = 0;
+        target.endSheet();
+    }
+}
@@ -0,0 +1,158 @@
+package ru.malltshik.xls2pdf.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the metrics of all conversions in memory: a histogram of the conversion time and of the time of
+ * every stage, totals of the counters and the largest heap seen. Thread safe, share one per application and
+ * serve {@link #scrape()} to the monitoring system.
+ * <pre>
+ * HistogramListener metrics = new HistogramListener();
+ * ConversionEngine engine = new ConversionEngine(ConversionOptions.defaults().withListener(metrics));
+ * </pre>
+ */
+public final class HistogramListener implements ConversionListener {
+
+    /**
+     * Upper bounds of the histogram buckets in seconds, a last bucket takes longer times.
+     */
+    private static final double[] BOUNDS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+    private final Histogram conversions = new Histogram();
+    private final Histogram[] stages = new Histogram[ConversionStage.values().length];
+    private final LongAdder[] counts = new LongAdder[ConversionCounter.values().length];
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong maxHeapBytes = new AtomicLong();
+
+    public HistogramListener() {
+        for (int i = 0; i < stages.length; i++)
+            stages[i] = new Histogram();
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = new LongAdder();
+    }
+
+    @Override
+    public void conversionFinished(ConversionMetrics metrics) {
+        conversions.record(metrics.getTotalNanos());
+        for (ConversionStage stage : ConversionStage.values()) {
+            if (metrics.getNanos(stage) > 0)
+                stages[stage.ordinal()].record(metrics.getNanos(stage));
+        }
+        for (ConversionCounter counter : ConversionCounter.values())
+            counts[counter.ordinal()].add(metrics.getCount(counter));
+        if (metrics.isFailed())
+            failures.increment();
+        maxHeapBytes.accumulateAndGet(metrics.getMaxHeapBytes(), Math::max);
+    }
+
+    /**
+     * @return times of all conversions, failed ones included
+     */
+    public Histogram getConversions() {
+        return conversions;
+    }
+
+    /**
+     * @return times of the stage in the conversions that went through it
+     */
+    public Histogram getStage(ConversionStage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    public long getCount(ConversionCounter counter) {
+        return counts[counter.ordinal()].sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getMaxHeapBytes() {
+        return maxHeapBytes.get();
+    }
+
+    /**
+     * @return the metrics in the Prometheus text format
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        out.append("# TYPE xls2pdf_conversion_seconds histogram\n");
+        conversions.appendTo(out, "xls2pdf_conversion_seconds", "");
+        out.append("# TYPE xls2pdf_stage_seconds histogram\n");
+        for (ConversionStage stage : ConversionStage.values()) {
+            stages[stage.ordinal()].appendTo(out, "xls2pdf_stage_seconds",
+                    "stage=\"" + stage.name().toLowerCase(Locale.ROOT) + "\",");
+        }
+        out.append("# TYPE xls2pdf_conversion_failures_total counter\n")
+                .append("xls2pdf_conversion_failures_total ").append(getFailures()).append('\n');
+        for (ConversionCounter counter : ConversionCounter.values()) {
+            String name = "xls2pdf_" + counter.name().toLowerCase(Locale.ROOT) + "_total";
+            out.append("# TYPE ").append(name).append(" counter\n")
+                    .append(name).append(' ').append(getCount(counter)).append('\n');
+        }
+        out.append("# TYPE xls2pdf_max_heap_bytes gauge\n")
+                .append("xls2pdf_max_heap_bytes ").append(getMaxHeapBytes()).append('\n');
+        return out.toString();
+    }
+
+    /**
+     * Counts of times by bucket, see {@link #getBounds()}.
+     */
+    public static final class Histogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram() {
+        }
+
+        /**
+         * @return upper bounds of the buckets in seconds, the last bucket has none
+         */
+        public static double[] getBounds() {
+            return BOUNDS.clone();
+        }
+
+        private void record(long nanos) {
+            double seconds = nanos / 1e9;
+            int bucket = 0;
+            while (bucket < BOUNDS.length && seconds > BOUNDS[bucket])
+                bucket++;
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            sumNanos.add(nanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getSumNanos() {
+            return sumNanos.sum();
+        }
+
+        /**
+         * @return number of times in the bucket, not including the buckets before it
+         */
+        public long getBucketCount(int bucket) {
+            return buckets.get(bucket);
+        }
+
+        private void appendTo(StringBuilder out, String name, String labels) {
+            long cumulative = 0;
+            for (int i = 0; i <= BOUNDS.length; i++) {
+                cumulative += buckets.get(i);
+                out.append(name).append("_bucket{").append(labels).append("le=\"")
+                        .append(i < BOUNDS.length ? String.valueOf(BOUNDS[i]) : "+Inf").append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            String sumLabels = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+            out.append(name).append("_sum").append(sumLabels).append(' ').append(getSumNanos() / 1e9).append('\n');
+            out.append(name).append("_count").append(sumLabels).append(' ').append(getCount()).append('\n');
+        }
+    }
+}
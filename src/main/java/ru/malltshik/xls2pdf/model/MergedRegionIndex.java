@@ -0,0 +1,184 @@
+package ru.malltshik.xls2pdf.model;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.*;
+
+/**
+ * Row-bucketed lookup of the merged regions of a sheet.
+ * <p>
+ * Every row touched by a merged region keeps the regions crossing it ordered by first column,
+ * so "which region covers (row, column)" is a binary search inside one bucket instead of a scan
+ * over all merged regions of the sheet. Excel regions never overlap, which keeps the column
+ * intervals of a bucket disjoint.
+ * <p>
+ * Regions taller than {@value #TALL_REGION_ROWS} rows, like a merge of a whole column, are kept out of the
+ * buckets in a list ordered by first row, so the index does not grow with their height. Lookups scan the
+ * tall regions starting above the row, sheets have few of them.
+ */
+public final class MergedRegionIndex {
+
+    private static final CellRangeAddress[] NO_REGIONS = new CellRangeAddress[0];
+    private static final Comparator<CellRangeAddress> BY_FIRST_COLUMN =
+            Comparator.comparingInt(CellRangeAddress::getFirstColumn);
+
+    private static final Comparator<CellRangeAddress> BY_FIRST_ROW =
+            Comparator.comparingInt(CellRangeAddress::getFirstRow);
+
+    static final int TALL_REGION_ROWS = 256;
+
+    public static final MergedRegionIndex EMPTY =
+            new MergedRegionIndex(0, new CellRangeAddress[0][], NO_REGIONS, 0);
+
+    private final int firstRow;
+    private final CellRangeAddress[][] rows;
+    private final CellRangeAddress[] tall;
+    private final int size;
+
+    private MergedRegionIndex(int firstRow, CellRangeAddress[][] rows, CellRangeAddress[] tall, int size) {
+        this.firstRow = firstRow;
+        this.rows = rows;
+        this.tall = tall;
+        this.size = size;
+    }
+
+    public static MergedRegionIndex of(Sheet sheet) {
+        return of(sheet.getMergedRegions());
+    }
+
+    public static MergedRegionIndex of(Collection<CellRangeAddress> regions) {
+        if (regions == null || regions.isEmpty())
+            return EMPTY;
+
+        List<CellRangeAddress> tall = new ArrayList<>();
+        List<CellRangeAddress> bucketed = new ArrayList<>(regions.size());
+        for (CellRangeAddress region : regions)
+            (isTall(region) ? tall : bucketed).add(region);
+        tall.sort(BY_FIRST_ROW);
+        CellRangeAddress[] tallRegions = tall.toArray(NO_REGIONS);
+        if (bucketed.isEmpty())
+            return new MergedRegionIndex(0, new CellRangeAddress[0][], tallRegions, regions.size());
+
+        int minRow = Integer.MAX_VALUE;
+        int maxRow = -1;
+        for (CellRangeAddress region : bucketed) {
+            minRow = Math.min(minRow, region.getFirstRow());
+            maxRow = Math.max(maxRow, region.getLastRow());
+        }
+
+        int[] counts = new int[maxRow - minRow + 1];
+        for (CellRangeAddress region : bucketed) {
+            for (int r = region.getFirstRow(); r <= region.getLastRow(); r++)
+                counts[r - minRow]++;
+        }
+
+        CellRangeAddress[][] rows = new CellRangeAddress[counts.length][];
+        for (int i = 0; i < counts.length; i++) {
+            rows[i] = counts[i] == 0 ? NO_REGIONS : new CellRangeAddress[counts[i]];
+            counts[i] = 0;
+        }
+        for (CellRangeAddress region : bucketed) {
+            for (int r = region.getFirstRow(); r <= region.getLastRow(); r++) {
+                int bucket = r - minRow;
+                rows[bucket][counts[bucket]++] = region;
+            }
+        }
+        for (CellRangeAddress[] bucket : rows) {
+            if (bucket.length > 1)
+                Arrays.sort(bucket, BY_FIRST_COLUMN);
+        }
+        return new MergedRegionIndex(minRow, rows, tallRegions, regions.size());
+    }
+
+    private static boolean isTall(CellRangeAddress region) {
+        return region.getLastRow() - region.getFirstRow() >= TALL_REGION_ROWS;
+    }
+
+    /**
+     * Regions crossing the edges of the range are cut at the edges, those that are left as a single cell
+     * are dropped. Only the rows of the range are looked at.
+     *
+     * @return index of the parts of the regions inside the range
+     */
+    public MergedRegionIndex clip(CellRangeAddress range) {
+        int first = Math.max(range.getFirstRow(), firstRow);
+        int last = Math.min(range.getLastRow(), firstRow + rows.length - 1);
+        Set<CellRangeAddress> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<CellRangeAddress> clipped = new ArrayList<>();
+        for (int row = first; row <= last; row++) {
+            for (CellRangeAddress region : rows[row - firstRow]) {
+                if (seen.add(region))
+                    clip(region, row, range, clipped);
+            }
+        }
+        for (CellRangeAddress region : tall) {
+            if (region.getFirstRow() > range.getLastRow())
+                break;
+            if (region.getLastRow() >= range.getFirstRow())
+                clip(region, Math.max(region.getFirstRow(), range.getFirstRow()), range, clipped);
+        }
+        return of(clipped);
+    }
+
+    /**
+     * @param row first row of the region inside the range
+     */
+    private static void clip(CellRangeAddress region, int row, CellRangeAddress range,
+                             List<CellRangeAddress> clipped) {
+        int firstColumn = Math.max(region.getFirstColumn(), range.getFirstColumn());
+        int lastColumn = Math.min(region.getLastColumn(), range.getLastColumn());
+        int lastRow = Math.min(region.getLastRow(), range.getLastRow());
+        if (firstColumn > lastColumn || row == lastRow && firstColumn == lastColumn)
+            return;
+        clipped.add(new CellRangeAddress(row, lastRow, firstColumn, lastColumn));
+    }
+
+    /**
+     * @return merged region covering the cell or {@code null} when the cell is not merged
+     */
+    public CellRangeAddress regionAt(int row, int column) {
+        for (CellRangeAddress region : tall) {
+            if (region.getFirstRow() > row)
+                break;
+            if (row <= region.getLastRow() && column >= region.getFirstColumn()
+                    && column <= region.getLastColumn())
+                return region;
+        }
+        int bucket = row - firstRow;
+        if (bucket < 0 || bucket >= rows.length)
+            return null;
+
+        CellRangeAddress[] regions = rows[bucket];
+        int low = 0;
+        int high = regions.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            CellRangeAddress region = regions[mid];
+            if (column < region.getFirstColumn())
+                high = mid - 1;
+            else if (column > region.getLastColumn())
+                low = mid + 1;
+            else
+                return region;
+        }
+        return null;
+    }
+
+    /**
+     * @return {@code true} when the cell lies below the first row of a merged region,
+     * i.e. it is already rendered by the {@code rowspan} of the region's top left cell
+     */
+    public boolean isHiddenByRowSpan(int row, int column) {
+        CellRangeAddress region = regionAt(row, column);
+        return region != null && row != region.getFirstRow();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,59 @@
+package ru.malltshik.xls2pdf.render;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.poi.ss.format.CellFormat;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Display text rules shared by all readers.
+ */
+public final class CellText {
+
+    private CellText() {
+    }
+
+    /**
+     * @return text stripped of trailing whitespace, {@code null} when nothing is left
+     */
+    public static String normalize(String content) {
+        if (StringUtils.isEmpty(content))
+            return null;
+        content = StringUtils.stripEnd(content, null);
+        if (content.isEmpty())
+            return null;
+        if (content.trim().equals("- 0"))
+            return "-";
+        return content;
+    }
+
+    /**
+     * Formats a raw numeric value the way {@link CellFormat#apply(org.apache.poi.ss.usermodel.Cell)}
+     * formats a numeric cell.
+     */
+    public static String format(CellFormat format, double value, int formatIndex, String formatString,
+                                boolean date1904) {
+        if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value))
+            return apply(format, DateUtil.getJavaDate(value, date1904));
+        return apply(format, value);
+    }
+
+    /**
+     * POI caches one {@link CellFormat} per format string for the whole JVM and its date formatting is not
+     * thread safe, so concurrent conversions take turns on each format.
+     */
+    public static String apply(CellFormat format, Object value) {
+        synchronized (format) {
+            return format.apply(value).text;
+        }
+    }
+
+    /**
+     * @see #apply(CellFormat, Object)
+     */
+    public static String apply(CellFormat format, Cell cell) {
+        synchronized (format) {
+            return format.apply(cell).text;
+        }
+    }
+}
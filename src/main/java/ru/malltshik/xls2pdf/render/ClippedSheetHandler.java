@@ -0,0 +1,66 @@
+package ru.malltshik.xls2pdf.render;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import ru.malltshik.xls2pdf.style.RenderStyle;
+
+/**
+ * Passes on the cells inside a range, as a sheet of its own with the layout clipped to the range.
+ * The sheet is ended as soon as a row below the range starts, and {@link #PASSED} is thrown to stop
+ * the reader.
+ */
+final class ClippedSheetHandler implements SheetContentHandler {
+
+    /**
+     * Thrown once the range is passed. Shared and without a stack trace, it only unwinds the reader.
+     */
+    static final RuntimeException PASSED = new RuntimeException("Range passed", null, false, false) {
+    };
+
+    private final CellRangeAddress range;
+    private final SheetContentHandler target;
+    private boolean inRange;
+
+    ClippedSheetHandler(CellRangeAddress range, SheetContentHandler target) {
+        this.range = range;
+        this.target = target;
+    }
+
+    @Override
+    public void startSheet(SheetLayout layout) {
+        target.startSheet(layout.clip(range));
+    }
+
+    @Override
+    public void startRow(int rowNum) {
+        if (rowNum > range.getLastRow()) {
+            target.endSheet();
+            throw PASSED;
+        }
+        inRange = rowNum >= range.getFirstRow();
+        if (inRange)
+            target.startRow(rowNum);
+    }
+
+    @Override
+    public void cell(int column, String text, RenderStyle style) {
+        if (inRange && column >= range.getFirstColumn() && column <= range.getLastColumn())
+            target.cell(column, text, style);
+    }
+
+    @Override
+    public void cell(int column, String text, double value, RenderStyle style) {
+        if (inRange && column >= range.getFirstColumn() && column <= range.getLastColumn())
+            target.cell(column, text, value, style);
+    }
+
+    @Override
+    public void endRow(int rowNum) {
+        if (inRange)
+            target.endRow(rowNum);
+    }
+
+    @Override
+    public void endSheet() {
+        target.endSheet();
+    }
+}
@@ -0,0 +1,96 @@
+package ru.malltshik.xls2pdf.render;
+
+import ru.malltshik.xls2pdf.style.RenderStyle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes the display texts of a sheet as comma separated values (RFC 4180), one line per row, e.g. for
+ * search indexing. A row starts at the first column of the sheet and ends at its last cell, columns without
+ * a cell are empty fields. Consecutive sheets are separated by an empty line. Styles are ignored.
+ * <p>
+ * The writer is neither flushed nor closed, write errors are thrown as {@link UncheckedIOException}.
+ */
+public class CsvSheetRenderer implements SheetContentHandler {
+
+    private static final String LINE_END = "\r\n";
+
+    private final Writer out;
+    private SheetLayout layout;
+    private boolean separate;
+    private int nextColumn;
+
+    public CsvSheetRenderer(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void startSheet(SheetLayout layout) {
+        this.layout = layout;
+        if (separate)
+            write(LINE_END);
+        separate = true;
+    }
+
+    @Override
+    public void startRow(int rowNum) {
+        nextColumn = layout.getFirstColumn();
+    }
+
+    @Override
+    public void cell(int column, String text, RenderStyle style) {
+        if (column < nextColumn || column >= layout.getEndColumn())
+            return;
+        StringBuilder field = new StringBuilder();
+        int separators = nextColumn == layout.getFirstColumn() ? column - nextColumn : column - nextColumn + 1;
+        for (int i = 0; i < separators; i++)
+            field.append(',');
+        if (text != null)
+            quote(text, field);
+        nextColumn = column + 1;
+        write(field);
+    }
+
+    @Override
+    public void endRow(int rowNum) {
+        write(LINE_END);
+    }
+
+    @Override
+    public void endSheet() {
+        layout = null;
+    }
+
+    /**
+     * Appends the text, in quotes when it holds a comma, a quote or a line break.
+     */
+    private static void quote(String text, StringBuilder field) {
+        boolean quoted = false;
+        for (int i = 0; i < text.length() && !quoted; i++) {
+            char c = text.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quoted) {
+            field.append(text);
+            return;
+        }
+        field.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"')
+                field.append('"');
+            field.append(c);
+        }
+        field.append('"');
+    }
+
+    private void write(CharSequence text) {
+        try {
+            out.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
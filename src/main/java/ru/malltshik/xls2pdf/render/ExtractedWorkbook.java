@@ -0,0 +1,110 @@
+package ru.malltshik.xls2pdf.render;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import ru.malltshik.xls2pdf.style.RenderStyle;
+import ru.malltshik.xls2pdf.style.StyleTable;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Sheets of a workbook extracted into {@link SheetModel}s, read from the models rather than from POI.
+ * Every extracted sheet can be read any number of times; reading a sheet that was not extracted fails.
+ */
+public final class ExtractedWorkbook implements WorkbookReader {
+
+    private final StyleTable styles;
+    private final List<String> sheetNames;
+    private final Map<Integer, SheetModel> models;
+    private final Map<Integer, CellRangeAddress> printAreas;
+
+    private ExtractedWorkbook(StyleTable styles, List<String> sheetNames, Map<Integer, SheetModel> models,
+                              Map<Integer, CellRangeAddress> printAreas) {
+        this.styles = styles;
+        this.sheetNames = sheetNames;
+        this.models = models;
+        this.printAreas = printAreas;
+    }
+
+    /**
+     * Reads the sheets into models and closes the reader. When reading fails the reader is left open.
+     */
+    public static ExtractedWorkbook extract(WorkbookReader reader, Collection<Integer> sheets) throws IOException {
+        Map<Integer, SheetModel> models = new HashMap<>();
+        Map<Integer, CellRangeAddress> printAreas = new HashMap<>();
+        for (int sheet : sheets) {
+            if (!models.containsKey(sheet)) {
+                models.put(sheet, reader.model(sheet));
+                printAreas.put(sheet, reader.getPrintArea(sheet));
+            }
+        }
+        ExtractedWorkbook extracted = new ExtractedWorkbook(reader.getStyles(),
+                Collections.unmodifiableList(new ArrayList<>(reader.getSheetNames())), models, printAreas);
+        reader.close();
+        return extracted;
+    }
+
+    @Override
+    public StyleTable getStyles() {
+        return styles;
+    }
+
+    @Override
+    public List<String> getSheetNames() {
+        return sheetNames;
+    }
+
+    @Override
+    public CellRangeAddress getPrintArea(int sheet) {
+        if (!printAreas.containsKey(sheet))
+            throw notExtracted(sheet);
+        return printAreas.get(sheet);
+    }
+
+    @Override
+    public Collection<RenderStyle> usedStyles(Collection<Integer> sheets) {
+        Map<Short, RenderStyle> seen = new LinkedHashMap<>();
+        for (int sheet : sheets) {
+            for (RenderStyle style : model(sheet).getUsedStyles())
+                seen.putIfAbsent(style.getIndex(), style);
+        }
+        return seen.values();
+    }
+
+    @Override
+    public void read(int sheet, SheetContentHandler handler) {
+        model(sheet).replay(handler);
+    }
+
+    /**
+     * Only the rows of the range are visited.
+     */
+    @Override
+    public void read(int sheet, CellRangeAddress range, SheetContentHandler handler) {
+        model(sheet).replay(handler, range);
+    }
+
+    /**
+     * @throws IllegalArgumentException when the sheet was not extracted
+     */
+    @Override
+    public SheetModel model(int sheet) {
+        SheetModel model = models.get(sheet);
+        if (model == null)
+            throw notExtracted(sheet);
+        return model;
+    }
+
+    private static IllegalArgumentException notExtracted(int sheet) {
+        return new IllegalArgumentException("Sheet " + sheet + " was not extracted");
+    }
+
+    /**
+     * Drops the models.
+     */
+    @Override
+    public void close() {
+        models.clear();
+        printAreas.clear();
+    }
+}
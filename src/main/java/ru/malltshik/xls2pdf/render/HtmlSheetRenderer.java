@@ -0,0 +1,99 @@
+package ru.malltshik.xls2pdf.render;
+
+import ru.malltshik.xls2pdf.html.MarkupWriter;
+import ru.malltshik.xls2pdf.style.RenderStyle;
+import ru.malltshik.xls2pdf.style.StyleTable;
+
+import static ru.malltshik.xls2pdf.html.MarkupWriter.bytes;
+
+/**
+ * Writes a sheet as an HTML table. Merged regions become {@code colspan}/{@code rowspan} of their first cell.
+ */
+public class HtmlSheetRenderer extends TableSheetRenderer {
+
+    public static final String DEFAULTS_CLASS = "excelDefaults";
+
+    private static final byte[] TABLE_START = bytes(String.format("<table class=%s>%n", DEFAULTS_CLASS));
+    private static final byte[] TABLE_END = bytes(String.format("</table>%n"));
+    private static final byte[] COL = bytes(String.format("<col/>%n"));
+    private static final byte[] THEAD_START = bytes(String.format("<thead>%n"));
+    private static final byte[] THEAD_END = bytes(String.format("</thead>%n"));
+    private static final byte[] TBODY_START = bytes(String.format("<tbody>%n"));
+    private static final byte[] TBODY_END = bytes(String.format("</tbody>%n"));
+    private static final byte[] ROW_START = bytes(String.format("  <tr>%n"));
+    private static final byte[] ROW_END = bytes(String.format("  </tr>%n"));
+    private static final byte[] CELL_START = bytes("    <td class=");
+    private static final byte[] ROTATED_CELL_START = bytes("    <td class=\"");
+    private static final byte[] ROTATED_CLASS = bytes(" rotate\" ");
+    private static final byte[] CONTENT_START = bytes(">");
+    private static final byte[] ROTATED_CONTENT_START = bytes("><div><span>");
+    private static final byte[] ROTATED_CELL_END = bytes(String.format("</span></div></td>%n"));
+    private static final byte[] CELL_END = bytes(String.format("</td>%n"));
+    private static final byte[] COLSPAN = bytes(" colspan=\"");
+    private static final byte[] ROWSPAN = bytes(" rowspan=\"");
+    private static final byte[] EMPTY_CONTENT = bytes("&nbsp;");
+
+    private final MarkupWriter out;
+    private final StyleTable styles;
+    private boolean isSplit;
+
+    public HtmlSheetRenderer(MarkupWriter out, StyleTable styles) {
+        this.out = out;
+        this.styles = styles;
+    }
+
+    @Override
+    protected void startTable() {
+        out.raw(TABLE_START);
+        out.raw(COL);
+        for (int i = layout.getFirstColumn(); i < layout.getEndColumn(); i++) {
+            out.raw(COL);
+        }
+
+        isSplit = layout.getSplitTopRow() >= 0;
+        out.raw(isSplit ? THEAD_START : TBODY_START);
+    }
+
+    @Override
+    protected void startTableRow(int rowNum) {
+        out.raw(ROW_START);
+    }
+
+    @Override
+    protected void endTableRow(int rowNum) {
+        out.raw(ROW_END);
+
+        if (isSplit && rowNum == layout.getSplitTopRow() - 1) {
+            out.raw(THEAD_END);
+            out.raw(TBODY_START);
+        }
+    }
+
+    @Override
+    protected void endTable() {
+        out.raw(TBODY_END);
+        out.raw(TABLE_END);
+    }
+
+    @Override
+    protected void tableCell(String content, RenderStyle style, int colSpan, int rowSpan) {
+        String className = style == null ? styles.getDefault().getClassName() : style.getClassName();
+        String attrs = style == null ? "" : style.getInlineAttributes();
+        boolean rotated = style != null && style.getRotation() == 90;
+        if (rotated)
+            out.raw(ROTATED_CELL_START).raw(className).raw(ROTATED_CLASS);
+        else
+            out.raw(CELL_START).raw(className).raw(" ");
+        out.raw(attrs).raw(" ");
+        if (colSpan > 0)
+            out.raw(COLSPAN).number(colSpan).raw("\"");
+        if (rowSpan > 0)
+            out.raw(ROWSPAN).number(rowSpan).raw("\"");
+        out.raw(rotated ? ROTATED_CONTENT_START : CONTENT_START);
+        if (content == null)
+            out.raw(EMPTY_CONTENT);
+        else
+            out.text(content);
+        out.raw(rotated ? ROTATED_CELL_END : CELL_END);
+    }
+}
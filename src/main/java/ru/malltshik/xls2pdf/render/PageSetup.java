@@ -0,0 +1,268 @@
+package ru.malltshik.xls2pdf.render;
+
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.ss.usermodel.PrintSetup;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static ru.malltshik.xls2pdf.utils.ExcelUtils.EXCEL_COLUMN_WIDTH_FACTOR;
+
+/**
+ * Print setup of a sheet, as far as the PDF layout uses it: paper, orientation, margins, scale or fit to page,
+ * column widths and manual row breaks. Read by every {@link WorkbookReader} before the first row and carried
+ * by the {@link SheetLayout}; the usermodel and the streaming readers report the same values for a file.
+ *
+ * @see PdfSheetRenderer
+ */
+public final class PageSetup {
+
+    private final short paperSize;
+    private final boolean landscape;
+    private final double leftMargin;
+    private final double rightMargin;
+    private final double topMargin;
+    private final double bottomMargin;
+    private final short scale;
+    private final boolean fitToPage;
+    private final short fitWidth;
+    private final short fitHeight;
+    private final int defaultColumnWidth;
+    /**
+     * Columns {@code columnStarts[i]} to {@code columnEnds[i]} inclusive are {@code columnWidths[i]} wide,
+     * ranges in ascending order.
+     */
+    private final int[] columnStarts;
+    private final int[] columnEnds;
+    private final int[] columnWidths;
+    private final int[] rowBreaks;
+
+    private PageSetup(Builder builder) {
+        this.paperSize = builder.paperSize;
+        this.landscape = builder.landscape;
+        this.leftMargin = builder.leftMargin;
+        this.rightMargin = builder.rightMargin;
+        this.topMargin = builder.topMargin;
+        this.bottomMargin = builder.bottomMargin;
+        this.scale = builder.scale;
+        this.fitToPage = builder.fitToPage;
+        this.fitWidth = builder.fitWidth;
+        this.fitHeight = builder.fitHeight;
+        this.defaultColumnWidth = builder.defaultColumnWidth;
+        int ranges = builder.columns.size();
+        this.columnStarts = new int[ranges];
+        this.columnEnds = new int[ranges];
+        this.columnWidths = new int[ranges];
+        for (int i = 0; i < ranges; i++) {
+            int[] range = builder.columns.get(i);
+            columnStarts[i] = range[0];
+            columnEnds[i] = range[1];
+            columnWidths[i] = range[2];
+        }
+        this.rowBreaks = builder.rowBreaks.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+    }
+
+    /**
+     * Reads the print setup of a usermodel sheet.
+     *
+     * @param endColumn column after the last one to take the width of
+     */
+    public static PageSetup of(Sheet sheet, int endColumn) {
+        PrintSetup print = sheet.getPrintSetup();
+        Builder builder = new Builder()
+                .paper(print.getPaperSize(), print.getLandscape())
+                .leftMargin(sheet.getMargin(Sheet.LeftMargin))
+                .rightMargin(sheet.getMargin(Sheet.RightMargin))
+                .topMargin(sheet.getMargin(Sheet.TopMargin))
+                .bottomMargin(sheet.getMargin(Sheet.BottomMargin))
+                .scale(print.getScale())
+                .fitToPage(sheet.getFitToPage())
+                .fitPages(print.getFitWidth(), print.getFitHeight())
+                .defaultColumnWidth(sheet.getDefaultColumnWidth() * EXCEL_COLUMN_WIDTH_FACTOR);
+        for (int column = 0; column < endColumn; column++)
+            builder.columnWidth(column, column, sheet.getColumnWidth(column));
+        // HSSF reports the first row of the new page as stored, XSSF the last row of the page before
+        int offset = sheet instanceof HSSFSheet ? 0 : 1;
+        for (int row : sheet.getRowBreaks())
+            builder.rowBreak(row + offset);
+        return builder.build();
+    }
+
+    /**
+     * @return paper size code, one of the {@code *_PAPERSIZE} constants of {@link PrintSetup}
+     */
+    public short getPaperSize() {
+        return paperSize;
+    }
+
+    public boolean isLandscape() {
+        return landscape;
+    }
+
+    /**
+     * @return left margin in inches
+     */
+    public double getLeftMargin() {
+        return leftMargin;
+    }
+
+    public double getRightMargin() {
+        return rightMargin;
+    }
+
+    public double getTopMargin() {
+        return topMargin;
+    }
+
+    public double getBottomMargin() {
+        return bottomMargin;
+    }
+
+    /**
+     * @return scale in percent, used unless {@link #isFitToPage()}
+     */
+    public short getScale() {
+        return scale;
+    }
+
+    public boolean isFitToPage() {
+        return fitToPage;
+    }
+
+    /**
+     * @return number of pages the width is fit to, {@code 0} for no limit
+     */
+    public short getFitWidth() {
+        return fitWidth;
+    }
+
+    /**
+     * @return number of pages the height is fit to, {@code 0} for no limit
+     */
+    public short getFitHeight() {
+        return fitHeight;
+    }
+
+    /**
+     * @return width of the column in 1/256 of a character, as {@link Sheet#getColumnWidth(int)} returns it
+     */
+    public int getColumnWidth(int column) {
+        int range = Arrays.binarySearch(columnStarts, column);
+        if (range < 0)
+            range = -range - 2;
+        return range >= 0 && column <= columnEnds[range] ? columnWidths[range] : defaultColumnWidth;
+    }
+
+    /**
+     * @return {@code true} when a manual page break puts the row on a new page
+     */
+    public boolean isRowBreak(int row) {
+        return Arrays.binarySearch(rowBreaks, row) >= 0;
+    }
+
+    public boolean hasRowBreaks() {
+        return rowBreaks.length > 0;
+    }
+
+    /**
+     * Collects a print setup, starting from the values of a sheet without one: letter paper in portrait, no
+     * margins, 100%, no fit to page and columns of 8 characters.
+     */
+    public static final class Builder {
+
+        private short paperSize = PrintSetup.LETTER_PAPERSIZE;
+        private boolean landscape;
+        private double leftMargin;
+        private double rightMargin;
+        private double topMargin;
+        private double bottomMargin;
+        private short scale = 100;
+        private boolean fitToPage;
+        private short fitWidth = 1;
+        private short fitHeight = 1;
+        private int defaultColumnWidth = 8 * EXCEL_COLUMN_WIDTH_FACTOR;
+        private final List<int[]> columns = new ArrayList<>();
+        private final List<Integer> rowBreaks = new ArrayList<>();
+
+        public Builder paper(short paperSize, boolean landscape) {
+            this.paperSize = paperSize;
+            this.landscape = landscape;
+            return this;
+        }
+
+        /**
+         * @param margin margin in inches
+         */
+        public Builder leftMargin(double margin) {
+            this.leftMargin = margin;
+            return this;
+        }
+
+        public Builder rightMargin(double margin) {
+            this.rightMargin = margin;
+            return this;
+        }
+
+        public Builder topMargin(double margin) {
+            this.topMargin = margin;
+            return this;
+        }
+
+        public Builder bottomMargin(double margin) {
+            this.bottomMargin = margin;
+            return this;
+        }
+
+        public Builder scale(short scale) {
+            this.scale = scale;
+            return this;
+        }
+
+        public Builder fitToPage(boolean fitToPage) {
+            this.fitToPage = fitToPage;
+            return this;
+        }
+
+        /**
+         * @param width  number of pages the width is fit to when fitting to page, {@code 0} for no limit
+         * @param height number of pages the height is fit to, {@code 0} for no limit
+         */
+        public Builder fitPages(short width, short height) {
+            this.fitWidth = width;
+            this.fitHeight = height;
+            return this;
+        }
+
+        /**
+         * @param width width in 1/256 of a character of the columns without a width of their own
+         */
+        public Builder defaultColumnWidth(int width) {
+            this.defaultColumnWidth = width;
+            return this;
+        }
+
+        /**
+         * Ranges must not overlap and come in ascending order, as they are stored in a sheet.
+         *
+         * @param width width in 1/256 of a character of the columns {@code first} to {@code last} inclusive
+         */
+        public Builder columnWidth(int first, int last, int width) {
+            columns.add(new int[]{first, last, width});
+            return this;
+        }
+
+        /**
+         * @param row first row of a new page
+         */
+        public Builder rowBreak(int row) {
+            rowBreaks.add(row);
+            return this;
+        }
+
+        public PageSetup build() {
+            return new PageSetup(this);
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package ru.malltshik.xls2pdf.render;
+
+import com.itextpdf.text.*;
+import com.itextpdf.text.pdf.PdfPCell;
+import com.itextpdf.text.pdf.PdfPTable;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.PrintSetup;
+import ru.malltshik.xls2pdf.style.RenderStyle;
+import ru.malltshik.xls2pdf.style.StyleTable;
+import ru.malltshik.xls2pdf.utils.ExcelUtils;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static ru.malltshik.xls2pdf.style.RenderStyle.*;
+
+/**
+ * Builds a sheet as an iText {@link PdfPTable} straight from the compiled styles, without the HTML and
+ * XMLWorker round trip. Follows the look of the HTML output: the same font sizes, paddings, border widths
+ * and frozen rows repeated as table header. Dashed and dotted borders are drawn solid.
+ * <p>
+ * With a flush interval the table is a {@link PdfPTable#setComplete(boolean) large table}: every
+ * {@code flushRows} rows the rows built so far are added to the document, which lays them out, writes
+ * finished pages to the output and drops them from the table. Memory then does not grow with the sheet.
+ * Rows are never flushed inside the frozen header or a row span.
+ * <p>
+ * With the print setup on, a sheet that has a {@link SheetLayout#getPageSetup() page setup} starts a page of
+ * its paper size and orientation with its margins. Columns get their widths from the sheet and the page is
+ * scaled by the sheet scale, or further down until all columns fit the page width, since columns are never
+ * split across pages. As in Excel only cells styled to wrap text wrap it. Manual row breaks start new pages.
+ * Without it every sheet takes the page width.
+ */
+public class PdfSheetRenderer extends TableSheetRenderer {
+
+    private static final float PADDING_VERTICAL = 0.75f;
+    private static final float PADDING_HORIZONTAL = 3.75f;
+    private static final String EMPTY_CONTENT = "\u00a0";
+    private static final float POINTS_PER_INCH = 72f;
+    private static final float POINTS_PER_PIXEL = 0.75f;
+
+    private static final Map<BorderStyle, Float> BORDER_WIDTH = new EnumMap<>(BorderStyle.class);
+
+    static {
+        BORDER_WIDTH.put(BorderStyle.HAIR, 0.75f);
+        BORDER_WIDTH.put(BorderStyle.THIN, 1f);
+        BORDER_WIDTH.put(BorderStyle.DASHED, 1f);
+        BORDER_WIDTH.put(BorderStyle.DOTTED, 1f);
+        BORDER_WIDTH.put(BorderStyle.DASH_DOT, 1f);
+        BORDER_WIDTH.put(BorderStyle.DASH_DOT_DOT, 1f);
+        BORDER_WIDTH.put(BorderStyle.MEDIUM, 2f);
+        BORDER_WIDTH.put(BorderStyle.MEDIUM_DASHED, 2f);
+        BORDER_WIDTH.put(BorderStyle.MEDIUM_DASH_DOT, 2f);
+        BORDER_WIDTH.put(BorderStyle.MEDIUM_DASH_DOT_DOT, 2f);
+        BORDER_WIDTH.put(BorderStyle.SLANTED_DASH_DOT, 2f);
+        BORDER_WIDTH.put(BorderStyle.THICK, 3f);
+        BORDER_WIDTH.put(BorderStyle.DOUBLE, 3f);
+    }
+
+    private final Document document;
+    private final StyleTable styles;
+    private final FontProvider fonts;
+    private final CellLook[] looks;
+    private final int flushRows;
+    private final boolean printSetup;
+    private PageSetup pageSetup;
+    private PdfPTable table;
+    private int headerRows;
+    private int rowNum;
+    private int rowSpanEnd;
+    private int pendingRows;
+    private boolean flushed;
+
+    public PdfSheetRenderer(Document document, StyleTable styles) {
+        this(document, styles, 0);
+    }
+
+    /**
+     * @param flushRows rows after which the table built so far is added to the document, {@code 0} to add
+     *                  the whole table at the end of the sheet
+     */
+    public PdfSheetRenderer(Document document, StyleTable styles, int flushRows) {
+        this(document, styles, flushRows, FontFactory.getFontImp());
+    }
+
+    /**
+     * @param fonts resolves the font names of the styles
+     */
+    public PdfSheetRenderer(Document document, StyleTable styles, int flushRows, FontProvider fonts) {
+        this(document, styles, flushRows, fonts, false);
+    }
+
+    /**
+     * @param printSetup lay sheets out by their page setup, each starting a new page
+     */
+    public PdfSheetRenderer(Document document, StyleTable styles, int flushRows, FontProvider fonts,
+                            boolean printSetup) {
+        this.document = document;
+        this.styles = styles;
+        this.fonts = fonts;
+        this.looks = new CellLook[styles.size()];
+        this.flushRows = flushRows;
+        this.printSetup = printSetup;
+    }
+
+    @Override
+    protected void startTable() {
+        int columns = Math.max(1, layout.getEndColumn() - layout.getFirstColumn());
+        table = new PdfPTable(columns);
+        pageSetup = printSetup ? layout.getPageSetup() : null;
+        if (pageSetup == null) {
+            table.setWidthPercentage(100);
+        } else {
+            float[] widths = new float[columns];
+            float total = 0;
+            for (int i = 0; i < columns; i++) {
+                int pixels = ExcelUtils.widthUnits2Pixel(pageSetup.getColumnWidth(layout.getFirstColumn() + i));
+                widths[i] = Math.max(1f, pixels * POINTS_PER_PIXEL);
+                total += widths[i];
+            }
+            startPage(pageSetup, total);
+            try {
+                table.setTotalWidth(widths);
+            } catch (DocumentException e) {
+                throw new IllegalStateException("Unable to set column widths of sheet " + layout.getName(), e);
+            }
+            table.setLockedWidth(true);
+            table.setHorizontalAlignment(Element.ALIGN_LEFT);
+        }
+        table.getDefaultCell().setBorder(Rectangle.NO_BORDER);
+        table.setComplete(flushRows == 0 && (pageSetup == null || !pageSetup.hasRowBreaks()));
+        headerRows = 0;
+        rowSpanEnd = -1;
+        pendingRows = 0;
+        flushed = false;
+    }
+
+    /**
+     * Starts a new page of the paper of the sheet. The page is made larger by the inverse of the scale instead
+     * of drawing the table smaller, which gives the same proportions on a reader fitting the page to the paper.
+     */
+    private void startPage(PageSetup setup, float tableWidth) {
+        Rectangle paper = paper(setup.getPaperSize());
+        if (setup.isLandscape())
+            paper = paper.rotate();
+        float left = (float) setup.getLeftMargin() * POINTS_PER_INCH;
+        float right = (float) setup.getRightMargin() * POINTS_PER_INCH;
+        float top = (float) setup.getTopMargin() * POINTS_PER_INCH;
+        float bottom = (float) setup.getBottomMargin() * POINTS_PER_INCH;
+        float printable = paper.getWidth() - left - right;
+        if (printable <= 0 || paper.getHeight() - top - bottom <= 0) {
+            left = right = top = bottom = 0;
+            printable = paper.getWidth();
+        }
+        float scale = setup.isFitToPage() || setup.getScale() <= 0 ? 1 : setup.getScale() / 100f;
+        scale = Math.min(scale, printable / tableWidth);
+        document.setPageSize(new Rectangle(paper.getWidth() / scale, paper.getHeight() / scale));
+        document.setMargins(left / scale, right / scale, top / scale, bottom / scale);
+        document.newPage();
+    }
+
+    @Override
+    protected void startTableRow(int rowNum) {
+        this.rowNum = rowNum;
+        if (pageSetup != null && pageSetup.isRowBreak(rowNum) && rowNum > rowSpanEnd
+                && rowNum >= layout.getSplitTopRow() && (pendingRows > 0 || flushed)) {
+            if (pendingRows > 0) {
+                add(table);
+                flushed = true;
+                pendingRows = 0;
+            }
+            document.newPage();
+        }
+    }
+
+    @Override
+    protected void endTableRow(int rowNum) {
+        table.completeRow();
+        if (rowNum < layout.getSplitTopRow())
+            headerRows++;
+        pendingRows++;
+        if (flushRows > 0 && pendingRows >= flushRows && rowNum >= layout.getSplitTopRow() - 1
+                && rowNum >= rowSpanEnd) {
+            add(table);
+            flushed = true;
+            pendingRows = 0;
+        }
+    }
+
+    @Override
+    protected void endTable() {
+        table.setComplete(true);
+        if (table.size() > 0 || flushed)
+            add(table);
+        else
+            add(Chunk.NEWLINE);
+        table = null;
+        pageSetup = null;
+    }
+
+    private void add(Element element) {
+        if (element == table)
+            table.setHeaderRows(headerRows);
+        try {
+            document.add(element);
+        } catch (DocumentException e) {
+            throw new IllegalStateException("Unable to add sheet " + layout.getName() + " to the document", e);
+        }
+    }
+
+    @Override
+    protected void tableCell(String content, RenderStyle style, int colSpan, int rowSpan) {
+        CellLook look = look(style == null ? styles.getDefault() : style);
+        PdfPCell cell = new PdfPCell(new Phrase(content == null ? EMPTY_CONTENT : content, look.font));
+        if (colSpan > 0)
+            cell.setColspan(colSpan);
+        if (rowSpan > 0) {
+            cell.setRowspan(rowSpan);
+            rowSpanEnd = Math.max(rowSpanEnd, rowNum + rowSpan - 1);
+        }
+        look.applyTo(cell);
+        if (pageSetup != null && !look.wrapText)
+            cell.setNoWrap(true);
+        table.addCell(cell);
+    }
+
+    private CellLook look(RenderStyle style) {
+        int index = style.getIndex() & 0xFFFF;
+        CellLook look = looks[index];
+        if (look == null)
+            looks[index] = look = new CellLook(style, fonts);
+        return look;
+    }
+
+    /**
+     * iText counterpart of a {@link RenderStyle}, resolved on first use.
+     */
+    private static final class CellLook {
+
+        private final Font font;
+        private final int horizontalAlignment;
+        private final int verticalAlignment;
+        private final int rotation;
+        private final boolean wrapText;
+        private final BaseColor fill;
+        private final float[] borderWidths = new float[4];
+        private final BaseColor[] borderColors = new BaseColor[4];
+
+        private CellLook(RenderStyle style, FontProvider fonts) {
+            int fontStyle = (style.isBold() ? Font.BOLD : 0) | (style.isItalic() ? Font.ITALIC : 0);
+            int size = style.getFontSize() == 9 ? 10 : style.getFontSize();
+            BaseColor color = style.getFontColor() == null ? BaseColor.BLACK : color(style.getFontColor());
+            font = fonts.getFont(style.getFontName(), FontFactory.defaultEncoding, FontFactory.defaultEmbedding,
+                    size, fontStyle, color);
+            horizontalAlignment = horizontalAlignment(style);
+            verticalAlignment = verticalAlignment(style);
+            rotation = style.getRotation() == 90 ? 90 : 0;
+            wrapText = style.isWrapText();
+            fill = style.getFillColor() == null ? null : color(style.getFillColor());
+            for (int side = TOP; side <= LEFT; side++) {
+                borderWidths[side] = borderWidth(style, side);
+                borderColors[side] = color(style.getBorderColor(side));
+            }
+        }
+
+        private void applyTo(PdfPCell cell) {
+            cell.setPaddingTop(PADDING_VERTICAL);
+            cell.setPaddingBottom(PADDING_VERTICAL);
+            cell.setPaddingLeft(PADDING_HORIZONTAL);
+            cell.setPaddingRight(PADDING_HORIZONTAL);
+            cell.setHorizontalAlignment(horizontalAlignment);
+            cell.setVerticalAlignment(verticalAlignment);
+            if (rotation != 0)
+                cell.setRotation(rotation);
+            if (fill != null)
+                cell.setBackgroundColor(fill);
+            cell.setBorder(Rectangle.NO_BORDER);
+            cell.setUseVariableBorders(true);
+            cell.setBorderWidthTop(borderWidths[TOP]);
+            cell.setBorderWidthRight(borderWidths[RIGHT]);
+            cell.setBorderWidthBottom(borderWidths[BOTTOM]);
+            cell.setBorderWidthLeft(borderWidths[LEFT]);
+            cell.setBorderColorTop(borderColors[TOP]);
+            cell.setBorderColorRight(borderColors[RIGHT]);
+            cell.setBorderColorBottom(borderColors[BOTTOM]);
+            cell.setBorderColorLeft(borderColors[LEFT]);
+        }
+    }
+
+    private static float borderWidth(RenderStyle style, int side) {
+        Float width = BORDER_WIDTH.get(style.getBorder(side));
+        return width == null ? 0 : width;
+    }
+
+    /**
+     * Same rule as the {@code text-align} written into every HTML cell.
+     */
+    private static int horizontalAlignment(RenderStyle style) {
+        switch (style.getAlignment()) {
+            case RIGHT:
+                return Element.ALIGN_RIGHT;
+            case CENTER:
+            case CENTER_SELECTION:
+                return Element.ALIGN_CENTER;
+            default:
+                return Element.ALIGN_LEFT;
+        }
+    }
+
+    private static int verticalAlignment(RenderStyle style) {
+        switch (style.getVerticalAlignment()) {
+            case TOP:
+                return Element.ALIGN_TOP;
+            case CENTER:
+            case JUSTIFY:
+            case DISTRIBUTED:
+                return Element.ALIGN_MIDDLE;
+            default:
+                return Element.ALIGN_BOTTOM;
+        }
+    }
+
+    /**
+     * @param paperSize one of the {@code *_PAPERSIZE} constants of {@link PrintSetup}, A4 for the sizes
+     *                  iText has no page size of
+     */
+    private static Rectangle paper(short paperSize) {
+        switch (paperSize) {
+            case PrintSetup.LETTER_PAPERSIZE:
+            case PrintSetup.LETTER_SMALL_PAGESIZE:
+                return PageSize.LETTER;
+            case PrintSetup.TABLOID_PAPERSIZE:
+                return PageSize.TABLOID;
+            case PrintSetup.LEDGER_PAPERSIZE:
+                return PageSize.LEDGER;
+            case PrintSetup.LEGAL_PAPERSIZE:
+                return PageSize.LEGAL;
+            case PrintSetup.STATEMENT_PAPERSIZE:
+                return PageSize.HALFLETTER;
+            case PrintSetup.EXECUTIVE_PAPERSIZE:
+                return PageSize.EXECUTIVE;
+            case PrintSetup.A3_PAPERSIZE:
+                return PageSize.A3;
+            case PrintSetup.A5_PAPERSIZE:
+                return PageSize.A5;
+            case PrintSetup.B4_PAPERSIZE:
+                return PageSize.B4;
+            case PrintSetup.B5_PAPERSIZE:
+                return PageSize.B5;
+            default:
+                return PageSize.A4;
+        }
+    }
+
+    /**
+     * @param color {@code #rgb} or {@code #rrggbb}
+     */
+    private static BaseColor color(String color) {
+        String hex = color.substring(1);
+        if (hex.length() == 3)
+            hex = new String(new char[]{hex.charAt(0), hex.charAt(0), hex.charAt(1), hex.charAt(1),
+                    hex.charAt(2), hex.charAt(2)});
+        return new BaseColor(0xFF000000 | Integer.parseInt(hex, 16));
+    }
+}
@@ -0,0 +1,35 @@
+package ru.malltshik.xls2pdf.render;
+
+import ru.malltshik.xls2pdf.style.RenderStyle;
+
+/**
+ * Receives the content of a sheet row by row, the way both the POI usermodel and the streaming
+ * readers produce it. Rows come in ascending order, cells of a row in ascending column order;
+ * columns without a cell are not reported.
+ */
+public interface SheetContentHandler {
+
+    void startSheet(SheetLayout layout);
+
+    void startRow(int rowNum);
+
+    /**
+     * @param text  display text of the cell, {@code null} for a blank cell
+     * @param style compiled style of the cell, never {@code null}
+     */
+    void cell(int column, String text, RenderStyle style);
+
+    /**
+     * A cell holding a number or a formula with a number result. Handlers that only need the text
+     * leave it to {@link #cell(int, String, RenderStyle)}.
+     *
+     * @param value number as stored in the workbook, {@code text} being its formatted form
+     */
+    default void cell(int column, String text, double value, RenderStyle style) {
+        cell(column, text, style);
+    }
+
+    void endRow(int rowNum);
+
+    void endSheet();
+}
@@ -0,0 +1,91 @@
+package ru.malltshik.xls2pdf.render;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import ru.malltshik.xls2pdf.model.MergedRegionIndex;
+
+import java.util.Objects;
+
+/**
+ * What a renderer has to know about a sheet before its first row: column bounds, merged regions,
+ * the frozen header rows and the print setup.
+ */
+public final class SheetLayout {
+
+    private final String name;
+    private final int firstColumn;
+    private final int endColumn;
+    private final MergedRegionIndex mergedRegions;
+    private final int splitTopRow;
+    private final PageSetup pageSetup;
+
+    /**
+     * @param firstColumn first rendered column
+     * @param endColumn   column after the last rendered one
+     * @param splitTopRow first row below frozen panes or {@code -1} when the sheet is not split
+     */
+    public SheetLayout(String name, int firstColumn, int endColumn, MergedRegionIndex mergedRegions,
+                       int splitTopRow) {
+        this(name, firstColumn, endColumn, mergedRegions, splitTopRow, null);
+    }
+
+    /**
+     * @param pageSetup print setup of the sheet, {@code null} when unknown
+     */
+    public SheetLayout(String name, int firstColumn, int endColumn, MergedRegionIndex mergedRegions,
+                       int splitTopRow, PageSetup pageSetup) {
+        this.name = name;
+        this.firstColumn = firstColumn;
+        this.endColumn = endColumn;
+        this.mergedRegions = Objects.requireNonNull(mergedRegions, "Merged regions must be non null");
+        this.splitTopRow = splitTopRow;
+        this.pageSetup = pageSetup;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getFirstColumn() {
+        return firstColumn;
+    }
+
+    public int getEndColumn() {
+        return endColumn;
+    }
+
+    public MergedRegionIndex getMergedRegions() {
+        return mergedRegions;
+    }
+
+    public int getSplitTopRow() {
+        return splitTopRow;
+    }
+
+    /**
+     * @return print setup of the sheet, {@code null} when unknown
+     */
+    public PageSetup getPageSetup() {
+        return pageSetup;
+    }
+
+    /**
+     * Layout of the part of the sheet inside the range, as rendered by itself: columns and merged regions are
+     * cut at the edges of the range, rows above the range no longer count as frozen header rows.
+     */
+    public SheetLayout clip(CellRangeAddress range) {
+        int first = Math.max(firstColumn, range.getFirstColumn());
+        int end = Math.max(first, Math.min(endColumn, range.getLastColumn() + 1));
+        int split = splitTopRow > range.getFirstRow() ? Math.min(splitTopRow, range.getLastRow() + 1) : -1;
+        return new SheetLayout(name, first, end, mergedRegions.clip(range), split, pageSetup);
+    }
+
+    /**
+     * @return {@code true} when the content of the cell is never rendered because another cell
+     * of its merged region carries it
+     */
+    public boolean isHidden(int row, int column) {
+        CellRangeAddress region = mergedRegions.regionAt(row, column);
+        return region != null
+                && (row != region.getFirstRow() || column != Math.max(region.getFirstColumn(), firstColumn));
+    }
+}
@@ -0,0 +1,246 @@
+package ru.malltshik.xls2pdf.render;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import ru.malltshik.xls2pdf.style.RenderStyle;
+import ru.malltshik.xls2pdf.style.StyleTable;
+
+import java.util.*;
+
+/**
+ * Read-only content of one sheet, independent of the POI object graph it was read from, so the workbook
+ * can be released once its sheets are extracted. The same model can be rendered any number of times,
+ * into any format and on any thread.
+ * <p>
+ * Cells are kept in flat arrays, one entry per cell, the cells of a row being a contiguous range given by
+ * the row offsets. Styles are kept as indexes into the {@link StyleTable} of the workbook, numbers also
+ * as their value, equal texts of a sheet as one string. Merged regions are indexed by the {@link SheetLayout}.
+ *
+ * @see Builder
+ */
+public final class SheetModel {
+
+    private final SheetLayout layout;
+    private final StyleTable styles;
+    private final int[] rowNums;
+    /**
+     * Cells of row {@code i} are {@code rowStarts[i]} inclusive to {@code rowStarts[i + 1]} exclusive.
+     */
+    private final int[] rowStarts;
+    private final int[] columns;
+    private final String[] texts;
+    /**
+     * Value of a number cell, {@code NaN} for any other cell.
+     */
+    private final double[] values;
+    private final short[] styleIndexes;
+    private final short[] usedStyles;
+
+    private SheetModel(Builder builder) {
+        this.layout = builder.layout;
+        this.styles = builder.styles;
+        this.rowNums = Arrays.copyOf(builder.rowNums, builder.rowCount);
+        this.rowStarts = Arrays.copyOf(builder.rowStarts, builder.rowCount + 1);
+        this.columns = Arrays.copyOf(builder.columns, builder.cellCount);
+        this.texts = Arrays.copyOf(builder.texts, builder.cellCount);
+        this.values = Arrays.copyOf(builder.values, builder.cellCount);
+        this.styleIndexes = Arrays.copyOf(builder.styleIndexes, builder.cellCount);
+        this.usedStyles = Arrays.copyOf(builder.usedStyles, builder.usedStyleCount);
+    }
+
+    public SheetLayout getLayout() {
+        return layout;
+    }
+
+    public StyleTable getStyles() {
+        return styles;
+    }
+
+    public int getRowCount() {
+        return rowNums.length;
+    }
+
+    public int getCellCount() {
+        return columns.length;
+    }
+
+    /**
+     * @param row position of the row in the model, not its row number
+     */
+    public int getRowNum(int row) {
+        return rowNums[row];
+    }
+
+    /**
+     * @return position of the first cell of the row
+     */
+    public int getFirstCell(int row) {
+        return rowStarts[row];
+    }
+
+    /**
+     * @return position after the last cell of the row
+     */
+    public int getEndCell(int row) {
+        return rowStarts[row + 1];
+    }
+
+    public int getColumn(int cell) {
+        return columns[cell];
+    }
+
+    /**
+     * @return display text of the cell, {@code null} for a blank cell
+     */
+    public String getText(int cell) {
+        return texts[cell];
+    }
+
+    public boolean isNumber(int cell) {
+        return !Double.isNaN(values[cell]);
+    }
+
+    /**
+     * @return value of a number cell, {@code NaN} for any other cell
+     */
+    public double getValue(int cell) {
+        return values[cell];
+    }
+
+    public RenderStyle getStyle(int cell) {
+        return styles.get(styleIndexes[cell]);
+    }
+
+    /**
+     * @return styles the cells refer to, in order of first use
+     */
+    public List<RenderStyle> getUsedStyles() {
+        List<RenderStyle> used = new ArrayList<>(usedStyles.length);
+        for (short style : usedStyles)
+            used.add(styles.get(style));
+        return used;
+    }
+
+    /**
+     * Reports the sheet to the handler in the order it was read. Cells hidden by a merged region are left out.
+     */
+    public void replay(SheetContentHandler handler) {
+        replay(handler, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reports the part of the sheet inside the range, see {@link WorkbookReader#read(int, CellRangeAddress,
+     * SheetContentHandler)}. The first row is found by a binary search, so only the rows of the range are
+     * visited.
+     */
+    public void replay(SheetContentHandler handler, CellRangeAddress range) {
+        int first = Arrays.binarySearch(rowNums, range.getFirstRow());
+        replay(new ClippedSheetHandler(range, handler), first < 0 ? -first - 1 : first, range.getLastRow());
+    }
+
+    private void replay(SheetContentHandler handler, int firstRow, int lastRowNum) {
+        handler.startSheet(layout);
+        for (int row = firstRow; row < rowNums.length && rowNums[row] <= lastRowNum; row++) {
+            int rowNum = rowNums[row];
+            handler.startRow(rowNum);
+            for (int cell = rowStarts[row]; cell < rowStarts[row + 1]; cell++) {
+                if (layout.isHidden(rowNum, columns[cell]))
+                    continue;
+                RenderStyle style = styles.get(styleIndexes[cell]);
+                if (Double.isNaN(values[cell]))
+                    handler.cell(columns[cell], texts[cell], style);
+                else
+                    handler.cell(columns[cell], texts[cell], values[cell], style);
+            }
+            handler.endRow(rowNum);
+        }
+        handler.endSheet();
+    }
+
+    /**
+     * Collects the content reported by a {@link WorkbookReader} into a model. The layout may also be set
+     * after the rows, by a reader that learns the column bounds while reading.
+     */
+    public static final class Builder implements SheetContentHandler {
+
+        private final StyleTable styles;
+        private final Map<String, String> textPool = new HashMap<>();
+        private final BitSet seenStyles = new BitSet();
+        private SheetLayout layout;
+        private int[] rowNums = new int[16];
+        private int[] rowStarts = new int[17];
+        private int rowCount;
+        private int[] columns = new int[64];
+        private String[] texts = new String[64];
+        private double[] values = new double[64];
+        private short[] styleIndexes = new short[64];
+        private int cellCount;
+        private short[] usedStyles = new short[16];
+        private int usedStyleCount;
+
+        /**
+         * @param styles styles of the workbook the cells are read from
+         */
+        public Builder(StyleTable styles) {
+            this.styles = Objects.requireNonNull(styles, "Styles must be non null");
+        }
+
+        @Override
+        public void startSheet(SheetLayout layout) {
+            this.layout = layout;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            if (rowCount == rowNums.length) {
+                rowNums = Arrays.copyOf(rowNums, rowCount * 2);
+                rowStarts = Arrays.copyOf(rowStarts, rowCount * 2 + 1);
+            }
+            rowNums[rowCount] = rowNum;
+        }
+
+        @Override
+        public void cell(int column, String text, RenderStyle style) {
+            cell(column, text, Double.NaN, style);
+        }
+
+        @Override
+        public void cell(int column, String text, double value, RenderStyle style) {
+            if (cellCount == columns.length) {
+                columns = Arrays.copyOf(columns, cellCount * 2);
+                texts = Arrays.copyOf(texts, cellCount * 2);
+                values = Arrays.copyOf(values, cellCount * 2);
+                styleIndexes = Arrays.copyOf(styleIndexes, cellCount * 2);
+            }
+            short index = style.getIndex();
+            if (!seenStyles.get(index & 0xFFFF)) {
+                seenStyles.set(index & 0xFFFF);
+                if (usedStyleCount == usedStyles.length)
+                    usedStyles = Arrays.copyOf(usedStyles, usedStyleCount * 2);
+                usedStyles[usedStyleCount++] = index;
+            }
+            columns[cellCount] = column;
+            texts[cellCount] = text == null ? null : textPool.computeIfAbsent(text, t -> t);
+            values[cellCount] = value;
+            styleIndexes[cellCount] = index;
+            cellCount++;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            rowStarts[++rowCount] = cellCount;
+        }
+
+        @Override
+        public void endSheet() {
+        }
+
+        /**
+         * @throws IllegalStateException when no layout was reported
+         */
+        public SheetModel build() {
+            if (layout == null)
+                throw new IllegalStateException("No sheet layout reported");
+            return new SheetModel(this);
+        }
+    }
+}
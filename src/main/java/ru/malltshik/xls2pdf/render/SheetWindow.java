@@ -0,0 +1,103 @@
+package ru.malltshik.xls2pdf.render;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.util.AreaReference;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Part of a sheet to render instead of the whole sheet: a fixed range, a window of rows or the print area
+ * defined for the sheet. Immutable.
+ */
+public final class SheetWindow {
+
+    private static final int LAST_ROW = SpreadsheetVersion.EXCEL2007.getLastRowIndex();
+    private static final int LAST_COLUMN = SpreadsheetVersion.EXCEL2007.getLastColumnIndex();
+    private static final SheetWindow PRINT_AREA = new SheetWindow(null);
+
+    /**
+     * {@code null} for the print area.
+     */
+    private final CellRangeAddress range;
+
+    private SheetWindow(CellRangeAddress range) {
+        this.range = range;
+    }
+
+    /**
+     * @param range rows and columns to render, zero based
+     */
+    public static SheetWindow range(CellRangeAddress range) {
+        Objects.requireNonNull(range, "Range must be non null");
+        if (range.getFirstRow() < 0 || range.getFirstColumn() < 0
+                || range.getLastRow() < range.getFirstRow() || range.getLastColumn() < range.getFirstColumn())
+            throw new IllegalArgumentException("Invalid range: " + range.formatAsString());
+        return new SheetWindow(range.copy());
+    }
+
+    /**
+     * @param offset number of the first row to render, zero based
+     * @param limit  number of rows to render, rows without cells included
+     */
+    public static SheetWindow rows(int offset, int limit) {
+        if (offset < 0)
+            throw new IllegalArgumentException("Row offset must not be negative: " + offset);
+        if (limit <= 0)
+            throw new IllegalArgumentException("Row limit must be positive: " + limit);
+        int lastRow = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit - 1);
+        return new SheetWindow(new CellRangeAddress(offset, lastRow, 0, LAST_COLUMN));
+    }
+
+    /**
+     * @return the print area of every sheet, the whole sheet when it has none
+     */
+    public static SheetWindow printArea() {
+        return PRINT_AREA;
+    }
+
+    public boolean isPrintArea() {
+        return range == null;
+    }
+
+    /**
+     * @return range to render of the sheet, {@code null} for the whole sheet
+     */
+    public CellRangeAddress rangeOf(WorkbookReader reader, int sheet) throws IOException {
+        return range == null ? reader.getPrintArea(sheet) : range;
+    }
+
+    /**
+     * @param reference formula of a defined name, e.g. {@code 'Q 1'!$A$1:$F$40,'Q 1'!$H$1:$H$40}
+     * @return first area of the reference with its corners in order, whole columns or rows spanning all rows or
+     * columns, {@code null} when the reference does not refer to an area
+     */
+    public static CellRangeAddress firstArea(String reference) {
+        if (reference == null || reference.isEmpty())
+            return null;
+        AreaReference area;
+        try {
+            area = AreaReference.generateContiguous(SpreadsheetVersion.EXCEL2007, reference)[0];
+        } catch (RuntimeException e) {
+            return null;
+        }
+        CellReference first = area.getFirstCell();
+        CellReference last = area.getLastCell();
+        int firstRow = Math.min(first.getRow(), last.getRow());
+        int lastRow = Math.max(first.getRow(), last.getRow());
+        int firstColumn = Math.min(first.getCol(), last.getCol());
+        int lastColumn = Math.max(first.getCol(), last.getCol());
+        if (firstRow < 0)
+            return new CellRangeAddress(0, LAST_ROW, firstColumn, lastColumn);
+        if (firstColumn < 0)
+            return new CellRangeAddress(firstRow, lastRow, 0, LAST_COLUMN);
+        return new CellRangeAddress(firstRow, lastRow, firstColumn, lastColumn);
+    }
+
+    @Override
+    public String toString() {
+        return range == null ? "print area" : range.formatAsString();
+    }
+}
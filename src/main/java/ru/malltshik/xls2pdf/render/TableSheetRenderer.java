@@ -0,0 +1,94 @@
+package ru.malltshik.xls2pdf.render;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import ru.malltshik.xls2pdf.style.RenderStyle;
+
+/**
+ * Lays a sheet out as a table with one cell per column. Columns without a cell become empty cells
+ * of the default style, merged regions become column and row spans of their first cell.
+ * Subclasses only write the table.
+ */
+public abstract class TableSheetRenderer implements SheetContentHandler {
+
+    protected SheetLayout layout;
+    private int rowNum;
+    private int nextColumn;
+
+    @Override
+    public void startSheet(SheetLayout layout) {
+        this.layout = layout;
+        startTable();
+    }
+
+    @Override
+    public void startRow(int rowNum) {
+        this.rowNum = rowNum;
+        this.nextColumn = layout.getFirstColumn();
+        startTableRow(rowNum);
+    }
+
+    @Override
+    public void cell(int column, String text, RenderStyle style) {
+        if (column >= layout.getEndColumn())
+            return;
+        while (nextColumn < column)
+            nextColumn = printCell(nextColumn, null, null);
+        if (nextColumn == column)
+            nextColumn = printCell(column, text, style);
+    }
+
+    @Override
+    public void endRow(int rowNum) {
+        while (nextColumn < layout.getEndColumn())
+            nextColumn = printCell(nextColumn, null, null);
+        endTableRow(rowNum);
+    }
+
+    @Override
+    public void endSheet() {
+        endTable();
+    }
+
+    protected abstract void startTable();
+
+    protected abstract void startTableRow(int rowNum);
+
+    /**
+     * @param content display text, {@code null} for an empty cell
+     * @param style   style of the cell, {@code null} for a column without a cell
+     * @param colSpan number of columns of a merged cell, {@code 0} when not merged
+     * @param rowSpan number of rows of a merged cell, {@code 0} when not merged
+     */
+    protected abstract void tableCell(String content, RenderStyle style, int colSpan, int rowSpan);
+
+    protected abstract void endTableRow(int rowNum);
+
+    protected abstract void endTable();
+
+    /**
+     * @return next column to print
+     */
+    private int printCell(int column, String content, RenderStyle style) {
+        CellRangeAddress mergeRegion = layout.getMergedRegions().regionAt(rowNum, column);
+        int colSpan = 0;
+        int rowSpan = 0;
+        if (mergeRegion != null) {
+            int mergeCol = mergeRegion.getLastColumn() - mergeRegion.getFirstColumn();
+            int mergeRow = mergeRegion.getLastRow() - mergeRegion.getFirstRow();
+            if (mergeCol > 0) {
+                colSpan = mergeCol + 1;
+            }
+            if (mergeRow > 0 && rowNum == mergeRegion.getFirstRow()) {
+                rowSpan = mergeRow + 1;
+            } else if (mergeRow > 0) {
+                return mergeRegion.getLastColumn() + 1;
+            }
+        }
+
+        tableCell(content, style, colSpan, rowSpan);
+
+        if (mergeRegion != null)
+            return column + mergeRegion.getLastColumn() - mergeRegion.getFirstColumn() + 1;
+        return column + 1;
+    }
+}
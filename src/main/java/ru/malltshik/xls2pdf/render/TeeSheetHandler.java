@@ -0,0 +1,55 @@
+package ru.malltshik.xls2pdf.render;
+
+import ru.malltshik.xls2pdf.style.RenderStyle;
+
+import java.util.List;
+
+/**
+ * Passes every event on to several handlers in turn, so one read of a sheet feeds all of them.
+ */
+public final class TeeSheetHandler implements SheetContentHandler {
+
+    private final SheetContentHandler[] targets;
+
+    public TeeSheetHandler(List<? extends SheetContentHandler> targets) {
+        if (targets.isEmpty())
+            throw new IllegalArgumentException("At least one handler is required");
+        this.targets = targets.toArray(new SheetContentHandler[0]);
+    }
+
+    @Override
+    public void startSheet(SheetLayout layout) {
+        for (SheetContentHandler target : targets)
+            target.startSheet(layout);
+    }
+
+    @Override
+    public void startRow(int rowNum) {
+        for (SheetContentHandler target : targets)
+            target.startRow(rowNum);
+    }
+
+    @Override
+    public void cell(int column, String text, RenderStyle style) {
+        for (SheetContentHandler target : targets)
+            target.cell(column, text, style);
+    }
+
+    @Override
+    public void cell(int column, String text, double value, RenderStyle style) {
+        for (SheetContentHandler target : targets)
+            target.cell(column, text, value, style);
+    }
+
+    @Override
+    public void endRow(int rowNum) {
+        for (SheetContentHandler target : targets)
+            target.endRow(rowNum);
+    }
+
+    @Override
+    public void endSheet() {
+        for (SheetContentHandler target : targets)
+            target.endSheet();
+    }
+}
@@ -0,0 +1,260 @@
+package ru.malltshik.xls2pdf.render;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.PaneInformation;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import ru.malltshik.xls2pdf.formula.FormulaEngine;
+import ru.malltshik.xls2pdf.formula.FormulaEvaluationPolicy;
+import ru.malltshik.xls2pdf.helpers.HtmlHelper;
+import ru.malltshik.xls2pdf.helpers.impl.HSSFHtmlHelper;
+import ru.malltshik.xls2pdf.helpers.impl.XSSFHtmlHelper;
+import ru.malltshik.xls2pdf.model.MergedRegionIndex;
+import ru.malltshik.xls2pdf.style.RenderStyle;
+import ru.malltshik.xls2pdf.style.StyleTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Reads a workbook loaded into the POI usermodel.
+ * <p>
+ * Every sheet is walked once: the scan formats the cells into a {@link SheetModel} and collects the column
+ * bounds on the way. A model made for {@link #usedStyles(Collection)} is kept until the sheet is
+ * {@link #read(int, SheetContentHandler) read}.
+ */
+public class UserModelReader implements WorkbookReader {
+
+    private final Workbook wb;
+    private final File spilled;
+    private final boolean closesWorkbook;
+    private final StyleTable styles;
+    private final FormulaEngine formulas;
+    private final Map<Integer, SheetModel> scans = new HashMap<>();
+    private boolean evaluateAll;
+
+    public UserModelReader(Workbook wb, FormulaEvaluationPolicy formulaPolicy, boolean evaluateAll) {
+        this(wb, null, true, formulaPolicy, evaluateAll);
+    }
+
+    private UserModelReader(Workbook wb, File spilled, boolean closesWorkbook, FormulaEvaluationPolicy formulaPolicy,
+                            boolean evaluateAll) {
+        this.wb = Objects.requireNonNull(wb, "Workbook must be non null");
+        this.spilled = spilled;
+        this.closesWorkbook = closesWorkbook;
+        this.styles = StyleTable.compile(wb, helper(wb));
+        this.formulas = new FormulaEngine(wb, formulaPolicy);
+        this.evaluateAll = evaluateAll;
+    }
+
+    /**
+     * Reads a workbook that stays with the caller, e.g. one filled from a template: {@link #close()} leaves it
+     * open. Formula results evaluated for rendering are cached in its cells.
+     */
+    public static UserModelReader borrow(Workbook wb, FormulaEvaluationPolicy formulaPolicy, boolean evaluateAll) {
+        return new UserModelReader(wb, null, false, formulaPolicy, evaluateAll);
+    }
+
+    /**
+     * Loads the workbook from a file opened read only: POI then reads the zip entries of an XLSX package and
+     * the blocks of an XLS file from the file as needed, rather than copying the whole file into memory
+     * first. The file is not modified, formula results evaluated for rendering are not saved.
+     */
+    public static UserModelReader open(File file, FormulaEvaluationPolicy formulaPolicy, boolean evaluateAll)
+            throws IOException {
+        return open(file, null, formulaPolicy, evaluateAll);
+    }
+
+    /**
+     * Copies the stream to a temporary file first and loads the workbook from there, see
+     * {@link #open(File, FormulaEvaluationPolicy, boolean)}. The file is deleted on {@link #close()}.
+     */
+    public static UserModelReader open(InputStream in, FormulaEvaluationPolicy formulaPolicy, boolean evaluateAll)
+            throws IOException {
+        File file = TempFile.createTempFile("xls2pdf", ".workbook");
+        try {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return open(file, file, formulaPolicy, evaluateAll);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file.toPath());
+            throw e;
+        }
+    }
+
+    private static UserModelReader open(File file, File spilled, FormulaEvaluationPolicy formulaPolicy,
+                                        boolean evaluateAll) throws IOException {
+        Workbook wb;
+        try {
+            wb = WorkbookFactory.create(file, null, true);
+        } catch (InvalidFormatException e) {
+            throw new IOException("Unable to read workbook " + file, e);
+        }
+        try {
+            return new UserModelReader(wb, spilled, true, formulaPolicy, evaluateAll);
+        } catch (RuntimeException e) {
+            wb.close();
+            throw e;
+        }
+    }
+
+    public static HtmlHelper helper(Workbook wb) {
+        if (wb instanceof HSSFWorkbook)
+            return new HSSFHtmlHelper((HSSFWorkbook) wb);
+        else if (wb instanceof XSSFWorkbook)
+            return new XSSFHtmlHelper((XSSFWorkbook) wb);
+        else
+            throw new IllegalArgumentException("unknown workbook type: " + wb.getClass().getSimpleName());
+    }
+
+    public Workbook getWorkbook() {
+        return wb;
+    }
+
+    @Override
+    public StyleTable getStyles() {
+        return styles;
+    }
+
+    @Override
+    public List<String> getSheetNames() {
+        List<String> names = new ArrayList<>(wb.getNumberOfSheets());
+        for (int i = 0; i < wb.getNumberOfSheets(); i++)
+            names.add(wb.getSheetName(i));
+        return names;
+    }
+
+    @Override
+    public CellRangeAddress getPrintArea(int sheet) {
+        return SheetWindow.firstArea(wb.getPrintArea(sheet));
+    }
+
+    @Override
+    public Collection<RenderStyle> usedStyles(Collection<Integer> sheets) {
+        Map<Short, RenderStyle> seen = new LinkedHashMap<>();
+        for (int sheet : sheets) {
+            for (RenderStyle style : scan(sheet).getUsedStyles())
+                seen.putIfAbsent(style.getIndex(), style);
+        }
+        return seen.values();
+    }
+
+    @Override
+    public void read(int sheet, SheetContentHandler handler) {
+        model(sheet).replay(handler);
+    }
+
+    /**
+     * The whole sheet is scanned, only the rows of the range are replayed.
+     */
+    @Override
+    public void read(int sheet, CellRangeAddress range, SheetContentHandler handler) {
+        model(sheet).replay(handler, range);
+    }
+
+    @Override
+    public SheetModel model(int sheet) {
+        SheetModel model = scan(sheet);
+        scans.remove(sheet);
+        return model;
+    }
+
+    @Override
+    public boolean holdsWorkbook() {
+        return true;
+    }
+
+    @Override
+    public FormulaEngine getFormulas() {
+        return formulas;
+    }
+
+    /**
+     * Formulas are evaluated for the whole workbook before the first sheet is scanned when requested.
+     */
+    private SheetModel scan(int index) {
+        SheetModel scan = scans.get(index);
+        if (scan != null)
+            return scan;
+        if (evaluateAll) {
+            formulas.evaluateAll();
+            evaluateAll = false;
+        }
+        Sheet sheet = wb.getSheetAt(index);
+        SheetModel.Builder model = new SheetModel.Builder(styles);
+        int firstColumn = Integer.MAX_VALUE;
+        int endColumn = 0;
+        boolean hasRows = false;
+        Iterator<Row> rows = sheet.rowIterator();
+        while (rows.hasNext()) {
+            Row row = rows.next();
+            int rowNum = row.getRowNum();
+            hasRows = true;
+            short firstCell = row.getFirstCellNum();
+            if (firstCell >= 0) {
+                firstColumn = Math.min(firstColumn, firstCell);
+                endColumn = Math.max(endColumn, row.getLastCellNum());
+            }
+            model.startRow(rowNum);
+            for (Cell cell : row)
+                cell(model, cell);
+            model.endRow(rowNum);
+        }
+        model.startSheet(layout(sheet, hasRows ? firstColumn : 0, endColumn));
+        scan = model.build();
+        scans.put(index, scan);
+        return scan;
+    }
+
+    /**
+     * Numbers and formulas with a number result are reported with their value.
+     */
+    private void cell(SheetModel.Builder model, Cell cell) {
+        RenderStyle style = styles.get(cell.getCellStyle());
+        int column = cell.getColumnIndex();
+        switch (cell.getCellTypeEnum()) {
+            case FORMULA:
+                CellValue value = formulas.value(cell);
+                String text = CellText.normalize(formulas.text(value));
+                if (value != null && value.getCellTypeEnum() == CellType.NUMERIC)
+                    model.cell(column, text, value.getNumberValue(), style);
+                else
+                    model.cell(column, text, style);
+                break;
+            case NUMERIC:
+                model.cell(column, CellText.normalize(CellText.apply(style.getFormat(), cell)),
+                        cell.getNumericCellValue(), style);
+                break;
+            default:
+                model.cell(column, CellText.normalize(CellText.apply(style.getFormat(), cell)), style);
+                break;
+        }
+    }
+
+    private static SheetLayout layout(Sheet sheet, int firstColumn, int endColumn) {
+        int splitTopRow = -1;
+        PaneInformation pi = sheet.getPaneInformation();
+        if (pi != null && pi.getActivePane() > 1 && pi.isFreezePane()) {
+            splitTopRow = pi.getHorizontalSplitTopRow();
+        }
+        return new SheetLayout(sheet.getSheetName(), firstColumn, endColumn, MergedRegionIndex.of(sheet),
+                splitTopRow, PageSetup.of(sheet, endColumn));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (closesWorkbook)
+                wb.close();
+        } finally {
+            if (spilled != null)
+                Files.deleteIfExists(spilled.toPath());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ru.malltshik.xls2pdf.render;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import ru.malltshik.xls2pdf.formula.FormulaEngine;
+import ru.malltshik.xls2pdf.style.RenderStyle;
+import ru.malltshik.xls2pdf.style.StyleTable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Source of workbook content for the renderers. Sheets are addressed by their index in workbook order.
+ * Not thread safe: sheets are read one after another.
+ */
+public interface WorkbookReader extends Closeable {
+
+    StyleTable getStyles();
+
+    /**
+     * @return names of all sheets in workbook order
+     */
+    List<String> getSheetNames();
+
+    /**
+     * @return styles the cells of the given sheets refer to, in order of first use
+     */
+    Collection<RenderStyle> usedStyles(Collection<Integer> sheets) throws IOException;
+
+    /**
+     * Reports one sheet to the handler.
+     */
+    void read(int sheet, SheetContentHandler handler) throws IOException;
+
+    /**
+     * Reports the part of one sheet inside the range to the handler, as a sheet of its own: the layout is
+     * clipped to the range, merged regions crossing its edges included. Rows are reported up to the first row
+     * below the range, but the layout needs the whole sheet first: the streaming readers parse all of it once
+     * for the bounds, styles, merged regions and print setup, which XLSX stores after the rows, and the
+     * usermodel reader scans it into a model. Only a reader holding models, an {@link ExtractedWorkbook},
+     * visits just the rows of the range, a viewer paging through a sheet keeps one.
+     */
+    default void read(int sheet, CellRangeAddress range, SheetContentHandler handler) throws IOException {
+        try {
+            read(sheet, new ClippedSheetHandler(range, handler));
+        } catch (RuntimeException e) {
+            if (e != ClippedSheetHandler.PASSED)
+                throw e;
+        }
+    }
+
+    /**
+     * @return first area of the print area defined for the sheet, {@code null} when there is none
+     */
+    CellRangeAddress getPrintArea(int sheet) throws IOException;
+
+    /**
+     * Reads one sheet into a model, which stays usable once the reader is closed.
+     */
+    default SheetModel model(int sheet) throws IOException {
+        SheetModel.Builder builder = new SheetModel.Builder(getStyles());
+        read(sheet, builder);
+        return builder.build();
+    }
+
+    /**
+     * @return {@code true} when the reader keeps the whole POI workbook in memory until it is closed, so
+     * extracting the sheets into {@link SheetModel}s first and closing the reader frees memory
+     */
+    default boolean holdsWorkbook() {
+        return false;
+    }
+
+    /**
+     * @return formula engine of the reader, {@code null} for a reader that renders cached results only
+     */
+    default FormulaEngine getFormulas() {
+        return null;
+    }
+}
@@ -0,0 +1,193 @@
+package ru.malltshik.xls2pdf.stream;
+
+import org.apache.poi.ss.usermodel.PrintSetup;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.xml.sax.Attributes;
+import ru.malltshik.xls2pdf.render.PageSetup;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static ru.malltshik.xls2pdf.utils.ExcelUtils.EXCEL_COLUMN_WIDTH_FACTOR;
+
+/**
+ * Lightweight pre-read of a worksheet part. Collects what has to be known before the first row is
+ * rendered: column bounds, styles in use, merged regions, frozen panes and the print setup. Keeps nothing
+ * per cell.
+ */
+class SheetMetadataHandler extends DefaultHandler {
+
+    private static final int TOP_LEFT_PANE = 4;
+
+    private boolean rowsSeen;
+    private int firstColumn = Integer.MAX_VALUE;
+    private int endColumn;
+    private int column;
+    private final BitSet seenStyles = new BitSet();
+    private final List<Integer> usedStyles = new ArrayList<>();
+    private final List<CellRangeAddress> mergedRegions = new ArrayList<>();
+    private int splitTopRow = -1;
+    private final PageSetup.Builder pageSetup = new PageSetup.Builder();
+    private boolean rowBreaks;
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        switch (localName) {
+            case "row":
+                rowsSeen = true;
+                column = -1;
+                break;
+            case "c":
+                String ref = attributes.getValue("r");
+                column = ref == null ? column + 1 : columnOf(ref);
+                firstColumn = Math.min(firstColumn, column);
+                endColumn = Math.max(endColumn, column + 1);
+
+                String s = attributes.getValue("s");
+                int style = s == null ? 0 : Integer.parseInt(s);
+                if (!seenStyles.get(style)) {
+                    seenStyles.set(style);
+                    usedStyles.add(style);
+                }
+                break;
+            case "sheetView":
+                splitTopRow = -1;
+                break;
+            case "pane":
+                pane(attributes);
+                break;
+            case "mergeCell":
+                mergedRegions.add(CellRangeAddress.valueOf(attributes.getValue("ref")));
+                break;
+            case "pageSetUpPr":
+                pageSetup.fitToPage(isTrue(attributes.getValue("fitToPage")));
+                break;
+            case "sheetFormatPr":
+                String baseColWidth = attributes.getValue("baseColWidth");
+                if (baseColWidth != null)
+                    pageSetup.defaultColumnWidth(Integer.parseInt(baseColWidth) * EXCEL_COLUMN_WIDTH_FACTOR);
+                break;
+            case "col":
+                String width = attributes.getValue("width");
+                if (width != null) {
+                    pageSetup.columnWidth(Integer.parseInt(attributes.getValue("min")) - 1,
+                            Integer.parseInt(attributes.getValue("max")) - 1,
+                            (int) (Double.parseDouble(width) * EXCEL_COLUMN_WIDTH_FACTOR));
+                }
+                break;
+            case "pageMargins":
+                pageSetup.leftMargin(Double.parseDouble(attributes.getValue("left")))
+                        .rightMargin(Double.parseDouble(attributes.getValue("right")))
+                        .topMargin(Double.parseDouble(attributes.getValue("top")))
+                        .bottomMargin(Double.parseDouble(attributes.getValue("bottom")));
+                break;
+            case "pageSetup":
+                pageSetup(attributes);
+                break;
+            case "rowBreaks":
+                rowBreaks = true;
+                break;
+            case "brk":
+                if (rowBreaks)
+                    pageSetup.rowBreak(Integer.parseInt(attributes.getValue("id")));
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        if ("rowBreaks".equals(localName))
+            rowBreaks = false;
+    }
+
+    /**
+     * Same defaults as {@code XSSFPrintSetup} for missing attributes.
+     */
+    private void pageSetup(Attributes attributes) {
+        pageSetup.paper(shortOf(attributes.getValue("paperSize"), PrintSetup.LETTER_PAPERSIZE),
+                "landscape".equals(attributes.getValue("orientation")))
+                .scale(shortOf(attributes.getValue("scale"), (short) 100))
+                .fitPages(shortOf(attributes.getValue("fitToWidth"), (short) 1),
+                        shortOf(attributes.getValue("fitToHeight"), (short) 1));
+    }
+
+    private static short shortOf(String value, short defaultValue) {
+        return value == null ? defaultValue : Short.parseShort(value);
+    }
+
+    private static boolean isTrue(String value) {
+        return "1".equals(value) || "true".equals(value);
+    }
+
+    /**
+     * Same rule as {@code XSSFSheet.getPaneInformation()} as used by the usermodel reader:
+     * a frozen pane whose active pane is on the left.
+     */
+    private void pane(Attributes attributes) {
+        String activePane = attributes.getValue("activePane");
+        int active = activePane == null ? TOP_LEFT_PANE : paneOrdinal(activePane);
+        boolean frozen = "frozen".equals(attributes.getValue("state"));
+        if (active - 1 > 1 && frozen) {
+            String topLeftCell = attributes.getValue("topLeftCell");
+            splitTopRow = topLeftCell == null ? 0 : new CellReference(topLeftCell).getRow();
+        } else {
+            splitTopRow = -1;
+        }
+    }
+
+    private static int paneOrdinal(String pane) {
+        switch (pane) {
+            case "bottomRight":
+                return 1;
+            case "topRight":
+                return 2;
+            case "bottomLeft":
+                return 3;
+            default:
+                return TOP_LEFT_PANE;
+        }
+    }
+
+    static int columnOf(String ref) {
+        int col = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char c = ref.charAt(i);
+            if (c >= 'A' && c <= 'Z')
+                col = col * 26 + (c - 'A' + 1);
+            else if (c >= 'a' && c <= 'z')
+                col = col * 26 + (c - 'a' + 1);
+            else if (c != '$')
+                break;
+        }
+        return col - 1;
+    }
+
+    int getFirstColumn() {
+        return rowsSeen ? firstColumn : 0;
+    }
+
+    int getEndColumn() {
+        return endColumn;
+    }
+
+    List<Integer> getUsedStyles() {
+        return usedStyles;
+    }
+
+    List<CellRangeAddress> getMergedRegions() {
+        return mergedRegions;
+    }
+
+    int getSplitTopRow() {
+        return splitTopRow;
+    }
+
+    PageSetup getPageSetup() {
+        return pageSetup.build();
+    }
+}
@@ -0,0 +1,142 @@
+package ru.malltshik.xls2pdf.stream;
+
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import ru.malltshik.xls2pdf.formula.FormulaEngine;
+import ru.malltshik.xls2pdf.render.CellText;
+import ru.malltshik.xls2pdf.render.SheetContentHandler;
+import ru.malltshik.xls2pdf.render.SheetLayout;
+import ru.malltshik.xls2pdf.style.RenderStyle;
+import ru.malltshik.xls2pdf.style.StyleTable;
+
+import java.text.DecimalFormat;
+
+/**
+ * Forwards the rows parsed by {@link XSSFSheetXMLHandler} to a {@link SheetContentHandler}.
+ * <p>
+ * The POI handler neither reports the style of a cell nor blank cells, so the {@code <c>} element is
+ * tracked here as well. Numbers are formatted with the compiled {@link RenderStyle} format, formula
+ * results with the {@link FormulaEngine} number pattern, the same way the usermodel reader does it.
+ * Formulas are never evaluated: only the cached results are available in a stream.
+ */
+class StreamingSheetHandler extends XSSFSheetXMLHandler {
+
+    private final Cells cells;
+
+    private StreamingSheetHandler(StylesTable stylesTable, ReadOnlySharedStringsTable strings, Cells cells) {
+        super(stylesTable, strings, cells, cells.formatter, false);
+        this.cells = cells;
+    }
+
+    static StreamingSheetHandler create(StylesTable stylesTable, ReadOnlySharedStringsTable strings,
+                                        StyleTable styles, boolean date1904, SheetLayout layout,
+                                        SheetContentHandler target) {
+        return new StreamingSheetHandler(stylesTable, strings, new Cells(styles, date1904, layout, target));
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        if ("c".equals(localName)) {
+            String ref = attributes.getValue("r");
+            String s = attributes.getValue("s");
+            cells.column = ref == null ? cells.column + 1 : SheetMetadataHandler.columnOf(ref);
+            cells.style = cells.styles.get(s == null ? 0 : Integer.parseInt(s));
+            cells.error = "e".equals(attributes.getValue("t"));
+            cells.formula = false;
+            cells.number = false;
+            cells.reported = false;
+        } else if ("f".equals(localName)) {
+            cells.formula = true;
+        } else if ("row".equals(localName)) {
+            cells.column = -1;
+        }
+        super.startElement(uri, localName, qName, attributes);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        super.endElement(uri, localName, qName);
+        if ("c".equals(localName) && !cells.reported)
+            cells.cell(null, null, null);
+    }
+
+    private static class Cells implements SheetContentsHandler {
+
+        private final StyleTable styles;
+        private final boolean date1904;
+        private final SheetLayout layout;
+        private final SheetContentHandler target;
+        private final DecimalFormat formulaFormat = new DecimalFormat(FormulaEngine.NUMBER_PATTERN);
+        private final DataFormatter formatter = new DataFormatter() {
+            @Override
+            public String formatRawCellContents(double value, int formatIndex, String formatString) {
+                number = true;
+                Cells.this.value = value;
+                if (formula)
+                    return formulaFormat.format(value);
+                return CellText.format(style.getFormat(), value, formatIndex, formatString, date1904);
+            }
+        };
+
+        private int rowNum;
+        private int column;
+        private RenderStyle style;
+        private boolean formula;
+        private boolean error;
+        private boolean number;
+        private double value;
+        private boolean reported;
+
+        private Cells(StyleTable styles, boolean date1904, SheetLayout layout, SheetContentHandler target) {
+            this.styles = styles;
+            this.date1904 = date1904;
+            this.layout = layout;
+            this.target = target;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            this.rowNum = rowNum;
+            target.startRow(rowNum);
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            target.endRow(rowNum);
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            if (reported)
+                return;
+            reported = true;
+            if (layout.isHidden(rowNum, column))
+                return;
+            if (error && formattedValue != null)
+                formattedValue = errorText(formattedValue);
+            if (number)
+                target.cell(column, CellText.normalize(formattedValue), value, style);
+            else
+                target.cell(column, CellText.normalize(formattedValue), style);
+        }
+
+        private static String errorText(String value) {
+            String error = value.startsWith("ERROR:") ? value.substring("ERROR:".length()) : value;
+            try {
+                return FormulaError.forString(error).getString();
+            } catch (IllegalArgumentException e) {
+                return error;
+            }
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package ru.malltshik.xls2pdf.stream;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.Record;
+
+/**
+ * Reads one substream of a BIFF8 workbook stream, the workbook globals or a sheet, and stops at its end.
+ * Records of substreams nested into it, e.g. embedded charts, are skipped.
+ */
+abstract class SubstreamListener extends AbortableHSSFListener {
+
+    private static final short CONTINUE = 0;
+    private static final short ABORT = 1;
+
+    private int skip;
+    private int depth;
+
+    /**
+     * @param skip number of top level substreams to pass over before the one to read
+     */
+    void skipSubstreams(int skip) {
+        this.skip = skip;
+    }
+
+    @Override
+    public short abortableProcessRecord(Record record) {
+        short sid = record.getSid();
+        if (sid == BOFRecord.sid)
+            depth++;
+        if (depth == 1 && skip == 0)
+            record(record);
+        if (sid == EOFRecord.sid && --depth == 0) {
+            if (skip > 0) {
+                skip--;
+                return CONTINUE;
+            }
+            endSubstream();
+            return ABORT;
+        }
+        return CONTINUE;
+    }
+
+    /**
+     * Receives every record of the substream, its BOF and EOF records included.
+     */
+    abstract void record(Record record);
+
+    void endSubstream() {
+    }
+}
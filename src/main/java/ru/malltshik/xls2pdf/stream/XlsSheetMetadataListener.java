@@ -0,0 +1,167 @@
+package ru.malltshik.xls2pdf.stream;
+
+import org.apache.poi.hssf.record.*;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.ss.util.CellRangeAddress;
+import ru.malltshik.xls2pdf.render.PageSetup;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static ru.malltshik.xls2pdf.utils.ExcelUtils.EXCEL_COLUMN_WIDTH_FACTOR;
+
+/**
+ * Lightweight pre-read of one sheet of a BIFF8 workbook, the counterpart of {@link SheetMetadataHandler}.
+ * Collects column bounds, styles in use, rows, merged regions, frozen panes and the print setup. Keeps nothing
+ * per cell.
+ */
+class XlsSheetMetadataListener extends SubstreamListener {
+
+    private final BitSet rows = new BitSet();
+    private int firstColumn = Integer.MAX_VALUE;
+    private int endColumn;
+    private final BitSet seenStyles = new BitSet();
+    private final List<Integer> usedStyles = new ArrayList<>();
+    private final List<CellRangeAddress> mergedRegions = new ArrayList<>();
+    private boolean freezePanes;
+    private int splitTopRow = -1;
+    /**
+     * Margins start from the defaults of {@code HSSFSheet}, the records of a sheet without them are missing.
+     */
+    private final PageSetup.Builder pageSetup = new PageSetup.Builder()
+            .leftMargin(0.75).rightMargin(0.75).topMargin(1).bottomMargin(1);
+
+    @Override
+    void record(Record record) {
+        if (record instanceof CellValueRecordInterface) {
+            CellValueRecordInterface cell = (CellValueRecordInterface) record;
+            cell(cell.getRow(), cell.getColumn(), cell.getXFIndex());
+            return;
+        }
+        switch (record.getSid()) {
+            case RowRecord.sid:
+                row((RowRecord) record);
+                break;
+            case MulRKRecord.sid:
+                MulRKRecord mulRK = (MulRKRecord) record;
+                for (int i = 0; i < mulRK.getNumColumns(); i++)
+                    cell(mulRK.getRow(), mulRK.getFirstColumn() + i, mulRK.getXFAt(i));
+                break;
+            case MulBlankRecord.sid:
+                MulBlankRecord mulBlank = (MulBlankRecord) record;
+                for (int i = 0; i < mulBlank.getNumColumns(); i++)
+                    cell(mulBlank.getRow(), mulBlank.getFirstColumn() + i, mulBlank.getXFAt(i));
+                break;
+            case MergeCellsRecord.sid:
+                MergeCellsRecord merges = (MergeCellsRecord) record;
+                for (int i = 0; i < merges.getNumAreas(); i++)
+                    mergedRegions.add(merges.getAreaAt(i));
+                break;
+            case WindowTwoRecord.sid:
+                freezePanes = ((WindowTwoRecord) record).getFreezePanes();
+                break;
+            case PaneRecord.sid:
+                pane((PaneRecord) record);
+                break;
+            case PrintSetupRecord.sid:
+                PrintSetupRecord print = (PrintSetupRecord) record;
+                // the record keeps the portrait flag, HSSFPrintSetup reports its inverse
+                pageSetup.paper(print.getPaperSize(), !print.getLandscape()).scale(print.getScale())
+                        .fitPages(print.getFitWidth(), print.getFitHeight());
+                break;
+            case WSBoolRecord.sid:
+                pageSetup.fitToPage(((WSBoolRecord) record).getFitToPage());
+                break;
+            case LeftMarginRecord.sid:
+                pageSetup.leftMargin(((Margin) record).getMargin());
+                break;
+            case RightMarginRecord.sid:
+                pageSetup.rightMargin(((Margin) record).getMargin());
+                break;
+            case TopMarginRecord.sid:
+                pageSetup.topMargin(((Margin) record).getMargin());
+                break;
+            case BottomMarginRecord.sid:
+                pageSetup.bottomMargin(((Margin) record).getMargin());
+                break;
+            case DefaultColWidthRecord.sid:
+                int width = ((DefaultColWidthRecord) record).getColWidth();
+                pageSetup.defaultColumnWidth(width * EXCEL_COLUMN_WIDTH_FACTOR);
+                break;
+            case ColumnInfoRecord.sid:
+                ColumnInfoRecord columns = (ColumnInfoRecord) record;
+                pageSetup.columnWidth(columns.getFirstColumn(), columns.getLastColumn(), columns.getColumnWidth());
+                break;
+            case HorizontalPageBreakRecord.sid:
+                for (int row : ((HorizontalPageBreakRecord) record).getBreaks())
+                    pageSetup.rowBreak(row);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * The usermodel takes the bounds of a row from its ROW record and widens them by the cells read.
+     */
+    private void row(RowRecord row) {
+        rows.set(row.getRowNumber());
+        if (!row.isEmpty()) {
+            firstColumn = Math.min(firstColumn, row.getFirstCol());
+            endColumn = Math.max(endColumn, row.getLastCol());
+        }
+    }
+
+    private void cell(int row, int column, int style) {
+        rows.set(row);
+        firstColumn = Math.min(firstColumn, column);
+        endColumn = Math.max(endColumn, column + 1);
+        if (!seenStyles.get(style)) {
+            seenStyles.set(style);
+            usedStyles.add(style);
+        }
+    }
+
+    /**
+     * Same rule as {@code HSSFSheet.getPaneInformation()} as used by the usermodel reader:
+     * a frozen pane whose active pane is on the left.
+     */
+    private void pane(PaneRecord pane) {
+        if (pane.getActivePane() > 1 && freezePanes)
+            splitTopRow = pane.getTopRow();
+        else
+            splitTopRow = -1;
+    }
+
+    int getFirstColumn() {
+        return rows.isEmpty() ? 0 : firstColumn;
+    }
+
+    int getEndColumn() {
+        return endColumn;
+    }
+
+    /**
+     * @return numbers of all rows of the sheet, empty rows with a ROW record included
+     */
+    BitSet getRows() {
+        return rows;
+    }
+
+    List<Integer> getUsedStyles() {
+        return usedStyles;
+    }
+
+    List<CellRangeAddress> getMergedRegions() {
+        return mergedRegions;
+    }
+
+    int getSplitTopRow() {
+        return splitTopRow;
+    }
+
+    PageSetup getPageSetup() {
+        return pageSetup.build();
+    }
+}
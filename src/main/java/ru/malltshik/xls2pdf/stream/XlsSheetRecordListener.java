@@ -0,0 +1,197 @@
+package ru.malltshik.xls2pdf.stream;
+
+import org.apache.poi.hssf.model.InternalWorkbook;
+import org.apache.poi.hssf.record.*;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.FormulaError;
+import ru.malltshik.xls2pdf.formula.FormulaEngine;
+import ru.malltshik.xls2pdf.render.CellText;
+import ru.malltshik.xls2pdf.render.SheetContentHandler;
+import ru.malltshik.xls2pdf.render.SheetLayout;
+import ru.malltshik.xls2pdf.style.RenderStyle;
+import ru.malltshik.xls2pdf.style.StyleTable;
+
+import java.text.DecimalFormat;
+import java.util.BitSet;
+
+/**
+ * Forwards the cell records of one sheet of a BIFF8 workbook to a {@link SheetContentHandler}.
+ * <p>
+ * Cell text follows {@code CellFormat.apply(Cell)} as used by the usermodel reader, formula results the
+ * {@link FormulaEngine} number pattern. Formulas are never evaluated: only the cached results are
+ * available in a stream. Rows without cells are reported from the row numbers of the metadata pre-read.
+ */
+class XlsSheetRecordListener extends SubstreamListener {
+
+    private final InternalWorkbook book;
+    private final StyleTable styles;
+    private final short[] formatIndexes;
+    private final String[] formatStrings;
+    private final SheetLayout layout;
+    private final BitSet rows;
+    private final SheetContentHandler target;
+    private final DecimalFormat formulaFormat = new DecimalFormat(FormulaEngine.NUMBER_PATTERN);
+
+    private int rowNum = -1;
+    private FormulaRecord pendingFormula;
+
+    /**
+     * @param formatIndexes data format index of every style
+     * @param formatStrings data format string of every style
+     */
+    XlsSheetRecordListener(InternalWorkbook book, StyleTable styles, short[] formatIndexes, String[] formatStrings,
+                           SheetLayout layout, BitSet rows, SheetContentHandler target) {
+        this.book = book;
+        this.styles = styles;
+        this.formatIndexes = formatIndexes;
+        this.formatStrings = formatStrings;
+        this.layout = layout;
+        this.rows = rows;
+        this.target = target;
+    }
+
+    @Override
+    void record(Record record) {
+        switch (record.getSid()) {
+            case NumberRecord.sid:
+                NumberRecord number = (NumberRecord) record;
+                number(number.getRow(), number.getColumn(), number.getXFIndex(), number.getValue());
+                break;
+            case RKRecord.sid:
+                RKRecord rk = (RKRecord) record;
+                number(rk.getRow(), rk.getColumn(), rk.getXFIndex(), rk.getRKNumber());
+                break;
+            case MulRKRecord.sid:
+                MulRKRecord mulRK = (MulRKRecord) record;
+                for (int i = 0; i < mulRK.getNumColumns(); i++)
+                    number(mulRK.getRow(), mulRK.getFirstColumn() + i, mulRK.getXFAt(i), mulRK.getRKNumberAt(i));
+                break;
+            case LabelSSTRecord.sid:
+                LabelSSTRecord label = (LabelSSTRecord) record;
+                text(label.getRow(), label.getColumn(), label.getXFIndex(),
+                        book.getSSTString(label.getSSTIndex()).getString());
+                break;
+            case LabelRecord.sid:
+                LabelRecord oldLabel = (LabelRecord) record;
+                text(oldLabel.getRow(), oldLabel.getColumn(), oldLabel.getXFIndex(), oldLabel.getValue());
+                break;
+            case BlankRecord.sid:
+                BlankRecord blank = (BlankRecord) record;
+                text(blank.getRow(), blank.getColumn(), blank.getXFIndex(), "");
+                break;
+            case MulBlankRecord.sid:
+                MulBlankRecord mulBlank = (MulBlankRecord) record;
+                for (int i = 0; i < mulBlank.getNumColumns(); i++)
+                    text(mulBlank.getRow(), mulBlank.getFirstColumn() + i, mulBlank.getXFAt(i), "");
+                break;
+            case BoolErrRecord.sid:
+                BoolErrRecord boolErr = (BoolErrRecord) record;
+                RenderStyle style = styles.get(boolErr.getXFIndex());
+                cell(boolErr.getRow(), boolErr.getColumn(), style, boolErr.isBoolean()
+                        ? CellText.apply(style.getFormat(), boolErr.getBooleanValue())
+                        : CellText.apply(style.getFormat(), "?"));
+                break;
+            case FormulaRecord.sid:
+                formula((FormulaRecord) record);
+                break;
+            case StringRecord.sid:
+                if (pendingFormula != null) {
+                    FormulaRecord formula = pendingFormula;
+                    pendingFormula = null;
+                    cell(formula.getRow(), formula.getColumn(), styles.get(formula.getXFIndex()),
+                            ((StringRecord) record).getString());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    void endSubstream() {
+        if (rowNum >= 0)
+            target.endRow(rowNum);
+        emptyRows(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reports the rows without cells between the current row and {@code end}.
+     */
+    private void emptyRows(int end) {
+        for (int row = rows.nextSetBit(rowNum + 1); row >= 0 && row < end; row = rows.nextSetBit(row + 1)) {
+            target.startRow(row);
+            target.endRow(row);
+        }
+    }
+
+    private void number(int row, int column, int xf, double value) {
+        RenderStyle style = styles.get(xf);
+        int index = style.getIndex();
+        cell(row, column, style, CellText.format(style.getFormat(), value,
+                formatIndexes[index], formatStrings[index], book.isUsing1904DateWindowing()), value);
+    }
+
+    private void text(int row, int column, int xf, String value) {
+        RenderStyle style = styles.get(xf);
+        cell(row, column, style, CellText.apply(style.getFormat(), value));
+    }
+
+    /**
+     * A string result is stored in the STRING record following the formula.
+     */
+    private void formula(FormulaRecord formula) {
+        if (formula.hasCachedResultString()) {
+            pendingFormula = formula;
+            return;
+        }
+        String text;
+        double value = Double.NaN;
+        switch (cachedResultType(formula)) {
+            case NUMERIC:
+                value = formula.getValue();
+                text = formulaFormat.format(value);
+                break;
+            case BOOLEAN:
+                text = String.valueOf(formula.getCachedBooleanValue()).toUpperCase();
+                break;
+            case ERROR:
+                text = FormulaError.forInt(formula.getCachedErrorValue()).getString();
+                break;
+            default:
+                text = "";
+        }
+        cell(formula.getRow(), formula.getColumn(), styles.get(formula.getXFIndex()), text, value);
+    }
+
+    /**
+     * @return type of the cached result, POI 3.17 maps the type code of the record only by a deprecated method
+     */
+    @SuppressWarnings("deprecation")
+    private static CellType cachedResultType(FormulaRecord formula) {
+        return CellType.forInt(formula.getCachedResultType());
+    }
+
+    private void cell(int row, int column, RenderStyle style, String text) {
+        cell(row, column, style, text, Double.NaN);
+    }
+
+    /**
+     * @param value value of a number, {@code NaN} for any other cell
+     */
+    private void cell(int row, int column, RenderStyle style, String text, double value) {
+        if (row != rowNum) {
+            if (rowNum >= 0)
+                target.endRow(rowNum);
+            emptyRows(row);
+            rowNum = row;
+            target.startRow(row);
+        }
+        if (layout.isHidden(row, column))
+            return;
+        if (Double.isNaN(value))
+            target.cell(column, CellText.normalize(text), style);
+        else
+            target.cell(column, CellText.normalize(text), value, style);
+    }
+}
@@ -0,0 +1,223 @@
+package ru.malltshik.xls2pdf.stream;
+
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.model.InternalWorkbook;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.FilePassRecord;
+import org.apache.poi.hssf.record.NameRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.DirectoryNode;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.formula.ptg.AreaPtgBase;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.TempFile;
+import ru.malltshik.xls2pdf.helpers.impl.HSSFHtmlHelper;
+import ru.malltshik.xls2pdf.model.MergedRegionIndex;
+import ru.malltshik.xls2pdf.render.SheetContentHandler;
+import ru.malltshik.xls2pdf.render.SheetLayout;
+import ru.malltshik.xls2pdf.render.WorkbookReader;
+import ru.malltshik.xls2pdf.style.RenderStyle;
+import ru.malltshik.xls2pdf.style.StyleTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Reads a BIFF8 {@code .xls} workbook record by record with the HSSF event API instead of the HSSF usermodel.
+ * <p>
+ * Only the workbook globals are kept in memory: shared strings, extended formats, fonts, formats and
+ * palette. They are loaded into a sheetless {@link HSSFWorkbook}, so styles are compiled by the same
+ * {@link HSSFHtmlHelper} as in the usermodel. A rendered sheet is read twice: a metadata pre-read of the
+ * whole substream, even for a range of the sheet, collects the column bounds, rows, used styles, merged
+ * regions, frozen panes and print setup, then the cell records are handed to the {@link SheetContentHandler} in the order they are stored.
+ * <p>
+ * Each sheet is read from the offset of its BOF record as given by the globals, so reading a sheet does
+ * not parse the sheets stored before it. Encrypted records can only be decrypted from the start of the
+ * stream, there the preceding substreams are skipped instead.
+ */
+public class XlsStreamingReader implements WorkbookReader {
+
+    private final NPOIFSFileSystem fs;
+    private final File spilled;
+    private final InternalWorkbook book;
+    private final StyleTable styles;
+    private final short[] formatIndexes;
+    private final String[] formatStrings;
+    private final List<String> sheetNames;
+    private final int[] sheetOffsets;
+    private final boolean encrypted;
+    private final Map<Integer, XlsSheetMetadataListener> metadata = new HashMap<>();
+
+    public XlsStreamingReader(File file) throws IOException {
+        this(file, false);
+    }
+
+    private XlsStreamingReader(File file, boolean spilled) throws IOException {
+        this.spilled = spilled ? file : null;
+        try {
+            this.fs = new NPOIFSFileSystem(file, true);
+        } catch (IOException | RuntimeException e) {
+            deleteSpilled();
+            throw e;
+        }
+        try {
+            List<Record> globals = new ArrayList<>();
+            List<Integer> offsets = new ArrayList<>();
+            boolean[] filePass = new boolean[1];
+            process(-1, new SubstreamListener() {
+                @Override
+                void record(Record record) {
+                    if (record instanceof BoundSheetRecord)
+                        offsets.add(((BoundSheetRecord) record).getPositionOfBof());
+                    else if (record instanceof FilePassRecord)
+                        filePass[0] = true;
+                    globals.add(record);
+                }
+            });
+            this.book = InternalWorkbook.createWorkbook(globals);
+            if (book.getNumSheets() == 0)
+                throw new IOException("Workbook has no sheets");
+            this.encrypted = filePass[0];
+            this.sheetOffsets = offsets.stream().mapToInt(Integer::intValue).toArray();
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < book.getNumSheets(); i++)
+                names.add(book.getSheetName(i));
+            this.sheetNames = Collections.unmodifiableList(names);
+
+            HSSFWorkbook wb = HSSFWorkbook.create(book);
+            this.styles = StyleTable.compile(wb, new HSSFHtmlHelper(wb));
+            this.formatIndexes = new short[styles.size()];
+            this.formatStrings = new String[styles.size()];
+            for (int i = 0; i < styles.size(); i++) {
+                HSSFCellStyle style = wb.getCellStyleAt(i);
+                formatIndexes[i] = style.getDataFormat();
+                formatStrings[i] = style.getDataFormatString();
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw new IOException("Unable to read workbook globals", e);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Copies the stream to a temporary file first, so the records are read from disk rather than from
+     * a copy of the whole file in memory. The file is deleted on {@link #close()}.
+     */
+    public static XlsStreamingReader open(InputStream in) throws IOException {
+        File file = TempFile.createTempFile("xls2pdf", ".xls");
+        try {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file.toPath());
+            throw e;
+        }
+        return new XlsStreamingReader(file, true);
+    }
+
+    @Override
+    public StyleTable getStyles() {
+        return styles;
+    }
+
+    @Override
+    public List<String> getSheetNames() {
+        return sheetNames;
+    }
+
+    /**
+     * Taken from the built-in name record of the globals, only an area given by its address is found.
+     */
+    @Override
+    public CellRangeAddress getPrintArea(int sheet) {
+        NameRecord name = book.getSpecificBuiltinRecord(NameRecord.BUILTIN_PRINT_AREA, sheet + 1);
+        if (name == null)
+            return null;
+        for (Ptg ptg : name.getNameDefinition()) {
+            if (ptg instanceof AreaPtgBase) {
+                AreaPtgBase area = (AreaPtgBase) ptg;
+                return new CellRangeAddress(area.getFirstRow(), area.getLastRow(), area.getFirstColumn(),
+                        area.getLastColumn());
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Collection<RenderStyle> usedStyles(Collection<Integer> sheets) throws IOException {
+        Set<Integer> seen = new HashSet<>();
+        List<RenderStyle> used = new ArrayList<>();
+        for (Integer sheet : sheets)
+            for (Integer index : metadata(sheet).getUsedStyles())
+                if (seen.add(index))
+                    used.add(styles.get(index));
+        return used;
+    }
+
+    @Override
+    public void read(int sheet, SheetContentHandler handler) throws IOException {
+        XlsSheetMetadataListener metadata = metadata(sheet);
+        SheetLayout layout = new SheetLayout(sheetNames.get(sheet), metadata.getFirstColumn(),
+                metadata.getEndColumn(), MergedRegionIndex.of(metadata.getMergedRegions()),
+                metadata.getSplitTopRow(), metadata.getPageSetup());
+        handler.startSheet(layout);
+        process(sheet, new XlsSheetRecordListener(book, styles, formatIndexes, formatStrings, layout,
+                metadata.getRows(), handler));
+        handler.endSheet();
+    }
+
+    private XlsSheetMetadataListener metadata(int sheet) throws IOException {
+        XlsSheetMetadataListener listener = metadata.get(sheet);
+        if (listener == null) {
+            listener = new XlsSheetMetadataListener();
+            process(sheet, listener);
+            metadata.put(sheet, listener);
+        }
+        return listener;
+    }
+
+    /**
+     * @param sheet index of the sheet to read, {@code -1} for the workbook globals
+     */
+    private void process(int sheet, SubstreamListener listener) throws IOException {
+        if (sheet >= 0 && sheet >= sheetNames.size())
+            throw new IllegalArgumentException("No sheet " + sheet + " in workbook of " + sheetNames.size());
+        HSSFRequest request = new HSSFRequest();
+        request.addListenerForAllRecords(listener);
+        DirectoryNode root = fs.getRoot();
+        try (InputStream in = root.createDocumentInputStream(HSSFWorkbook.getWorkbookDirEntryName(root))) {
+            if (sheet >= 0 && encrypted)
+                listener.skipSubstreams(sheet + 1);
+            else if (sheet >= 0 && in.skip(sheetOffsets[sheet]) != sheetOffsets[sheet])
+                throw new IOException("Sheet " + sheetNames.get(sheet) + " is past the end of the workbook");
+            new HSSFEventFactory().abortableProcessEvents(request, in);
+        } catch (HSSFUserException e) {
+            throw new IOException("Unable to read workbook records", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            fs.close();
+        } finally {
+            deleteSpilled();
+        }
+    }
+
+    private void deleteSpilled() throws IOException {
+        if (spilled != null)
+            Files.deleteIfExists(spilled.toPath());
+    }
+}
@@ -0,0 +1,232 @@
+package ru.malltshik.xls2pdf.stream;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import ru.malltshik.xls2pdf.helpers.impl.XSSFHtmlHelper;
+import ru.malltshik.xls2pdf.model.MergedRegionIndex;
+import ru.malltshik.xls2pdf.render.SheetContentHandler;
+import ru.malltshik.xls2pdf.render.SheetLayout;
+import ru.malltshik.xls2pdf.render.SheetWindow;
+import ru.malltshik.xls2pdf.render.WorkbookReader;
+import ru.malltshik.xls2pdf.style.RenderStyle;
+import ru.malltshik.xls2pdf.style.StyleTable;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Reads an XLSX package with the SAX based POI event model instead of the XSSF usermodel.
+ * <p>
+ * Only the shared strings and the styles are kept in memory. A rendered sheet is parsed twice:
+ * a metadata pre-read collects the column bounds, used styles, merged regions, frozen panes and print
+ * setup, then the rows are parsed and handed to the {@link SheetContentHandler} one at a time, so memory
+ * is bounded by the width of a row rather than by the size of the sheet. The pre-read parses the whole
+ * sheet even for a range of it, the merged regions and the print setup are stored after the rows.
+ */
+public class XlsxStreamingReader implements WorkbookReader {
+
+    private static final String PRINT_AREA = "_xlnm.Print_Area";
+
+    private final OPCPackage pkg;
+    private final File spilled;
+    private final StylesTable stylesTable;
+    private final ReadOnlySharedStringsTable strings;
+    private final StyleTable styles;
+    private final boolean date1904;
+    private final List<PackagePart> sheets = new ArrayList<>();
+    private final List<String> sheetNames = new ArrayList<>();
+    private final Map<Integer, SheetMetadataHandler> metadata = new HashMap<>();
+    private final Map<Integer, CellRangeAddress> printAreas = new HashMap<>();
+
+    public XlsxStreamingReader(File file) throws IOException {
+        this(file, false);
+    }
+
+    private XlsxStreamingReader(File file, boolean spilled) throws IOException {
+        this.spilled = spilled ? file : null;
+        try {
+            this.pkg = OPCPackage.open(file, PackageAccess.READ);
+        } catch (OpenXML4JException | RuntimeException e) {
+            deleteSpilled();
+            throw new IOException("Unable to open workbook package", e);
+        }
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            StylesTable stylesTable = reader.getStylesTable();
+            this.stylesTable = stylesTable == null ? new StylesTable() : stylesTable;
+            this.strings = new ReadOnlySharedStringsTable(pkg);
+            this.styles = StyleTable.compile(this.stylesTable, new XSSFHtmlHelper());
+            this.date1904 = readWorkbook(reader);
+
+            XSSFReader.SheetIterator parts = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (parts.hasNext()) {
+                parts.next().close();
+                sheets.add(parts.getSheetPart());
+                sheetNames.add(parts.getSheetName());
+            }
+            if (sheets.isEmpty())
+                throw new IOException("Workbook has no sheets");
+        } catch (OpenXML4JException | SAXException | RuntimeException e) {
+            close();
+            throw new IOException("Unable to read workbook package", e);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Copies the stream to a temporary file first: a zip package can only be read lazily from a file.
+     * The file is deleted on {@link #close()}.
+     */
+    public static XlsxStreamingReader open(InputStream in) throws IOException {
+        File file = TempFile.createTempFile("xls2pdf", ".xlsx");
+        try {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file.toPath());
+            throw e;
+        }
+        return new XlsxStreamingReader(file, true);
+    }
+
+    @Override
+    public StyleTable getStyles() {
+        return styles;
+    }
+
+    @Override
+    public List<String> getSheetNames() {
+        return Collections.unmodifiableList(sheetNames);
+    }
+
+    @Override
+    public CellRangeAddress getPrintArea(int sheet) {
+        return printAreas.get(sheet);
+    }
+
+    @Override
+    public Collection<RenderStyle> usedStyles(Collection<Integer> sheets) throws IOException {
+        Map<Short, RenderStyle> used = new LinkedHashMap<>();
+        for (int sheet : sheets) {
+            for (Integer index : metadata(sheet).getUsedStyles()) {
+                RenderStyle style = styles.get(index);
+                used.putIfAbsent(style.getIndex(), style);
+            }
+        }
+        return used.values();
+    }
+
+    @Override
+    public void read(int sheet, SheetContentHandler handler) throws IOException {
+        SheetMetadataHandler metadata = metadata(sheet);
+        SheetLayout layout = new SheetLayout(sheetNames.get(sheet), metadata.getFirstColumn(),
+                metadata.getEndColumn(), MergedRegionIndex.of(metadata.getMergedRegions()),
+                metadata.getSplitTopRow(), metadata.getPageSetup());
+        handler.startSheet(layout);
+        parse(sheets.get(sheet), StreamingSheetHandler.create(stylesTable, strings, styles, date1904, layout,
+                handler));
+        handler.endSheet();
+    }
+
+    private SheetMetadataHandler metadata(int sheet) throws IOException {
+        SheetMetadataHandler handler = metadata.get(sheet);
+        if (handler == null) {
+            handler = new SheetMetadataHandler();
+            parse(sheets.get(sheet), handler);
+            metadata.put(sheet, handler);
+        }
+        return handler;
+    }
+
+    /**
+     * Reads the date system and the print areas of the sheets from the workbook part.
+     *
+     * @return {@code true} for the 1904 date system
+     */
+    private boolean readWorkbook(XSSFReader reader) throws IOException, OpenXML4JException {
+        boolean[] date1904 = new boolean[1];
+        try (InputStream in = reader.getWorkbookData()) {
+            parse(in, new DefaultHandler() {
+                private StringBuilder printArea;
+                private int printAreaSheet;
+
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    if ("workbookPr".equals(localName)) {
+                        String value = attributes.getValue("date1904");
+                        date1904[0] = "1".equals(value) || "true".equals(value);
+                    } else if ("definedName".equals(localName) && PRINT_AREA.equals(attributes.getValue("name"))
+                            && attributes.getValue("localSheetId") != null) {
+                        printArea = new StringBuilder();
+                        printAreaSheet = Integer.parseInt(attributes.getValue("localSheetId"));
+                    }
+                }
+
+                @Override
+                public void characters(char[] ch, int start, int length) {
+                    if (printArea != null)
+                        printArea.append(ch, start, length);
+                }
+
+                @Override
+                public void endElement(String uri, String localName, String qName) {
+                    if ("definedName".equals(localName) && printArea != null) {
+                        printAreas.put(printAreaSheet, SheetWindow.firstArea(printArea.toString()));
+                        printArea = null;
+                    }
+                }
+            });
+        }
+        return date1904[0];
+    }
+
+    private static void parse(PackagePart part, ContentHandler handler) throws IOException {
+        try (InputStream in = part.getInputStream()) {
+            parse(in, handler);
+        }
+    }
+
+    private static void parse(InputStream in, ContentHandler handler) throws IOException {
+        try {
+            XMLReader parser = SAXHelper.newXMLReader();
+            parser.setContentHandler(handler);
+            parser.parse(new InputSource(in));
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("Unable to parse workbook part", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            pkg.revert();
+        } finally {
+            deleteSpilled();
+        }
+    }
+
+    private void deleteSpilled() throws IOException {
+        if (spilled != null)
+            Files.deleteIfExists(spilled.toPath());
+    }
+}
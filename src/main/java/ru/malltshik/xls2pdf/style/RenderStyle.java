@@ -0,0 +1,152 @@
+package ru.malltshik.xls2pdf.style;
+
+import org.apache.poi.ss.format.CellFormat;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+
+/**
+ * Everything the renderers need to know about one {@link org.apache.poi.ss.usermodel.CellStyle},
+ * resolved once per workbook. Holds no reference to the POI object graph.
+ */
+public final class RenderStyle {
+
+    public static final int TOP = 0;
+    public static final int RIGHT = 1;
+    public static final int BOTTOM = 2;
+    public static final int LEFT = 3;
+
+    private final short index;
+    private final String className;
+    private final String inlineAttributes;
+    private final String css;
+    private final CellFormat format;
+    private final HorizontalAlignment alignment;
+    private final VerticalAlignment verticalAlignment;
+    private final short rotation;
+    private final boolean wrapText;
+    private final boolean bold;
+    private final boolean italic;
+    private final short fontSize;
+    private final String fontName;
+    private final String fontColor;
+    private final String fillColor;
+    private final BorderStyle[] borders;
+    private final String[] borderColors;
+
+    RenderStyle(short index, String className, String inlineAttributes, String css, CellFormat format,
+                HorizontalAlignment alignment, VerticalAlignment verticalAlignment,
+                short rotation, boolean wrapText, boolean bold, boolean italic, short fontSize, String fontName,
+                String fontColor, String fillColor, BorderStyle[] borders, String[] borderColors) {
+        this.index = index;
+        this.className = className;
+        this.inlineAttributes = inlineAttributes;
+        this.css = css;
+        this.format = format;
+        this.alignment = alignment;
+        this.verticalAlignment = verticalAlignment;
+        this.rotation = rotation;
+        this.wrapText = wrapText;
+        this.bold = bold;
+        this.italic = italic;
+        this.fontSize = fontSize;
+        this.fontName = fontName;
+        this.fontColor = fontColor;
+        this.fillColor = fillColor;
+        this.borders = borders;
+        this.borderColors = borderColors;
+    }
+
+    public short getIndex() {
+        return index;
+    }
+
+    /**
+     * @return css class of the cells, e.g. {@code style_07}
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return attributes written into every {@code <td>} of the style
+     */
+    public String getInlineAttributes() {
+        return inlineAttributes;
+    }
+
+    /**
+     * @return body of the css rule of the style, one declaration per line
+     */
+    public String getCss() {
+        return css;
+    }
+
+    public CellFormat getFormat() {
+        return format;
+    }
+
+    public HorizontalAlignment getAlignment() {
+        return alignment;
+    }
+
+    public VerticalAlignment getVerticalAlignment() {
+        return verticalAlignment;
+    }
+
+    public short getRotation() {
+        return rotation;
+    }
+
+    public boolean isWrapText() {
+        return wrapText;
+    }
+
+    public boolean isBold() {
+        return bold;
+    }
+
+    public boolean isItalic() {
+        return italic;
+    }
+
+    /**
+     * @return font height in points
+     */
+    public short getFontSize() {
+        return fontSize;
+    }
+
+    public String getFontName() {
+        return fontName;
+    }
+
+    /**
+     * @return font color as {@code #rrggbb} or {@code null} for automatic
+     */
+    public String getFontColor() {
+        return fontColor;
+    }
+
+    /**
+     * @return fill foreground color as {@code #rrggbb} or {@code null} when the cell is not filled
+     */
+    public String getFillColor() {
+        return fillColor;
+    }
+
+    /**
+     * @param side one of {@link #TOP}, {@link #RIGHT}, {@link #BOTTOM} or {@link #LEFT}
+     */
+    public BorderStyle getBorder(int side) {
+        return borders[side];
+    }
+
+    /**
+     * @param side one of {@link #TOP}, {@link #RIGHT}, {@link #BOTTOM} or {@link #LEFT}
+     * @return border color as {@code #rrggbb}, {@link ru.malltshik.xls2pdf.helpers.HtmlHelper#AUTO_COLOR} for automatic
+     */
+    public String getBorderColor(int side) {
+        return borderColors[side];
+    }
+}
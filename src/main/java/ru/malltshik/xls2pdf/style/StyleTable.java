@@ -0,0 +1,158 @@
+package ru.malltshik.xls2pdf.style;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.poi.ss.format.CellFormat;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import ru.malltshik.xls2pdf.helpers.HtmlHelper;
+import ru.malltshik.xls2pdf.utils.ExcelUtils;
+
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import static com.itextpdf.text.Element.*;
+import static org.apache.poi.hssf.record.ExtendedFormatRecord.*;
+
+/**
+ * Compiled styles of a workbook indexed by {@link CellStyle#getIndex()}.
+ * <p>
+ * Every style is resolved once into a {@link RenderStyle}, so rendering a cell costs an array lookup.
+ * The table is immutable after compilation and may be shared between renderers and threads.
+ * <p>
+ * Styles that differ only in what is not rendered, e.g. their protection, share the css class
+ * of the first of them, so each distinct look is written as one css rule.
+ */
+public final class StyleTable {
+
+    private static final Map<HorizontalAlignment, String> ALIGN = ExcelUtils.mapFor(ALIGN_LEFT, "left",
+            ALIGN_CENTER, "center", ALIGN_RIGHT, "right",
+            ALIGN_JUSTIFIED, "left", ALIGN_CENTER, "center");
+
+    private static final Map<VerticalAlignment, String> VERTICAL_ALIGN = ExcelUtils.mapFor(
+            VERTICAL_BOTTOM, "bottom", VERTICAL_CENTER, "middle", VERTICAL_TOP, "top");
+
+    private final RenderStyle[] styles;
+
+    private StyleTable(RenderStyle[] styles) {
+        this.styles = styles;
+    }
+
+    public static StyleTable compile(Workbook wb, HtmlHelper helper) {
+        return compile(wb.getNumCellStyles(), wb::getCellStyleAt,
+                style -> wb.getFontAt(style.getFontIndex()), helper);
+    }
+
+    /**
+     * Compiles the styles part of an XLSX package read without the usermodel.
+     */
+    public static StyleTable compile(StylesTable stylesTable, HtmlHelper helper) {
+        return compile(stylesTable.getNumCellStyles(), stylesTable::getStyleAt,
+                style -> ((XSSFCellStyle) style).getFont(), helper);
+    }
+
+    private static StyleTable compile(int count, IntFunction<? extends CellStyle> styleAt,
+                                      Function<CellStyle, Font> fontOf, HtmlHelper helper) {
+        RenderStyle[] styles = new RenderStyle[count];
+        Map<String, String> classNames = new HashMap<>();
+        for (int i = 0; i < styles.length; i++) {
+            CellStyle style = styleAt.apply(i);
+            styles[i] = compile(style, fontOf.apply(style), helper, classNames);
+        }
+        return new StyleTable(styles);
+    }
+
+    /**
+     * @return compiled style or the default style when the index is unknown
+     */
+    public RenderStyle get(int index) {
+        index &= 0xFFFF;
+        return index < styles.length ? styles[index] : styles[0];
+    }
+
+    /**
+     * @return compiled style, the default style for {@code null}
+     */
+    public RenderStyle get(CellStyle style) {
+        return style == null ? styles[0] : get(style.getIndex());
+    }
+
+    public RenderStyle getDefault() {
+        return styles[0];
+    }
+
+    public int size() {
+        return styles.length;
+    }
+
+    /**
+     * @param classNames css class by css rule body of the styles compiled so far
+     */
+    private static RenderStyle compile(CellStyle style, Font font, HtmlHelper helper,
+                                       Map<String, String> classNames) {
+        StringBuilder css = new StringBuilder();
+        try (Formatter out = new Formatter(css)) {
+            styleOut(out, "text-align", style.getAlignmentEnum(), ALIGN);
+            styleOut(out, "vertical-align", style.getVerticalAlignmentEnum(), VERTICAL_ALIGN);
+            fontStyle(out, font);
+            helper.borderStyles(style, out);
+            helper.colorStyles(style, out);
+        }
+        String dataFormat = style.getDataFormatString();
+        BorderStyle[] borders = {style.getBorderTopEnum(), style.getBorderRightEnum(),
+                style.getBorderBottomEnum(), style.getBorderLeftEnum()};
+        String rule = css.toString();
+        String className = classNames.computeIfAbsent(rule, r -> String.format("style_%02d", style.getIndex()));
+        return new RenderStyle(style.getIndex(), className, tagStyle(style), rule,
+                CellFormat.getInstance(dataFormat == null ? "General" : dataFormat),
+                style.getAlignmentEnum(), style.getVerticalAlignmentEnum(),
+                style.getRotation(), style.getWrapText(), font.getBold(), font.getItalic(), font.getFontHeightInPoints(),
+                font.getFontName(), helper.fontColor(style),
+                style.getFillPatternEnum() == FillPatternType.NO_FILL ? null : helper.fillColor(style),
+                borders, helper.borderColors(style));
+    }
+
+    private static void fontStyle(Formatter out, Font font) {
+        if (font.getBold())
+            out.format("  font-weight: bold;%n");
+        if (font.getItalic())
+            out.format("  font-style: italic;%n");
+
+        int fontheight = font.getFontHeightInPoints();
+        if (fontheight == 9) {
+            fontheight = 10;
+        }
+        out.format("  font-size: %dpt;%n", fontheight);
+
+        if (!StringUtils.isEmpty(font.getFontName())) {
+            out.format("  font-family: %s;%n", font.getFontName());
+        }
+    }
+
+    private static <K> void styleOut(Formatter out, String attr, K key, Map<K, String> mapping) {
+        String value = mapping.get(key);
+        if (value != null) {
+            out.format("  %s: %s;%n", attr, value);
+        }
+    }
+
+    private static String tagStyle(CellStyle style) {
+        switch (style.getAlignmentEnum()) {
+            case RIGHT:
+                return "style=\"text-align: right;\"";
+            case CENTER:
+            case CENTER_SELECTION:
+                return "style=\"text-align: center;\"";
+            case GENERAL:
+            case LEFT:
+            case JUSTIFY:
+            case FILL:
+            case DISTRIBUTED:
+            default:
+                return "style=\"text-align: left;\"";
+        }
+    }
+}
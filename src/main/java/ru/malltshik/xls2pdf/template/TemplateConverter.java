@@ -0,0 +1,102 @@
+package ru.malltshik.xls2pdf.template;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.jxls.area.Area;
+import org.jxls.builder.xls.XlsCommentAreaBuilder;
+import org.jxls.common.CellRef;
+import org.jxls.common.Context;
+import org.jxls.formula.StandardFormulaProcessor;
+import org.jxls.transform.poi.PoiTransformer;
+import ru.malltshik.xls2pdf.converter.ConversionEngine;
+import ru.malltshik.xls2pdf.converter.ConversionOptions;
+import ru.malltshik.xls2pdf.converter.OutputFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * Fills a jxls template and converts the filled workbook while it is still in memory, instead of writing
+ * it to an XLSX file and reading that back. Thread safe, share one per engine.
+ * <pre>
+ * Context context = new Context();
+ * context.putVar("employees", employees);
+ * new TemplateConverter(engine).convert(template, context, target, OutputFormat.PDF);
+ * </pre>
+ * The template is filled from the areas in the cell comments, like
+ * {@code JxlsHelper.processTemplate(context, transformer)} fills it, and the template sheets are kept. Unlike
+ * there, formulas are rewritten once after every area is applied, so a formula can refer to cells of any
+ * area, and by the {@link StandardFormulaProcessor} instead of the default {@code FastFormulaProcessor}.
+ */
+public final class TemplateConverter {
+
+    private final ConversionEngine engine;
+
+    public TemplateConverter() {
+        this(new ConversionEngine());
+    }
+
+    public TemplateConverter(ConversionEngine engine) {
+        this.engine = Objects.requireNonNull(engine, "Conversion engine must be non null");
+    }
+
+    /**
+     * Converts with the options of the engine.
+     *
+     * @see #convert(InputStream, Context, OutputStream, OutputFormat, ConversionOptions)
+     */
+    public void convert(InputStream template, Context context, OutputStream target, OutputFormat format)
+            throws IOException {
+        convert(template, context, target, format, engine.getOptions());
+    }
+
+    /**
+     * Fills the template and writes the workbook to the target, which is closed when done. The template
+     * stream is left open. The filled workbook has no cached formula results, so a formula policy that
+     * only renders cached results leaves formula cells blank.
+     *
+     * @throws IllegalArgumentException when the template can not be read as a workbook or a chosen sheet is
+     *                                  missing
+     * @throws IOException              when reading or writing fails
+     */
+    public void convert(InputStream template, Context context, OutputStream target, OutputFormat format,
+                        ConversionOptions options) throws IOException {
+        Objects.requireNonNull(target, "Output target must be non null");
+        try (Workbook workbook = fill(template, context)) {
+            engine.convert(workbook, target, format, options);
+        }
+    }
+
+    /**
+     * @return the filled workbook, for the caller to close
+     * @throws IllegalArgumentException when the template can not be read as a workbook
+     */
+    public static Workbook fill(InputStream template, Context context) throws IOException {
+        Objects.requireNonNull(template, "Template must be non null");
+        Objects.requireNonNull(context, "Context must be non null");
+        Workbook workbook;
+        try {
+            workbook = WorkbookFactory.create(template);
+        } catch (InvalidFormatException e) {
+            throw new IllegalArgumentException("Unable to read template", e);
+        }
+        try {
+            PoiTransformer transformer = PoiTransformer.createTransformer(workbook);
+            for (Area area : new XlsCommentAreaBuilder(transformer).build())
+                area.applyAt(new CellRef(area.getStartCellRef().getCellName()), context);
+            // the processor rewrites the formulas of all areas of the transformer at once
+            new StandardFormulaProcessor().processAreaFormulas(transformer);
+            return workbook;
+        } catch (RuntimeException e) {
+            try {
+                workbook.close();
+            } catch (IOException closing) {
+                e.addSuppressed(closing);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package ru.malltshik.xls2pdf.utils;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Writes large XLSX workbooks row by row in constant memory, e.g. reports to convert afterwards. Only the
+ * last {@code window} rows of a sheet are kept in memory, older ones are flushed to a temporary file and can
+ * no longer be changed. Strings are written inline instead of into the shared strings table.
+ * <pre>
+ * try (BulkWorkbookWriter writer = new BulkWorkbookWriter()) {
+ *     writer.sheet("Payments").row().style(header).add("Name").add("Amount").add("Date");
+ *     for (Payment payment : payments)
+ *         writer.appendRow(payment.getName(), payment.getAmount(), payment.getDate());
+ *     writer.write(out);
+ * }
+ * </pre>
+ * Every value type has a style of its own, derived from the base style with the format of the type, and
+ * styles set on single cells are interned by a {@link StyleCache}: the styles table holds one entry per
+ * distinct look, however many rows are written. Not thread safe.
+ */
+public final class BulkWorkbookWriter implements Closeable {
+
+    public static final int DEFAULT_WINDOW = 100;
+    public static final String DOUBLE_FORMAT = "#,##0.00";
+    public static final String LONG_FORMAT = "#,##0";
+    public static final String DATE_FORMAT = "mm/dd/yyyy";
+
+    private final SXSSFWorkbook workbook;
+    private final StyleCache styles;
+    private final CellStyle doubleStyle;
+    private final CellStyle longStyle;
+    private final CellStyle integerStyle;
+    private final CellStyle stringStyle;
+    private final CellStyle dateStyle;
+    private final RowAppender appender = new RowAppender();
+    private Sheet sheet;
+    private int nextRow;
+    private long rows;
+
+    public BulkWorkbookWriter() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param window number of the last rows of a sheet kept in memory
+     */
+    public BulkWorkbookWriter(int window) {
+        this(window, CellStyleSpec.defaults());
+    }
+
+    /**
+     * @param base style the styles of the value types are derived from
+     */
+    public BulkWorkbookWriter(int window, CellStyleSpec base) {
+        if (window < 1)
+            throw new IllegalArgumentException("Row window must be positive: " + window);
+        Objects.requireNonNull(base, "Base style must be non null");
+        this.workbook = new SXSSFWorkbook(null, window, false, false);
+        this.styles = new StyleCache(workbook);
+        this.doubleStyle = styles.style(base.withDataFormat(DOUBLE_FORMAT));
+        this.longStyle = styles.style(base.withDataFormat(LONG_FORMAT));
+        this.integerStyle = styles.style(base);
+        this.stringStyle = integerStyle;
+        this.dateStyle = styles.style(base.withDataFormat(DATE_FORMAT));
+    }
+
+    /**
+     * Starts a new sheet, the following rows are appended to it.
+     */
+    public BulkWorkbookWriter sheet(String name) {
+        Objects.requireNonNull(name, "Sheet name must be non null");
+        sheet = workbook.createSheet(name);
+        nextRow = 0;
+        return this;
+    }
+
+    /**
+     * @param width width of the column of the current sheet in 1/256 of a character
+     */
+    public BulkWorkbookWriter columnWidth(int column, int width) {
+        currentSheet().setColumnWidth(column, width);
+        return this;
+    }
+
+    /**
+     * Appends a row to the current sheet, a sheet named by Excel is started when there is none.
+     *
+     * @return the appender of the row, valid until the next row is appended
+     */
+    public RowAppender row() {
+        appender.start(currentSheet().createRow(nextRow++));
+        rows++;
+        return appender;
+    }
+
+    /**
+     * Appends a row of the values, each one written as by {@link RowAppender#add(Object)}.
+     */
+    public BulkWorkbookWriter appendRow(Object... values) {
+        RowAppender row = row();
+        for (Object value : values)
+            row.add(value);
+        return this;
+    }
+
+    /**
+     * @return the cache of the workbook, for styles to set with {@link RowAppender#style(CellStyle)}
+     */
+    public StyleCache getStyles() {
+        return styles;
+    }
+
+    /**
+     * @return number of rows appended to all sheets
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Writes the workbook to the output, which is left open. Nothing can be appended afterwards.
+     */
+    public void write(OutputStream out) throws IOException {
+        Objects.requireNonNull(out, "Output target must be non null");
+        workbook.write(out);
+    }
+
+    /**
+     * Deletes the temporary files of the flushed rows.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            workbook.dispose();
+        } finally {
+            workbook.close();
+        }
+    }
+
+    private Sheet currentSheet() {
+        if (sheet == null) {
+            sheet = workbook.createSheet();
+            nextRow = 0;
+        }
+        return sheet;
+    }
+
+    /**
+     * Appends typed cells to one row from left to right. A {@code null} value leaves its cell blank.
+     */
+    public final class RowAppender {
+
+        private Row row;
+        private int nextColumn;
+        private CellStyle nextStyle;
+
+        private RowAppender() {
+        }
+
+        private void start(Row row) {
+            this.row = row;
+            this.nextColumn = 0;
+            this.nextStyle = null;
+        }
+
+        /**
+         * Sets the style of the next cell only, instead of the style of its value type.
+         */
+        public RowAppender style(CellStyleSpec spec) {
+            return style(styles.style(spec));
+        }
+
+        /**
+         * @param style style of the workbook, e.g. from {@link BulkWorkbookWriter#getStyles()}
+         */
+        public RowAppender style(CellStyle style) {
+            this.nextStyle = style;
+            return this;
+        }
+
+        public RowAppender add(Double value) {
+            if (value != null)
+                cell(doubleStyle).setCellValue(value);
+            return skip();
+        }
+
+        /**
+         * Excel keeps numbers as doubles, values beyond 2<sup>53</sup> lose their last digits.
+         */
+        public RowAppender add(Long value) {
+            if (value != null)
+                cell(longStyle).setCellValue(value);
+            return skip();
+        }
+
+        public RowAppender add(Integer value) {
+            if (value != null)
+                cell(integerStyle).setCellValue(value);
+            return skip();
+        }
+
+        public RowAppender add(String value) {
+            if (value != null)
+                cell(stringStyle).setCellValue(value);
+            return skip();
+        }
+
+        public RowAppender add(Date value) {
+            if (value != null)
+                cell(dateStyle).setCellValue(value);
+            return skip();
+        }
+
+        /**
+         * Writes a {@link Double}, {@link Long}, {@link Integer}, {@link String} or {@link Date} as by its own
+         * method, other numbers as integers or doubles and anything else as its {@code toString()}.
+         */
+        public RowAppender add(Object value) {
+            if (value == null || value instanceof String)
+                return add((String) value);
+            if (value instanceof Double)
+                return add((Double) value);
+            if (value instanceof Long)
+                return add((Long) value);
+            if (value instanceof Integer)
+                return add((Integer) value);
+            if (value instanceof Date)
+                return add((Date) value);
+            if (value instanceof Short || value instanceof Byte)
+                return add(((Number) value).intValue());
+            if (value instanceof Number)
+                return add(((Number) value).doubleValue());
+            return add(value.toString());
+        }
+
+        /**
+         * Leaves the next cell blank.
+         */
+        public RowAppender skip() {
+            nextColumn++;
+            nextStyle = null;
+            return this;
+        }
+
+        private Cell cell(CellStyle typeStyle) {
+            Cell cell = row.createCell(nextColumn);
+            CellStyle style = nextStyle == null ? typeStyle : nextStyle;
+            if (style.getIndex() != 0)
+                cell.setCellStyle(style);
+            return cell;
+        }
+    }
+}
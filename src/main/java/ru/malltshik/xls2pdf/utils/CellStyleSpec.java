@@ -0,0 +1,177 @@
+package ru.malltshik.xls2pdf.utils;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+
+import java.util.Objects;
+
+/**
+ * Immutable attributes of a cell style, the key a {@link StyleCache} interns styles by. Start from
+ * {@link #defaults()} and derive with the {@code with*} methods; equal attributes give equal specs.
+ */
+public final class CellStyleSpec {
+
+    public static final String GENERAL_FORMAT = "General";
+
+    private static final CellStyleSpec DEFAULTS = new CellStyleSpec(null, (short) 0, false, false,
+            GENERAL_FORMAT, HorizontalAlignment.GENERAL, VerticalAlignment.BOTTOM, false, BorderStyle.NONE);
+
+    private final String fontName;
+    private final short fontSize;
+    private final boolean bold;
+    private final boolean italic;
+    private final String dataFormat;
+    private final HorizontalAlignment alignment;
+    private final VerticalAlignment verticalAlignment;
+    private final boolean wrapText;
+    private final BorderStyle border;
+
+    private CellStyleSpec(String fontName, short fontSize, boolean bold, boolean italic, String dataFormat,
+                          HorizontalAlignment alignment, VerticalAlignment verticalAlignment, boolean wrapText,
+                          BorderStyle border) {
+        this.fontName = fontName;
+        this.fontSize = fontSize;
+        this.bold = bold;
+        this.italic = italic;
+        this.dataFormat = dataFormat;
+        this.alignment = alignment;
+        this.verticalAlignment = verticalAlignment;
+        this.wrapText = wrapText;
+        this.border = border;
+    }
+
+    /**
+     * @return the default font of the workbook, the General format, bottom aligned, no wrap and no borders
+     */
+    public static CellStyleSpec defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * @return font name, {@code null} for the default font of the workbook
+     */
+    public String getFontName() {
+        return fontName;
+    }
+
+    /**
+     * @return font height in points, {@code 0} for the height of the default font
+     */
+    public short getFontSize() {
+        return fontSize;
+    }
+
+    public boolean isBold() {
+        return bold;
+    }
+
+    public boolean isItalic() {
+        return italic;
+    }
+
+    public String getDataFormat() {
+        return dataFormat;
+    }
+
+    public HorizontalAlignment getAlignment() {
+        return alignment;
+    }
+
+    public VerticalAlignment getVerticalAlignment() {
+        return verticalAlignment;
+    }
+
+    public boolean isWrapText() {
+        return wrapText;
+    }
+
+    /**
+     * @return border of all four sides
+     */
+    public BorderStyle getBorder() {
+        return border;
+    }
+
+    /**
+     * @return {@code true} when the style uses the default font of the workbook
+     */
+    boolean hasDefaultFont() {
+        return fontName == null && fontSize == 0 && !bold && !italic;
+    }
+
+    /**
+     * @param fontName font name, {@code null} for the default font of the workbook
+     * @param fontSize font height in points, {@code 0} for the height of the default font
+     */
+    public CellStyleSpec withFont(String fontName, int fontSize) {
+        if (fontSize < 0 || fontSize > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Font size out of range: " + fontSize);
+        return new CellStyleSpec(fontName, (short) fontSize, bold, italic, dataFormat, alignment,
+                verticalAlignment, wrapText, border);
+    }
+
+    public CellStyleSpec withBold(boolean bold) {
+        return new CellStyleSpec(fontName, fontSize, bold, italic, dataFormat, alignment, verticalAlignment,
+                wrapText, border);
+    }
+
+    public CellStyleSpec withItalic(boolean italic) {
+        return new CellStyleSpec(fontName, fontSize, bold, italic, dataFormat, alignment, verticalAlignment,
+                wrapText, border);
+    }
+
+    /**
+     * @param dataFormat Excel number format, e.g. {@code #,##0.00} or {@code mm/dd/yyyy}
+     */
+    public CellStyleSpec withDataFormat(String dataFormat) {
+        Objects.requireNonNull(dataFormat, "Data format must be non null");
+        return new CellStyleSpec(fontName, fontSize, bold, italic, dataFormat, alignment, verticalAlignment,
+                wrapText, border);
+    }
+
+    public CellStyleSpec withAlignment(HorizontalAlignment alignment) {
+        Objects.requireNonNull(alignment, "Alignment must be non null");
+        return new CellStyleSpec(fontName, fontSize, bold, italic, dataFormat, alignment, verticalAlignment,
+                wrapText, border);
+    }
+
+    public CellStyleSpec withVerticalAlignment(VerticalAlignment verticalAlignment) {
+        Objects.requireNonNull(verticalAlignment, "Vertical alignment must be non null");
+        return new CellStyleSpec(fontName, fontSize, bold, italic, dataFormat, alignment, verticalAlignment,
+                wrapText, border);
+    }
+
+    public CellStyleSpec withWrapText(boolean wrapText) {
+        return new CellStyleSpec(fontName, fontSize, bold, italic, dataFormat, alignment, verticalAlignment,
+                wrapText, border);
+    }
+
+    /**
+     * @param border border of all four sides
+     */
+    public CellStyleSpec withBorder(BorderStyle border) {
+        Objects.requireNonNull(border, "Border must be non null");
+        return new CellStyleSpec(fontName, fontSize, bold, italic, dataFormat, alignment, verticalAlignment,
+                wrapText, border);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof CellStyleSpec))
+            return false;
+        CellStyleSpec that = (CellStyleSpec) o;
+        return fontSize == that.fontSize && bold == that.bold && italic == that.italic
+                && wrapText == that.wrapText && Objects.equals(fontName, that.fontName)
+                && dataFormat.equals(that.dataFormat) && alignment == that.alignment
+                && verticalAlignment == that.verticalAlignment && border == that.border;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fontName, fontSize, bold, italic, dataFormat, alignment, verticalAlignment, wrapText,
+                border);
+    }
+}
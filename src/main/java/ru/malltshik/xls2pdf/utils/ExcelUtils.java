@@ -30,6 +30,17 @@ public class ExcelUtils {
 
 	private FileInputStream is = null;
 
+	/**
+	 * @param widthUnits column width in 1/256 of a character, as {@link Sheet#getColumnWidth(int)} returns it
+	 * @return width in pixels of the default font
+	 */
+	public static int widthUnits2Pixel(int widthUnits) {
+		int pixels = (widthUnits / EXCEL_COLUMN_WIDTH_FACTOR) * UNIT_OFFSET_LENGTH;
+		int offsetWidthUnits = widthUnits % EXCEL_COLUMN_WIDTH_FACTOR;
+		pixels += Math.round(offsetWidthUnits / ((float) EXCEL_COLUMN_WIDTH_FACTOR / UNIT_OFFSET_LENGTH));
+		return pixels;
+	}
+
 	public Workbook getWorkbook(String path) throws IOException {
 		Workbook workbook;
 		File file = new File(path);
@@ -54,6 +65,12 @@ public class ExcelUtils {
 		}
 	}
 
+	/**
+	 * @deprecated the PDF converter lays every sheet out by its print setup, see
+	 * {@link ru.malltshik.xls2pdf.converter.ConversionOptions#withPrintSetup(boolean)}; rewriting the workbook
+	 * first is no longer needed
+	 */
+	@Deprecated
 	public void fitPrintRangeWidthAndHeight(String path) throws IOException {
 		FileOutputStream fos = null;
 		try {
@@ -124,6 +141,10 @@ public class ExcelUtils {
 		return map;
 	}
 	
+	/**
+	 * @deprecated creates a font and a style on every call, intern them with a {@link StyleCache} instead
+	 */
+	@Deprecated
 	public static XSSFCellStyle setStyle(XSSFWorkbook workbook, boolean border) {
 		XSSFCellStyle cellStyle = workbook.createCellStyle();
 		Font newFont2 = workbook.createFont();
@@ -147,6 +168,11 @@ public class ExcelUtils {
 		return cellStyle;
 	}
 
+	/**
+	 * @deprecated looks the data format up on every call and sets it on the given style, which changes the
+	 * format of every cell sharing the style. Use {@link BulkWorkbookWriter} or styles of a {@link StyleCache}
+	 */
+	@Deprecated
 	public static Cell createXSSFCell(Row row, Integer column, Object object, XSSFCellStyle cellStyle, CreationHelper createHelper) {
 		Cell cell = null;
 		if (object != null) {
@@ -279,6 +305,12 @@ public class ExcelUtils {
     }
 
 
+	/**
+	 * @deprecated the PDF converter lays every sheet out by its print setup, see
+	 * {@link ru.malltshik.xls2pdf.converter.ConversionOptions#withPrintSetup(boolean)}; rewriting the workbook
+	 * first is no longer needed
+	 */
+	@Deprecated
 	public void fitPrintRangeWidthAndHeight(String path, String extendType) throws IOException {
 		FileOutputStream fos = null;
 		try {
@@ -0,0 +1,128 @@
+package ru.malltshik.xls2pdf.utils;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Interns the styles, fonts and data formats of one workbook by their attributes, so that writing any number
+ * of cells creates each distinct style once. A workbook holds at most 64000 styles and Excel slows down long
+ * before that, while creating a style per cell is the usual way to get there.
+ * <p>
+ * Styles handed out are shared by all cells that use them and must not be modified. Not thread safe, like
+ * the workbook it writes to.
+ */
+public final class StyleCache {
+
+    private final Workbook workbook;
+    private final DataFormat formats;
+    private final Map<CellStyleSpec, CellStyle> styles = new HashMap<>();
+    private final Map<FontKey, Font> fonts = new HashMap<>();
+    private final Map<String, Short> dataFormats = new HashMap<>();
+
+    public StyleCache(Workbook workbook) {
+        this.workbook = Objects.requireNonNull(workbook, "Workbook must be non null");
+        this.formats = workbook.createDataFormat();
+        styles.put(CellStyleSpec.defaults(), workbook.getCellStyleAt(defaultStyleIndex(workbook)));
+    }
+
+    /**
+     * @return the style of the workbook with these attributes, created on first use
+     */
+    public CellStyle style(CellStyleSpec spec) {
+        Objects.requireNonNull(spec, "Cell style spec must be non null");
+        CellStyle style = styles.get(spec);
+        if (style == null) {
+            style = workbook.createCellStyle();
+            if (!spec.hasDefaultFont())
+                style.setFont(font(spec.getFontName(), spec.getFontSize(), spec.isBold(), spec.isItalic()));
+            style.setDataFormat(dataFormat(spec.getDataFormat()));
+            style.setAlignment(spec.getAlignment());
+            style.setVerticalAlignment(spec.getVerticalAlignment());
+            style.setWrapText(spec.isWrapText());
+            style.setBorderTop(spec.getBorder());
+            style.setBorderRight(spec.getBorder());
+            style.setBorderBottom(spec.getBorder());
+            style.setBorderLeft(spec.getBorder());
+            styles.put(spec, style);
+        }
+        return style;
+    }
+
+    /**
+     * @return index of the style of cells without one: the first style of XLSX, while the first 15 styles of
+     * XLS are cell styles of the built-in named styles and cells default to the 16th
+     */
+    static short defaultStyleIndex(Workbook workbook) {
+        return workbook instanceof HSSFWorkbook ? (short) 15 : 0;
+    }
+
+    /**
+     * @param name font name, {@code null} for the name of the default font
+     * @param size font height in points, {@code 0} for the height of the default font
+     * @return the font of the workbook with these attributes, created on first use
+     */
+    public Font font(String name, short size, boolean bold, boolean italic) {
+        return fonts.computeIfAbsent(new FontKey(name, size, bold, italic), key -> {
+            Font defaults = workbook.getFontAt((short) 0);
+            Font font = workbook.createFont();
+            font.setFontName(name == null ? defaults.getFontName() : name);
+            font.setFontHeightInPoints(size == 0 ? defaults.getFontHeightInPoints() : size);
+            font.setBold(bold);
+            font.setItalic(italic);
+            return font;
+        });
+    }
+
+    /**
+     * @return index of the format in the workbook, added on first use
+     */
+    public short dataFormat(String format) {
+        Objects.requireNonNull(format, "Data format must be non null");
+        return dataFormats.computeIfAbsent(format, formats::getFormat);
+    }
+
+    /**
+     * @return number of distinct styles handed out or created so far, the default style included
+     */
+    public int size() {
+        return styles.size();
+    }
+
+    private static final class FontKey {
+
+        private final String name;
+        private final short size;
+        private final boolean bold;
+        private final boolean italic;
+
+        private FontKey(String name, short size, boolean bold, boolean italic) {
+            this.name = name;
+            this.size = size;
+            this.bold = bold;
+            this.italic = italic;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof FontKey))
+                return false;
+            FontKey that = (FontKey) o;
+            return size == that.size && bold == that.bold && italic == that.italic
+                    && Objects.equals(name, that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, size, bold, italic);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ru.malltshik.xls2pdf;
+
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Fixtures shared by the tests that build their workbooks in memory.
+ */
+public final class TestWorkbooks {
+
+    private TestWorkbooks() {
+    }
+
+    /**
+     * @return the workbook written in its own format, the workbook is left open
+     */
+    public static byte[] bytes(Workbook wb) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+        return out.toByteArray();
+    }
+}
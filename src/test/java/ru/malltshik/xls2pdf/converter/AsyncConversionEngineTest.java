@@ -0,0 +1,104 @@
+package ru.malltshik.xls2pdf.converter;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static ru.malltshik.xls2pdf.TestWorkbooks.bytes;
+
+public class AsyncConversionEngineTest {
+
+    @Test
+    public void convertAll() throws Exception {
+        byte[] xlsx = workbook();
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            AsyncConversionEngine async = new AsyncConversionEngine(new ConversionEngine(), pool,
+                    ConversionLimits.defaults().withMaxRunning(2));
+            List<ByteArrayOutputStream> targets = new ArrayList<>();
+            List<CompletableFuture<ConversionResult>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                ByteArrayOutputStream target = new ByteArrayOutputStream();
+                targets.add(target);
+                results.add(async.convert(new ByteArrayInputStream(xlsx), target, OutputFormat.HTML));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                ConversionResult result = results.get(i).get(30, TimeUnit.SECONDS);
+                assertThat(result.getSourceBytes(), equalTo((long) xlsx.length));
+                assertThat(result.getOutputBytes(), equalTo((long) targets.get(i).size()));
+                assertThat(targets.get(i).toString("UTF-8"), containsString("Row 9"));
+            }
+            assertThat(async.getRunning(), equalTo(0));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void queueThenAbort() throws Exception {
+        byte[] xlsx = workbook();
+        BlockingQueue<Runnable> handed = new LinkedBlockingQueue<>();
+        AsyncConversionEngine async = new AsyncConversionEngine(new ConversionEngine(), handed::add,
+                ConversionLimits.defaults().withMaxRunning(1).withMaxQueued(1));
+
+        CompletableFuture<ConversionResult> first = convert(async, xlsx);
+        CompletableFuture<ConversionResult> second = convert(async, xlsx);
+        CompletableFuture<ConversionResult> third = convert(async, xlsx);
+        assertThat(async.getRunning(), equalTo(1));
+        assertThat(async.getQueued(), equalTo(1));
+        assertThat(handed.size(), equalTo(1));
+        try {
+            third.join();
+            throw new AssertionError("Conversion beyond the queue was accepted");
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+        }
+
+        handed.take().run();
+        assertThat(first.isDone(), is(true));
+        assertThat(handed.size(), equalTo(1));
+        handed.take().run();
+        assertThat(second.get().getFormat(), equalTo(OutputFormat.HTML));
+        assertThat(async.getRunning(), equalTo(0));
+    }
+
+    @Test
+    public void limitRunningBytes() throws Exception {
+        byte[] xlsx = workbook();
+        BlockingQueue<Runnable> handed = new LinkedBlockingQueue<>();
+        AsyncConversionEngine async = new AsyncConversionEngine(new ConversionEngine(), handed::add,
+                ConversionLimits.defaults().withMaxRunning(4).withMaxRunningBytes(xlsx.length + 1));
+
+        convert(async, xlsx);
+        CompletableFuture<ConversionResult> second = convert(async, xlsx);
+        assertThat(async.getRunning(), equalTo(1));
+        assertThat(async.getQueued(), equalTo(1));
+
+        second.cancel(false);
+        assertThat(async.getQueued(), equalTo(0));
+        handed.take().run();
+        assertThat(handed.isEmpty(), is(true));
+        assertThat(async.getRunning(), equalTo(0));
+    }
+
+    private static CompletableFuture<ConversionResult> convert(AsyncConversionEngine async, byte[] xlsx) {
+        return async.convert(new ByteArrayInputStream(xlsx), new ByteArrayOutputStream(), OutputFormat.HTML);
+    }
+
+    private static byte[] workbook() throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("Rows");
+            for (int r = 0; r < 10; r++)
+                sheet.createRow(r).createCell(0).setCellValue("Row " + r);
+            return bytes(wb);
+        }
+    }
+}
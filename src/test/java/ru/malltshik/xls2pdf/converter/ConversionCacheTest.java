@@ -0,0 +1,128 @@
+package ru.malltshik.xls2pdf.converter;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static ru.malltshik.xls2pdf.TestWorkbooks.bytes;
+
+public class ConversionCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void convertOnce() throws Exception {
+        byte[] xlsx = workbook("Cached");
+        ConversionCache cache = new ConversionCache(new ConversionEngine(), 1 << 20);
+        String first = html(cache, xlsx, ConversionOptions.defaults());
+        String second = html(cache, xlsx, ConversionOptions.defaults());
+
+        assertThat(first, containsString("Cached"));
+        assertThat(second, equalTo(first));
+        assertThat(cache.getMisses(), equalTo(1L));
+        assertThat(cache.getHits(), equalTo(1L));
+
+        html(cache, xlsx, ConversionOptions.defaults().withStreaming(true));
+        assertThat(cache.getMisses(), equalTo(2L));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws Exception {
+        byte[] first = workbook("First");
+        byte[] second = workbook("Second");
+        ConversionCache sizing = new ConversionCache(new ConversionEngine(), 1 << 20);
+        int size = html(sizing, first, ConversionOptions.defaults()).length();
+
+        ConversionCache cache = new ConversionCache(new ConversionEngine(), size + size / 2);
+        html(cache, first, ConversionOptions.defaults());
+        html(cache, second, ConversionOptions.defaults());
+        html(cache, first, ConversionOptions.defaults());
+
+        assertThat(cache.getMisses(), equalTo(3L));
+        assertThat(cache.getHits(), equalTo(0L));
+    }
+
+    @Test
+    public void reuseDirectory() throws Exception {
+        byte[] xlsx = workbook("Stored");
+        Path directory = folder.newFolder().toPath();
+        ConversionCache cache = new ConversionCache(new ConversionEngine(), 0, directory, 1 << 20);
+        String expected = pdf(cache, xlsx);
+        assertThat(cache.getMisses(), equalTo(1L));
+
+        ConversionCache restarted = new ConversionCache(new ConversionEngine(), 0, directory, 1 << 20);
+        assertThat(pdf(restarted, xlsx), equalTo(expected));
+        assertThat(restarted.getMisses(), equalTo(0L));
+        assertThat(restarted.getDiskHits(), equalTo(1L));
+
+        ConversionCache shrunk = new ConversionCache(new ConversionEngine(), 0, directory, 1);
+        pdf(shrunk, xlsx);
+        assertThat(shrunk.getMisses(), equalTo(1L));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.count(), equalTo(0L));
+        }
+    }
+
+    @Test
+    public void mergeConcurrentCalls() throws Exception {
+        byte[] xlsx = workbook("Merged");
+        Path directory = folder.newFolder().toPath();
+        ConversionCache cache = new ConversionCache(new ConversionEngine(), 1 << 20, directory, 1 << 20);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                Callable<String> conversion = () -> html(cache, xlsx, ConversionOptions.defaults());
+                results.add(pool.submit(conversion));
+            }
+            String expected = results.get(0).get();
+            for (Future<String> result : results)
+                assertThat(result.get(), equalTo(expected));
+        } finally {
+            pool.shutdown();
+        }
+        assertThat(cache.getMisses(), equalTo(1L));
+        assertThat(cache.getHits(), equalTo(15L));
+    }
+
+    private static String html(ConversionCache cache, byte[] xlsx, ConversionOptions options) throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        cache.convert(new ByteArrayInputStream(xlsx), target, OutputFormat.HTML, options);
+        return target.toString("UTF-8");
+    }
+
+    private static String pdf(ConversionCache cache, byte[] xlsx) throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        cache.convert(new ByteArrayInputStream(xlsx), target, OutputFormat.PDF);
+        String pdf = target.toString("ISO-8859-1");
+        assertThat(pdf, startsWith("%PDF"));
+        return pdf;
+    }
+
+    private static byte[] workbook(String text) throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("Sheet");
+            for (int r = 0; r < 20; r++)
+                sheet.createRow(r).createCell(0).setCellValue(text + " " + r);
+            return bytes(wb);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ru.malltshik.xls2pdf.converter;
+
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static ru.malltshik.xls2pdf.TestWorkbooks.bytes;
+
+public class ConversionEngineTest {
+
+    @Test
+    public void convertConcurrently() throws Exception {
+        byte[] xlsx = datedWorkbook();
+        ConversionEngine engine = new ConversionEngine(ConversionOptions.defaults().withStreaming(true));
+        String expected = html(engine, xlsx);
+        assertThat(expected, containsString("31.12.2019"));
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                Callable<String> conversion = () -> html(engine, xlsx);
+                results.add(pool.submit(conversion));
+            }
+            for (Future<String> result : results)
+                assertThat(result.get(), equalTo(expected));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void convertToPdf() throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        new ConversionEngine().convert(new ByteArrayInputStream(datedWorkbook()), target, OutputFormat.PDF,
+                ConversionOptions.defaults().withPdfBackend(PdfBackend.HTML));
+
+        PdfReader pdf = new PdfReader(target.toByteArray());
+        assertThat(PdfTextExtractor.getTextFromPage(pdf, 1), containsString("01.01.2019"));
+        pdf.close();
+    }
+
+    @Test
+    public void convertFile() throws Exception {
+        Path source = Files.createTempFile("dated", ".xlsx");
+        try {
+            Files.write(source, datedWorkbook());
+            ByteArrayOutputStream target = new ByteArrayOutputStream();
+            new ConversionEngine().convert(source, target, OutputFormat.PDF);
+
+            PdfReader pdf = new PdfReader(target.toByteArray());
+            assertThat(PdfTextExtractor.getTextFromPage(pdf, 1), containsString("01.01.2019"));
+            pdf.close();
+        } finally {
+            Files.delete(source);
+        }
+    }
+
+    private static String html(ConversionEngine engine, byte[] xlsx) throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        engine.convert(new ByteArrayInputStream(xlsx), target, OutputFormat.HTML);
+        return target.toString("UTF-8");
+    }
+
+    private static byte[] datedWorkbook() throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            CellStyle date = wb.createCellStyle();
+            date.setDataFormat(wb.createDataFormat().getFormat("dd.mm.yyyy"));
+            Sheet sheet = wb.createSheet("Days");
+            for (int r = 0; r < 365; r++) {
+                Row row = sheet.createRow(r);
+                row.createCell(0).setCellValue(new GregorianCalendar(2019, 0, r + 1).getTime());
+                row.getCell(0).setCellStyle(date);
+                row.createCell(1).setCellValue(r * 1.5);
+            }
+            return bytes(wb);
+        }
+    }
+}
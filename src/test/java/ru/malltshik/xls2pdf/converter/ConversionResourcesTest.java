@@ -0,0 +1,25 @@
+package ru.malltshik.xls2pdf.converter;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ConversionResourcesTest {
+
+    @Test
+    public void parseWorkbookCssOnce() {
+        ConversionResources resources = ConversionResources.shared();
+        String rules = String.format(".excelDefaults .style_01 {%n  font-size: 10pt;%n}%n");
+
+        assertThat(resources.workbookCss(rules), sameInstance(resources.workbookCss(new String(rules))));
+        assertThat(resources.workbookCss(rules + " "), not(sameInstance(resources.workbookCss(rules))));
+    }
+
+    @Test
+    public void shareResources() {
+        assertThat(ConversionResources.shared(), sameInstance(ConversionResources.shared()));
+        assertThat(ConversionResources.shared().getStandardCssFile(), notNullValue());
+        assertThat(ConversionResources.shared().getXmlWorkerCss(), notNullValue());
+    }
+}
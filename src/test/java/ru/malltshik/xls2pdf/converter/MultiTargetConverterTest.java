@@ -0,0 +1,101 @@
+package ru.malltshik.xls2pdf.converter;
+
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import ru.malltshik.xls2pdf.metrics.ConversionCounter;
+import ru.malltshik.xls2pdf.metrics.ConversionMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static ru.malltshik.xls2pdf.TestWorkbooks.bytes;
+
+public class MultiTargetConverterTest {
+
+    @Test
+    public void writeAllTargetsInOnePass() throws Exception {
+        for (boolean streaming : new boolean[]{false, true}) {
+            ConversionOptions options = ConversionOptions.defaults().withStreaming(streaming);
+            List<ConversionMetrics> recorded = new ArrayList<>();
+            Map<OutputFormat, OutputStream> targets = targets();
+            new ConversionEngine().convert(new ByteArrayInputStream(workbook()), targets,
+                    options.withListener(recorded::add));
+
+            ByteArrayOutputStream html = new ByteArrayOutputStream();
+            new ConversionEngine().convert(new ByteArrayInputStream(workbook()), html, OutputFormat.HTML, options);
+            assertThat(text(targets, OutputFormat.HTML), equalTo(html.toString("UTF-8")));
+
+            PdfReader pdf = new PdfReader(((ByteArrayOutputStream) targets.get(OutputFormat.PDF)).toByteArray());
+            assertThat(pdf.getNumberOfPages(), equalTo(2));
+            assertThat(PdfTextExtractor.getTextFromPage(pdf, 1), containsString("Quoted, \"text\""));
+            assertThat(PdfTextExtractor.getTextFromPage(pdf, 2), containsString("Second"));
+            pdf.close();
+
+            assertThat(text(targets, OutputFormat.CSV), equalTo("Merged,,Name,Total\r\n"
+                    + ",,\"Quoted, \"\"text\"\"\",6.000\r\n"
+                    + "\r\n"
+                    + "Second\r\n"));
+
+            ConversionMetrics metrics = recorded.get(0);
+            assertThat(metrics.getCount(ConversionCounter.ROWS), equalTo(3L));
+            assertThat(metrics.getCount(ConversionCounter.PDF_PAGES), equalTo(2L));
+            assertThat(metrics.getCount(ConversionCounter.HTML_BYTES),
+                    equalTo((long) ((ByteArrayOutputStream) targets.get(OutputFormat.HTML)).size()));
+            if (!streaming)
+                assertThat(metrics.getCount(ConversionCounter.FORMULAS_EVALUATED), equalTo(1L));
+        }
+    }
+
+    @Test
+    public void convertToCsv() throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        new ConversionEngine().convert(new ByteArrayInputStream(workbook()), target, OutputFormat.CSV,
+                ConversionOptions.defaults().withSheets(1));
+        assertThat(target.toString("UTF-8"), equalTo("Second\r\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNoTargets() throws Exception {
+        new ConversionEngine().convert(new ByteArrayInputStream(workbook()), new EnumMap<>(OutputFormat.class));
+    }
+
+    private static Map<OutputFormat, OutputStream> targets() {
+        Map<OutputFormat, OutputStream> targets = new EnumMap<>(OutputFormat.class);
+        for (OutputFormat format : OutputFormat.values())
+            targets.put(format, new ByteArrayOutputStream());
+        return targets;
+    }
+
+    private static String text(Map<OutputFormat, OutputStream> targets, OutputFormat format) throws Exception {
+        return ((ByteArrayOutputStream) targets.get(format)).toString("UTF-8");
+    }
+
+    private static byte[] workbook() throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("First");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Merged");
+            header.createCell(2).setCellValue("Name");
+            header.createCell(3).setCellValue("Total");
+            Row row = sheet.createRow(1);
+            row.createCell(2).setCellValue("Quoted, \"text\"");
+            row.createCell(3).setCellFormula("2*3");
+            sheet.addMergedRegion(new CellRangeAddress(0, 1, 0, 1));
+            wb.getCreationHelper().createFormulaEvaluator().evaluateAll();
+            wb.createSheet("Second").createRow(0).createCell(0).setCellValue("Second");
+            return bytes(wb);
+        }
+    }
+}
@@ -1,18 +1,29 @@
 package ru.malltshik.xls2pdf.converter;
 
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.malltshik.xls2pdf.render.SheetWindow;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.GregorianCalendar;
 import java.util.UUID;
 
 import static java.lang.String.format;
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static ru.malltshik.xls2pdf.TestWorkbooks.bytes;
 
 public class Xls2HtmlConverterTest {
 
@@ -37,4 +48,228 @@ public class Xls2HtmlConverterTest {
         target.delete();
         LOGGER.debug("Target file {} has bean deleted", filename);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void convertStreaming() throws Exception {
+        ByteArrayOutputStream usermodel = new ByteArrayOutputStream();
+        new Xls2HtmlConverter(getClass().getClassLoader().getResourceAsStream("test.xlsx"), usermodel).convert();
+
+        ByteArrayOutputStream streaming = new ByteArrayOutputStream();
+        new Xls2HtmlConverter(getClass().getClassLoader().getResourceAsStream("test.xlsx"), streaming,
+                ConversionOptions.defaults().withStreaming(true)).convert();
+
+        assertThat(streaming.toString("UTF-8"), equalTo(usermodel.toString("UTF-8")));
+    }
+
+    @Test
+    public void convertStreamingXls() throws Exception {
+        byte[] xls = legacyWorkbook();
+
+        ByteArrayOutputStream usermodel = new ByteArrayOutputStream();
+        new Xls2HtmlConverter(new ByteArrayInputStream(xls), usermodel).convert();
+
+        ByteArrayOutputStream streaming = new ByteArrayOutputStream();
+        new Xls2HtmlConverter(new ByteArrayInputStream(xls), streaming,
+                ConversionOptions.defaults().withStreaming(true)).convert();
+
+        assertThat(streaming.toString("UTF-8"), containsString("Total &amp; Co"));
+        assertThat(streaming.toString("UTF-8"), equalTo(usermodel.toString("UTF-8")));
+    }
+
+    @Test
+    public void convertSelectedSheets() throws Exception {
+        byte[] xls = legacyWorkbook();
+
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        new Xls2HtmlConverter(new ByteArrayInputStream(xls), all).convert();
+        assertThat(all.toString("UTF-8"), containsString("Notes first"));
+
+        for (boolean streaming : new boolean[]{false, true}) {
+            ByteArrayOutputStream selected = new ByteArrayOutputStream();
+            new Xls2HtmlConverter(new ByteArrayInputStream(xls), selected, ConversionOptions.defaults()
+                    .withStreaming(streaming).withSheetNames("Notes", "Legacy")).convert();
+
+            String html = selected.toString("UTF-8");
+            assertThat(html, not(containsString("Skipped")));
+            assertThat(html.indexOf("Notes first") < html.indexOf("Head 0"), is(true));
+        }
+    }
+
+    @Test
+    public void convertFile() throws Exception {
+        byte[] xls = legacyWorkbook();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new Xls2HtmlConverter(new ByteArrayInputStream(xls), expected).convert();
+
+        Path source = Files.createTempFile("legacy", ".xls");
+        try {
+            Files.write(source, xls);
+            for (boolean streaming : new boolean[]{false, true}) {
+                ByteArrayOutputStream html = new ByteArrayOutputStream();
+                new Xls2HtmlConverter(source, html, ConversionOptions.defaults().withStreaming(streaming)).convert();
+                assertThat(html.toString("UTF-8"), equalTo(expected.toString("UTF-8")));
+            }
+            assertThat(Files.readAllBytes(source), equalTo(xls));
+        } finally {
+            Files.delete(source);
+        }
+    }
+
+    @Test
+    public void convertRows() throws Exception {
+        byte[] xls = legacyWorkbook();
+        ConversionOptions options = ConversionOptions.defaults().withSheetNames("Legacy")
+                .withWindow(SheetWindow.rows(3, 5));
+
+        ByteArrayOutputStream usermodel = new ByteArrayOutputStream();
+        new Xls2HtmlConverter(new ByteArrayInputStream(xls), usermodel, options).convert();
+        ByteArrayOutputStream streaming = new ByteArrayOutputStream();
+        new Xls2HtmlConverter(new ByteArrayInputStream(xls), streaming, options.withStreaming(true)).convert();
+
+        String html = usermodel.toString("UTF-8");
+        assertThat(html, containsString("03.01.2020"));
+        assertThat(html, containsString("07.01.2020"));
+        assertThat(html, not(containsString("02.01.2020")));
+        assertThat(html, not(containsString("08.01.2020")));
+        assertThat(html, not(containsString("Head 0")));
+        assertThat(streaming.toString("UTF-8"), equalTo(html));
+    }
+
+    @Test
+    public void convertRangeClipsMergedRegions() throws Exception {
+        ByteArrayOutputStream html = new ByteArrayOutputStream();
+        new Xls2HtmlConverter(new ByteArrayInputStream(legacyWorkbook()), html, ConversionOptions.defaults()
+                .withSheetNames("Legacy").withWindow(SheetWindow.range(CellRangeAddress.valueOf("B1:C2"))))
+                .convert();
+
+        assertThat(html.toString("UTF-8"), not(containsString("Head 0")));
+        assertThat(html.toString("UTF-8"), not(containsString("colspan")));
+        assertThat(html.toString("UTF-8"), containsString("Head 2"));
+        assertThat(html.toString("UTF-8"), not(containsString("Head 3")));
+    }
+
+    @Test
+    public void shareClassOfEqualStyles() throws Exception {
+        for (boolean streaming : new boolean[]{false, true}) {
+            byte[] xlsx;
+            try (XSSFWorkbook wb = new XSSFWorkbook()) {
+                Font bold = wb.createFont();
+                bold.setBold(true);
+                CellStyle locked = wb.createCellStyle();
+                locked.setFont(bold);
+                CellStyle unlocked = wb.createCellStyle();
+                unlocked.setFont(bold);
+                unlocked.setLocked(false);
+                Row row = wb.createSheet().createRow(0);
+                row.createCell(0).setCellValue("Locked");
+                row.getCell(0).setCellStyle(locked);
+                row.createCell(1).setCellValue("Unlocked");
+                row.getCell(1).setCellStyle(unlocked);
+                xlsx = bytes(wb);
+            }
+
+            ByteArrayOutputStream html = new ByteArrayOutputStream();
+            new Xls2HtmlConverter(new ByteArrayInputStream(xlsx), html,
+                    ConversionOptions.defaults().withStreaming(streaming)).convert();
+
+            String page = html.toString("UTF-8");
+            String className = format("style_%02d", 1);
+            assertThat(occurrences(page, "." + className + " {"), equalTo(1));
+            assertThat(page, not(containsString(format("style_%02d", 2))));
+            assertThat(occurrences(page, "class=" + className), equalTo(2));
+        }
+    }
+
+    private static int occurrences(String text, String part) {
+        int count = 0;
+        for (int at = text.indexOf(part); at >= 0; at = text.indexOf(part, at + part.length()))
+            count++;
+        return count;
+    }
+
+    @Test
+    public void convertPrintArea() throws Exception {
+        for (boolean xlsx : new boolean[]{false, true}) {
+            byte[] workbook = printAreaWorkbook(xlsx);
+            ByteArrayOutputStream expected = null;
+            for (boolean streaming : new boolean[]{false, true}) {
+                ByteArrayOutputStream html = new ByteArrayOutputStream();
+                new Xls2HtmlConverter(new ByteArrayInputStream(workbook), html, ConversionOptions.defaults()
+                        .withStreaming(streaming).withWindow(SheetWindow.printArea())).convert();
+
+                assertThat(html.toString("UTF-8"), containsString("B2"));
+                assertThat(html.toString("UTF-8"), containsString("C3"));
+                assertThat(html.toString("UTF-8"), not(containsString("A1")));
+                assertThat(html.toString("UTF-8"), not(containsString("D4")));
+                if (expected == null)
+                    expected = html;
+                assertThat(html.toString("UTF-8"), equalTo(expected.toString("UTF-8")));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void convertUnknownSheet() throws Exception {
+        new Xls2HtmlConverter(new ByteArrayInputStream(legacyWorkbook()), new ByteArrayOutputStream(),
+                ConversionOptions.defaults().withSheetNames("Missing"));
+    }
+
+    private static byte[] printAreaWorkbook(boolean xlsx) throws Exception {
+        try (Workbook wb = xlsx ? new XSSFWorkbook() : new HSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("Printed");
+            for (int r = 0; r < 4; r++) {
+                Row row = sheet.createRow(r);
+                for (int c = 0; c < 4; c++)
+                    row.createCell(c).setCellValue(new CellReference(r, c).formatAsString());
+            }
+            wb.setPrintArea(0, "$B$2:$C$3");
+            return bytes(wb);
+        }
+    }
+
+    private static byte[] legacyWorkbook() throws Exception {
+        try (HSSFWorkbook wb = new HSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("Legacy");
+            CellStyle date = wb.createCellStyle();
+            date.setDataFormat(wb.createDataFormat().getFormat("dd.mm.yyyy"));
+            CellStyle money = wb.createCellStyle();
+            money.setDataFormat(wb.createDataFormat().getFormat("#,##0.00;[Red]-#,##0.00"));
+            money.setBorderBottom(BorderStyle.THIN);
+            Font bold = wb.createFont();
+            bold.setBold(true);
+            bold.setColor(IndexedColors.RED.getIndex());
+            CellStyle head = wb.createCellStyle();
+            head.setFont(bold);
+            head.setFillForegroundColor(IndexedColors.YELLOW.getIndex());
+            head.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+
+            Row header = sheet.createRow(0);
+            for (int c = 0; c < 5; c++) {
+                header.createCell(c).setCellValue("Head " + c);
+                header.getCell(c).setCellStyle(head);
+            }
+            sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, 1));
+            sheet.createFreezePane(0, 1);
+            for (int r = 1; r <= 20; r++) {
+                Row row = sheet.createRow(r);
+                row.createCell(0).setCellValue(new GregorianCalendar(2020, 0, r).getTime());
+                row.getCell(0).setCellStyle(date);
+                row.createCell(1).setCellValue(r % 3 == 0 ? -r * 10.5 : r * 10.5);
+                row.getCell(1).setCellStyle(money);
+                row.createCell(2).setCellFormula("B" + (r + 1) + "*2");
+                row.createCell(3).setCellValue(r % 2 == 0);
+                if (r % 4 == 0)
+                    row.createCell(4).setCellStyle(money);
+            }
+            sheet.createRow(22).createCell(2).setCellFormula("\"Total & Co\"");
+            sheet.createRow(24);
+            wb.createSheet("Skipped").createRow(0).createCell(0).setCellValue("Skipped");
+            Sheet notes = wb.createSheet("Notes");
+            notes.createRow(1).createCell(1).setCellValue("Notes first");
+            notes.createRow(2).createCell(2).setCellFormula("1/0");
+            wb.getCreationHelper().createFormulaEvaluator().evaluateAll();
+
+            return bytes(wb);
+        }
+    }
+}
@@ -1,18 +1,54 @@
 package ru.malltshik.xls2pdf.converter;
 
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.PrintSetup;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.malltshik.xls2pdf.render.*;
+import ru.malltshik.xls2pdf.style.RenderStyle;
+import ru.malltshik.xls2pdf.style.StyleTable;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.String.format;
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+import static ru.malltshik.xls2pdf.TestWorkbooks.bytes;
 
 public class Xls2PdfConverterTest {
 
@@ -37,4 +73,452 @@ public class Xls2PdfConverterTest {
         LOGGER.debug("Target file {} has bean deleted", filename);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void convertWithBothBackends() throws Exception {
+        for (PdfBackend backend : PdfBackend.values()) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            new Xls2PdfConverter(getClass().getClassLoader().getResourceAsStream("test.xlsx"), result,
+                    ConversionOptions.defaults().withPdfBackend(backend)).convert();
+
+            PdfReader pdf = new PdfReader(result.toByteArray());
+            assertThat(pdf.getNumberOfPages(), is(1));
+            assertThat(backend.name(), PdfTextExtractor.getTextFromPage(pdf, 1), containsString("2/21/2018"));
+            pdf.close();
+        }
+    }
+
+    @Test
+    public void flushLargeTable() throws Exception {
+        byte[] xlsx = longSheet(400);
+
+        PdfReader whole = new PdfReader(convert(xlsx, 0));
+        PdfReader flushed = new PdfReader(convert(xlsx, 25));
+
+        assertThat(whole.getNumberOfPages() > 1, is(true));
+        assertThat(flushed.getNumberOfPages(), is(whole.getNumberOfPages()));
+        for (int page = 1; page <= flushed.getNumberOfPages(); page++) {
+            String text = PdfTextExtractor.getTextFromPage(flushed, page);
+            assertThat(text, startsWith("Number Square"));
+            assertThat(text, equalTo(PdfTextExtractor.getTextFromPage(whole, page)));
+        }
+        whole.close();
+        flushed.close();
+    }
+
+    @Test
+    public void convertSheetsInParallel() throws Exception {
+        byte[] xlsx = quarterlyPack();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            PdfReader sequential = new PdfReader(convert(xlsx, ConversionOptions.defaults()));
+            PdfReader parallel = new PdfReader(convert(xlsx, ConversionOptions.defaults().withExecutor(executor)));
+
+            assertThat(sequential.getNumberOfPages() > 5, is(true));
+            assertThat(parallel.getNumberOfPages(), is(sequential.getNumberOfPages()));
+            int quarter = 0;
+            for (int page = 1; page <= parallel.getNumberOfPages(); page++) {
+                String text = PdfTextExtractor.getTextFromPage(parallel, page);
+                assertThat(text, equalTo(PdfTextExtractor.getTextFromPage(sequential, page)));
+                if (text.startsWith("Quarter"))
+                    assertThat(text, startsWith("Quarter " + ++quarter));
+            }
+            assertThat(quarter, is(5));
+            sequential.close();
+            parallel.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void produceHtmlOnExecutor() throws Exception {
+        AtomicInteger tasks = new AtomicInteger();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Executor counting = task -> {
+                tasks.incrementAndGet();
+                pool.execute(task);
+            };
+            byte[] pdf = convert(longSheet(2000), ConversionOptions.defaults().withPdfBackend(PdfBackend.HTML)
+                    .withExecutor(counting));
+
+            assertThat(tasks.get(), is(1));
+            PdfReader reader = new PdfReader(pdf);
+            assertThat(PdfTextExtractor.getTextFromPage(reader, 1), startsWith("Number Square"));
+            assertThat(PdfTextExtractor.getTextFromPage(reader, reader.getNumberOfPages()),
+                    containsString("2000 4000000"));
+            reader.close();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void boundSheetsWaitingForSlowFirstSheet() throws Exception {
+        int processors = Runtime.getRuntime().availableProcessors();
+        byte[] xlsx;
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            for (int i = 0; i < processors + 3; i++)
+                wb.createSheet("S" + i).createRow(0).createCell(0).setCellValue("Sheet " + i);
+            xlsx = bytes(wb);
+        }
+        AtomicInteger reads = new AtomicInteger();
+        AtomicInteger readsWhileFirstPending = new AtomicInteger();
+        AtomicBoolean first = new AtomicBoolean(true);
+        Executor slowFirst = task -> new Thread(() -> {
+            if (first.getAndSet(false)) {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                readsWhileFirstPending.set(reads.get());
+            }
+            task.run();
+        }).start();
+        WorkbookReaders.Source source = options -> new FilterReader(
+                WorkbookReaders.source(new ByteArrayInputStream(xlsx)).open(options)) {
+            @Override
+            public void read(int sheet, SheetContentHandler handler) throws IOException {
+                reads.incrementAndGet();
+                super.read(sheet, handler);
+            }
+        };
+
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        new Xls2PdfConverter(source, target, ConversionOptions.defaults().withStreaming(true)
+                .withExecutor(slowFirst), ConversionResources.shared()).convert();
+
+        assertThat(readsWhileFirstPending.get() <= processors, is(true));
+        PdfReader pdf = new PdfReader(target.toByteArray());
+        assertThat(pdf.getNumberOfPages(), is(processors + 3));
+        assertThat(PdfTextExtractor.getTextFromPage(pdf, processors + 3), containsString("Sheet " + (processors + 2)));
+        pdf.close();
+    }
+
+    @Test
+    public void convertSelectedSheets() throws Exception {
+        PdfReader pdf = new PdfReader(convert(quarterlyPack(), ConversionOptions.defaults().withSheets(4, 1)));
+
+        assertThat(pdf.getNumberOfPages(), is(2));
+        assertThat(PdfTextExtractor.getTextFromPage(pdf, 1), startsWith("Quarter 5"));
+        assertThat(PdfTextExtractor.getTextFromPage(pdf, 2), startsWith("Quarter 2"));
+        pdf.close();
+    }
+
+    @Test
+    public void convertRowWindow() throws Exception {
+        ConversionOptions options = ConversionOptions.defaults().withSheets(2).withWindow(SheetWindow.rows(100, 20));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (ConversionOptions variant : new ConversionOptions[]{options, options.withExecutor(executor)}) {
+                PdfReader pdf = new PdfReader(convert(quarterlyPack(), variant));
+
+                assertThat(pdf.getNumberOfPages(), is(1));
+                String text = PdfTextExtractor.getTextFromPage(pdf, 1);
+                assertThat(text, startsWith("Item 100"));
+                assertThat(text, containsString("Item 119"));
+                assertThat(text, not(containsString("Item 120")));
+                pdf.close();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void embedFontSubsets() throws Exception {
+        Path fonts = Paths.get("/usr/share/fonts/truetype/dejavu");
+        assumeTrue("DejaVu fonts are not installed", Files.isDirectory(fonts));
+        byte[] xlsx = cyrillicSheet();
+
+        for (PdfBackend backend : PdfBackend.values()) {
+            PdfReader pdf = new PdfReader(convert(xlsx, ConversionOptions.defaults().withPdfBackend(backend)
+                    .withFontDirectory(fonts)));
+
+            assertThat(backend.name(), PdfTextExtractor.getTextFromPage(pdf, 1),
+                    containsString("\u041f\u0440\u0438\u0432\u0435\u0442"));
+            PdfDictionary resources = pdf.getPageN(1).getAsDict(PdfName.RESOURCES).getAsDict(PdfName.FONT);
+            for (PdfName font : resources.getKeys()) {
+                String name = resources.getAsDict(font).getAsName(PdfName.BASEFONT).toString();
+                assertThat(backend.name(), name, containsString("+DejaVuSans"));
+            }
+            pdf.close();
+        }
+    }
+
+    @Test
+    public void convertStylesBeyondShortIndex() throws Exception {
+        byte[] xlsx;
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            CellStyle last = null;
+            for (int i = 0; i < 33000; i++)
+                last = wb.createCellStyle();
+            last.setWrapText(true);
+            Cell cell = wb.createSheet().createRow(0).createCell(0);
+            cell.setCellValue("Styled");
+            cell.setCellStyle(last);
+            xlsx = bytes(wb);
+        }
+
+        for (PdfBackend backend : PdfBackend.values()) {
+            PdfReader pdf = new PdfReader(convert(xlsx, ConversionOptions.defaults().withPdfBackend(backend)));
+            assertThat(backend.name(), PdfTextExtractor.getTextFromPage(pdf, 1), containsString("Styled"));
+            pdf.close();
+        }
+    }
+
+    @Test
+    public void reportProducerFailureFirst() throws Exception {
+        IllegalStateException failure = new IllegalStateException("Producer failed");
+        AtomicBoolean failed = new AtomicBoolean();
+        // the target fails as well once the producer has failed, while the consumer writes the rest
+        OutputStream target = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                if (failed.get())
+                    throw new UncheckedIOException(new IOException("Target failed"));
+                super.write(b, off, len);
+            }
+        };
+        try {
+            convertHtml(failingSource(longSheet(5000), 3000, failure, failed), target);
+            fail("Producer failure expected");
+        } catch (IllegalStateException e) {
+            assertThat(e, sameInstance(failure));
+            assertThat(e.getSuppressed().length, equalTo(1));
+        }
+        assertThat(producerAlive(), equalTo(false));
+    }
+
+    @Test
+    public void stopProducerWhenConsumerFails() throws Exception {
+        AtomicBoolean failed = new AtomicBoolean();
+        OutputStream target = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                failed.set(true);
+                throw new IOException("Target failed");
+            }
+        };
+        try {
+            convertHtml(failingSource(longSheet(5000), Integer.MAX_VALUE, null, new AtomicBoolean()), target);
+            fail("Consumer failure expected");
+        } catch (Exception e) {
+            assertThat(failed.get(), equalTo(true));
+        }
+        assertThat(producerAlive(), equalTo(false));
+    }
+
+    @Test
+    public void honorPrintSetup() throws Exception {
+        for (boolean xlsx : new boolean[]{true, false}) {
+            for (boolean streaming : new boolean[]{false, true}) {
+                PdfReader pdf = new PdfReader(convert(printedSheet(xlsx),
+                        ConversionOptions.defaults().withStreaming(streaming)));
+                assertThat(pdf.getNumberOfPages(), equalTo(2));
+                Rectangle page = pdf.getPageSize(1);
+                // landscape A4 at 50%
+                assertThat(page.getWidth(), equalTo(PageSize.A4.getHeight() * 2));
+                assertThat(page.getHeight(), equalTo(PageSize.A4.getWidth() * 2));
+                assertThat(PdfTextExtractor.getTextFromPage(pdf, 1), containsString("Item 2"));
+                assertThat(PdfTextExtractor.getTextFromPage(pdf, 1), not(containsString("Item 3")));
+                assertThat(PdfTextExtractor.getTextFromPage(pdf, 2), startsWith("Item 3"));
+                pdf.close();
+            }
+        }
+    }
+
+    @Test
+    public void ignorePrintSetup() throws Exception {
+        PdfReader pdf = new PdfReader(convert(printedSheet(true),
+                ConversionOptions.defaults().withPrintSetup(false)));
+        assertThat(pdf.getNumberOfPages(), equalTo(1));
+        assertThat(pdf.getPageSize(1).getWidth(), equalTo(PageSize.A2.getWidth()));
+        pdf.close();
+    }
+
+    private static void convertHtml(WorkbookReaders.Source source, OutputStream target) throws Exception {
+        new Xls2PdfConverter(source, target, ConversionOptions.defaults().withPdfBackend(PdfBackend.HTML)
+                .withStreaming(true), ConversionResources.shared()).convert();
+    }
+
+    /**
+     * @param failAt  row whose start throws the failure
+     * @param failure thrown at the row, after setting {@code failed}
+     */
+    private static WorkbookReaders.Source failingSource(byte[] xlsx, int failAt, RuntimeException failure,
+                                                        AtomicBoolean failed) {
+        SheetContentHandler failing = new SheetContentHandler() {
+            @Override
+            public void startSheet(SheetLayout layout) {
+            }
+
+            @Override
+            public void startRow(int rowNum) {
+                if (rowNum == failAt) {
+                    failed.set(true);
+                    throw failure;
+                }
+            }
+
+            @Override
+            public void cell(int column, String text, RenderStyle style) {
+            }
+
+            @Override
+            public void endRow(int rowNum) {
+            }
+
+            @Override
+            public void endSheet() {
+            }
+        };
+        return options -> new FilterReader(WorkbookReaders.source(new ByteArrayInputStream(xlsx)).open(options)) {
+            @Override
+            public void read(int sheet, SheetContentHandler handler) throws IOException {
+                super.read(sheet, new TeeSheetHandler(Arrays.asList(failing, handler)));
+            }
+        };
+    }
+
+    private static boolean producerAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("xls2pdf-html") && thread.isAlive())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Passes every call on to a reader.
+     */
+    private static class FilterReader implements WorkbookReader {
+
+        private final WorkbookReader reader;
+
+        private FilterReader(WorkbookReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public StyleTable getStyles() {
+            return reader.getStyles();
+        }
+
+        @Override
+        public List<String> getSheetNames() {
+            return reader.getSheetNames();
+        }
+
+        @Override
+        public Collection<RenderStyle> usedStyles(Collection<Integer> sheets) throws IOException {
+            return reader.usedStyles(sheets);
+        }
+
+        @Override
+        public void read(int sheet, SheetContentHandler handler) throws IOException {
+            reader.read(sheet, handler);
+        }
+
+        @Override
+        public CellRangeAddress getPrintArea(int sheet) throws IOException {
+            return reader.getPrintArea(sheet);
+        }
+
+        @Override
+        public boolean holdsWorkbook() {
+            return reader.holdsWorkbook();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private static byte[] convert(byte[] xlsx, int flushRows) throws Exception {
+        return convert(xlsx, ConversionOptions.defaults().withPdfFlushRows(flushRows));
+    }
+
+    private static byte[] convert(byte[] xlsx, ConversionOptions options) throws Exception {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        new Xls2PdfConverter(new ByteArrayInputStream(xlsx), result, options).convert();
+        return result.toByteArray();
+    }
+
+    private static byte[] cyrillicSheet() throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Font font = wb.createFont();
+            font.setFontName("DejaVu Sans");
+            CellStyle style = wb.createCellStyle();
+            style.setFont(font);
+            Row row = wb.createSheet().createRow(0);
+            row.createCell(0).setCellValue("\u041f\u0440\u0438\u0432\u0435\u0442");
+            row.getCell(0).setCellStyle(style);
+            row.createCell(1).setCellValue("Hello");
+            row.getCell(1).setCellStyle(style);
+            return bytes(wb);
+        }
+    }
+
+    /**
+     * Five sheets, the third one long enough for several pages.
+     */
+    private static byte[] quarterlyPack() throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            for (int q = 1; q <= 5; q++) {
+                Sheet sheet = wb.createSheet("Q" + q);
+                Row header = sheet.createRow(0);
+                header.createCell(0).setCellValue("Quarter " + q);
+                header.createCell(1).setCellValue("Amount");
+                int rows = q == 3 ? 300 : 10;
+                for (int r = 1; r <= rows; r++) {
+                    Row row = sheet.createRow(r);
+                    row.createCell(0).setCellValue("Item " + r);
+                    row.createCell(1).setCellValue(r * q);
+                }
+            }
+            return bytes(wb);
+        }
+    }
+
+    /**
+     * Landscape A4 at 50% with a page break before the fourth row.
+     */
+    private static byte[] printedSheet(boolean xlsx) throws Exception {
+        try (Workbook wb = xlsx ? new XSSFWorkbook() : new HSSFWorkbook()) {
+            Sheet sheet = wb.createSheet();
+            for (int r = 0; r < 6; r++) {
+                Row row = sheet.createRow(r);
+                row.createCell(0).setCellValue("Item " + r);
+                row.createCell(1).setCellValue(r);
+            }
+            sheet.setColumnWidth(0, 20 * 256);
+            sheet.setAutobreaks(false);
+            sheet.setFitToPage(false);
+            sheet.getPrintSetup().setPaperSize(PrintSetup.A4_PAPERSIZE);
+            sheet.getPrintSetup().setLandscape(true);
+            sheet.getPrintSetup().setScale((short) 50);
+            // XSSF breaks below the row, HSSF above it
+            sheet.setRowBreak(xlsx ? 2 : 3);
+            return bytes(wb);
+        }
+    }
+
+    private static byte[] longSheet(int rows) throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet();
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Number");
+            header.createCell(1).setCellValue("Square");
+            sheet.createFreezePane(0, 1);
+            for (int r = 1; r <= rows; r++) {
+                Row row = sheet.createRow(r);
+                row.createCell(0).setCellValue(r);
+                row.createCell(1).setCellValue(r * r);
+            }
+            return bytes(wb);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.malltshik.xls2pdf.font;
+
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Font;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class FontRegistryTest {
+
+    static final Path DEJAVU = Paths.get("/usr/share/fonts/truetype/dejavu");
+
+    private FontRegistry registry;
+
+    @Before
+    public void scan() {
+        assumeTrue("DejaVu fonts are not installed", Files.isDirectory(DEJAVU));
+        registry = FontRegistry.of(DEJAVU);
+    }
+
+    @Test
+    public void scanOnce() {
+        assertThat(FontRegistry.of(DEJAVU.resolve("../dejavu")), sameInstance(registry));
+        assertThat(registry.getFamilies(), hasItem("dejavu sans"));
+        assertThat(registry.isRegistered("DejaVu Sans"), is(true));
+        assertThat(registry.isRegistered("Calibri"), is(false));
+    }
+
+    @Test
+    public void selectFace() {
+        Font regular = registry.getFont("DejaVu Sans", 10, Font.NORMAL, BaseColor.BLACK);
+        Font bold = registry.getFont("dejavu sans", 10, Font.BOLD, BaseColor.BLACK);
+        Font italic = registry.getFont("DejaVu Sans", 10, Font.ITALIC | Font.UNDERLINE, BaseColor.BLACK);
+
+        assertThat(bold.getBaseFont(), not(sameInstance(regular.getBaseFont())));
+        assertThat(bold.getStyle(), is(Font.NORMAL));
+        assertThat(italic.getBaseFont(), sameInstance(regular.getBaseFont()));
+        assertThat(italic.getStyle(), is(Font.ITALIC | Font.UNDERLINE));
+        assertThat(regular.getBaseFont(), sameInstance(registry.getBaseFont("DejaVu Sans", false, false)));
+    }
+
+    @Test
+    public void fallBack() {
+        FontRegistry serif = registry.withFallback("DejaVu Serif");
+
+        assertThat(serif.getBaseFont("Calibri", false, false),
+                sameInstance(registry.getBaseFont("DejaVu Serif", false, false)));
+        assertThat(serif.getBaseFont(null, true, false),
+                sameInstance(registry.getBaseFont("DejaVu Serif", true, false)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fallBackToUnknownFamily() {
+        registry.withFallback("Calibri");
+    }
+}
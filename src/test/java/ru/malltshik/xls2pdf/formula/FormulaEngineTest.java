@@ -0,0 +1,51 @@
+package ru.malltshik.xls2pdf.formula;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FormulaEngineTest {
+
+    private XSSFWorkbook wb;
+    private Cell product;
+    private Cell label;
+
+    @Before
+    public void setUp() {
+        wb = new XSSFWorkbook();
+        Row row = wb.createSheet().createRow(0);
+        row.createCell(0).setCellValue(2);
+        product = row.createCell(1);
+        product.setCellFormula("A1*3");
+        label = row.createCell(2);
+        label.setCellFormula("\"total\"");
+    }
+
+    @Test
+    public void evaluate() {
+        FormulaEngine engine = new FormulaEngine(wb, FormulaEvaluationPolicy.EVALUATE);
+        assertThat(engine.text(product), is("6.000"));
+        assertThat(engine.text(label), is("total"));
+    }
+
+    @Test
+    public void cachedOnly() {
+        FormulaEngine engine = new FormulaEngine(wb, FormulaEvaluationPolicy.CACHED_ONLY);
+        engine.evaluateAll();
+        assertThat(engine.text(product), is("0.000"));
+    }
+
+    @Test
+    public void evaluateOnMissingCache() {
+        FormulaEngine engine = new FormulaEngine(wb, FormulaEvaluationPolicy.EVALUATE_ON_MISSING_CACHE);
+        assertThat(engine.text(product), is("6.000"));
+
+        product.setCellValue(42);
+        assertThat(engine.text(product), is("42.000"));
+    }
+}
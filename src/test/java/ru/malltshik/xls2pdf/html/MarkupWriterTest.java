@@ -0,0 +1,36 @@
+package ru.malltshik.xls2pdf.html;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MarkupWriterTest {
+
+    @Test
+    public void escapesTextOnly() throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        try (MarkupWriter out = new MarkupWriter(target, 16)) {
+            out.raw("<td colspan=\"").number(-120).raw("\">").text("R&D <\u041e\u0442\u0447\u0451\u0442> \"Q1\"\u0001 \ud83d\udcc8").raw("</td>");
+        }
+        assertThat(new String(target.toByteArray(), StandardCharsets.UTF_8),
+                is("<td colspan=\"-120\">R&amp;D &lt;\u041e\u0442\u0447\u0451\u0442&gt; &quot;Q1&quot; \ud83d\udcc8</td>"));
+    }
+
+    @Test
+    public void largeFragments() throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        StringBuilder expected = new StringBuilder();
+        try (MarkupWriter out = new MarkupWriter(target, 16)) {
+            for (int i = 0; i < 100; i++) {
+                out.raw(MarkupWriter.bytes("fragment longer than the buffer " + i)).number(i);
+                expected.append("fragment longer than the buffer ").append(i).append(i);
+            }
+            assertThat(out.size(), is((long) expected.length()));
+        }
+        assertThat(new String(target.toByteArray(), StandardCharsets.UTF_8), is(expected.toString()));
+    }
+}
@@ -0,0 +1,115 @@
+package ru.malltshik.xls2pdf.metrics;
+
+import com.itextpdf.text.pdf.PdfReader;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import ru.malltshik.xls2pdf.converter.ConversionEngine;
+import ru.malltshik.xls2pdf.converter.ConversionOptions;
+import ru.malltshik.xls2pdf.converter.OutputFormat;
+import ru.malltshik.xls2pdf.converter.PdfBackend;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static ru.malltshik.xls2pdf.TestWorkbooks.bytes;
+
+public class HistogramListenerTest {
+
+    private static final int ROWS = 300;
+
+    @Test
+    public void recordHtml() throws Exception {
+        List<ConversionMetrics> recorded = new ArrayList<>();
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        new ConversionEngine(ConversionOptions.defaults().withListener(recorded::add))
+                .convert(new ByteArrayInputStream(workbook()), target, OutputFormat.HTML);
+
+        assertThat(recorded.size(), equalTo(1));
+        ConversionMetrics metrics = recorded.get(0);
+        assertThat(metrics.isFailed(), is(false));
+        assertThat(metrics.getCount(ConversionCounter.SHEETS), equalTo(1L));
+        assertThat(metrics.getCount(ConversionCounter.ROWS), equalTo((long) ROWS));
+        assertThat(metrics.getCount(ConversionCounter.CELLS), equalTo(ROWS * 3L - 3));
+        assertThat(metrics.getCount(ConversionCounter.MERGED_REGIONS), equalTo(1L));
+        assertThat(metrics.getCount(ConversionCounter.FORMULAS_EVALUATED), equalTo((long) ROWS));
+        assertThat(metrics.getCount(ConversionCounter.HTML_BYTES), equalTo((long) target.size()));
+        assertThat(metrics.getCount(ConversionCounter.STYLES_EMITTED) > 0, is(true));
+        assertThat(metrics.getNanos(ConversionStage.LOAD) > 0, is(true));
+        assertThat(metrics.getNanos(ConversionStage.CONTENT) > 0, is(true));
+        assertThat(metrics.getNanos(ConversionStage.PDF_LAYOUT), equalTo(0L));
+        assertThat(metrics.getMaxHeapBytes() > 0, is(true));
+    }
+
+    @Test
+    public void recordPdfPages() throws Exception {
+        for (PdfBackend backend : PdfBackend.values()) {
+            List<ConversionMetrics> recorded = new ArrayList<>();
+            ByteArrayOutputStream target = new ByteArrayOutputStream();
+            new ConversionEngine(ConversionOptions.defaults().withListener(recorded::add).withPdfBackend(backend))
+                    .convert(new ByteArrayInputStream(workbook()), target, OutputFormat.PDF);
+
+            PdfReader pdf = new PdfReader(target.toByteArray());
+            ConversionMetrics metrics = recorded.get(0);
+            assertThat(backend.name(), metrics.getCount(ConversionCounter.PDF_PAGES),
+                    equalTo((long) pdf.getNumberOfPages()));
+            assertThat(backend.name(), metrics.getCount(ConversionCounter.ROWS), equalTo((long) ROWS));
+            ConversionStage layout = backend == PdfBackend.DIRECT ? ConversionStage.PDF_LAYOUT
+                    : ConversionStage.XML_WORKER;
+            assertThat(backend.name(), metrics.getNanos(layout) > 0, is(true));
+            pdf.close();
+        }
+    }
+
+    @Test
+    public void collectHistograms() throws Exception {
+        HistogramListener histograms = new HistogramListener();
+        ConversionEngine engine = new ConversionEngine(ConversionOptions.defaults().withListener(histograms));
+        for (int i = 0; i < 3; i++)
+            engine.convert(new ByteArrayInputStream(workbook()), new ByteArrayOutputStream(), OutputFormat.HTML);
+        try {
+            engine.convert(new ByteArrayInputStream(workbook()), new ByteArrayOutputStream(), OutputFormat.HTML,
+                    engine.getOptions().withSheets(5));
+        } catch (IllegalArgumentException expected) {
+            // no such sheet
+        }
+
+        assertThat(histograms.getConversions().getCount(), equalTo(4L));
+        assertThat(histograms.getFailures(), equalTo(1L));
+        assertThat(histograms.getStage(ConversionStage.CONTENT).getCount(), equalTo(3L));
+        assertThat(histograms.getCount(ConversionCounter.ROWS), equalTo(3L * ROWS));
+        String scraped = histograms.scrape();
+        assertThat(scraped, containsString("xls2pdf_conversion_seconds_count 4\n"));
+        assertThat(scraped, containsString("xls2pdf_stage_seconds_bucket{stage=\"content\",le=\"+Inf\"} 3\n"));
+        assertThat(scraped, containsString("xls2pdf_rows_total " + 3 * ROWS + "\n"));
+        assertThat(scraped, containsString("xls2pdf_conversion_failures_total 1\n"));
+    }
+
+    @Test
+    public void recordNothingWithoutListener() {
+        ConversionRecorder recorder = ConversionRecorder.start(ConversionListener.NONE);
+        assertThat(recorder.isActive(), is(false));
+        assertThat(recorder.clock(), equalTo(0L));
+        assertThat(ConversionRecorder.start(ConversionListener.NONE), sameInstance(recorder));
+    }
+
+    private static byte[] workbook() throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("Counted");
+            for (int r = 0; r < ROWS; r++) {
+                Row row = sheet.createRow(r);
+                row.createCell(0).setCellValue("Row " + r);
+                row.createCell(1).setCellValue(r);
+                row.createCell(2).setCellFormula("B" + (r + 1) + "*2");
+            }
+            sheet.addMergedRegion(new CellRangeAddress(0, 1, 0, 1));
+            return bytes(wb);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ru.malltshik.xls2pdf.model;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MergedRegionIndexTest {
+
+    private final CellRangeAddress header = new CellRangeAddress(0, 0, 0, 10);
+    private final CellRangeAddress block = new CellRangeAddress(2, 4, 1, 2);
+    private final CellRangeAddress subtotal = new CellRangeAddress(3, 3, 5, 7);
+
+    private final MergedRegionIndex index = MergedRegionIndex.of(Arrays.asList(subtotal, header, block));
+
+    @Test
+    public void regionAt() {
+        assertThat(index.size(), is(3));
+        assertThat(index.regionAt(0, 0), sameInstance(header));
+        assertThat(index.regionAt(0, 10), sameInstance(header));
+        assertThat(index.regionAt(0, 11), nullValue());
+        assertThat(index.regionAt(1, 1), nullValue());
+        assertThat(index.regionAt(3, 2), sameInstance(block));
+        assertThat(index.regionAt(3, 4), nullValue());
+        assertThat(index.regionAt(3, 6), sameInstance(subtotal));
+        assertThat(index.regionAt(5, 1), nullValue());
+        assertThat(index.regionAt(-1, 0), nullValue());
+    }
+
+    @Test
+    public void clip() {
+        MergedRegionIndex clipped = index.clip(new CellRangeAddress(3, 10, 2, 6));
+
+        assertThat(clipped.size(), is(2));
+        assertThat(clipped.regionAt(3, 2).formatAsString(), is("C4:C5"));
+        assertThat(clipped.regionAt(3, 1), nullValue());
+        assertThat(clipped.regionAt(3, 6).formatAsString(), is("F4:G4"));
+        assertThat(clipped.regionAt(3, 7), nullValue());
+        assertThat(index.clip(new CellRangeAddress(0, 1, 10, 20)).isEmpty(), is(true));
+    }
+
+    @Test
+    public void isHiddenByRowSpan() {
+        assertThat(index.isHiddenByRowSpan(2, 1), is(false));
+        assertThat(index.isHiddenByRowSpan(3, 1), is(true));
+        assertThat(index.isHiddenByRowSpan(4, 2), is(true));
+        assertThat(index.isHiddenByRowSpan(3, 5), is(false));
+        assertThat(index.isHiddenByRowSpan(3, 3), is(false));
+    }
+
+    @Test
+    public void empty() {
+        MergedRegionIndex empty = MergedRegionIndex.of(Collections.emptyList());
+        assertThat(empty.isEmpty(), is(true));
+        assertThat(empty.regionAt(0, 0), nullValue());
+    }
+
+    @Test
+    public void wholeColumn() {
+        CellRangeAddress column = CellRangeAddress.valueOf("A1:A1048576");
+        CellRangeAddress tail = CellRangeAddress.valueOf("C1000:D2000");
+        MergedRegionIndex tall = MergedRegionIndex.of(Arrays.asList(tail, block, column, subtotal));
+
+        assertThat(tall.size(), is(4));
+        assertThat(tall.regionAt(1048575, 0), sameInstance(column));
+        assertThat(tall.regionAt(5, 0), sameInstance(column));
+        assertThat(tall.regionAt(5, 1), nullValue());
+        assertThat(tall.regionAt(2, 1), sameInstance(block));
+        assertThat(tall.regionAt(3, 6), sameInstance(subtotal));
+        assertThat(tall.regionAt(1500, 3), sameInstance(tail));
+        assertThat(tall.regionAt(2000, 3), nullValue());
+        assertThat(tall.isHiddenByRowSpan(1, 0), is(true));
+
+        MergedRegionIndex clipped = tall.clip(new CellRangeAddress(1990, 2010, 0, 2));
+        assertThat(clipped.size(), is(2));
+        assertThat(clipped.regionAt(1990, 0).formatAsString(), is("A1991:A2011"));
+        assertThat(clipped.regionAt(1990, 2).formatAsString(), is("C1991:C2000"));
+    }
+}
@@ -0,0 +1,164 @@
+package ru.malltshik.xls2pdf.render;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import ru.malltshik.xls2pdf.formula.FormulaEvaluationPolicy;
+import ru.malltshik.xls2pdf.stream.XlsxStreamingReader;
+import ru.malltshik.xls2pdf.style.RenderStyle;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static ru.malltshik.xls2pdf.TestWorkbooks.bytes;
+
+public class SheetModelTest {
+
+    @Test
+    public void modelOfUserModel() throws Exception {
+        try (UserModelReader reader = new UserModelReader(workbook(), FormulaEvaluationPolicy.EVALUATE, false)) {
+            SheetModel model = reader.model(0);
+
+            assertThat(model.getRowCount(), is(3));
+            assertThat(model.getCellCount(), is(9));
+            assertThat(model.getRowNum(2), is(2));
+            assertThat(model.getText(model.getFirstCell(1)), is("north"));
+            assertThat(model.isNumber(model.getFirstCell(1)), is(false));
+            assertThat(model.getValue(model.getFirstCell(1) + 1), is(1.5));
+            assertThat(model.getText(model.getEndCell(2) - 1), is("4.000"));
+            assertThat(model.getValue(model.getEndCell(2) - 1), is(4.0));
+            assertThat(model.getLayout().getMergedRegions().regionAt(0, 2), notNullValue());
+        }
+    }
+
+    @Test
+    public void poolsEqualTexts() throws Exception {
+        try (UserModelReader reader = new UserModelReader(workbook(), FormulaEvaluationPolicy.EVALUATE, false)) {
+            RenderStyle style = reader.getStyles().getDefault();
+            SheetModel.Builder builder = new SheetModel.Builder(reader.getStyles());
+            builder.startRow(0);
+            builder.cell(0, new String("north"), style);
+            builder.cell(1, new String("north"), style);
+            builder.endRow(0);
+            builder.startSheet(reader.model(0).getLayout());
+            SheetModel model = builder.build();
+
+            assertThat(model.getText(1), sameInstance(model.getText(0)));
+            assertThat(model.isNumber(0), is(false));
+        }
+    }
+
+    @Test
+    public void replayLeavesOutMergedCells() throws Exception {
+        try (UserModelReader reader = new UserModelReader(workbook(), FormulaEvaluationPolicy.EVALUATE, false)) {
+            List<String> cells = cells(reader.model(0));
+
+            assertThat(cells, not(hasItem("0:2 hidden")));
+            assertThat(cells, hasItem("0:0 Region"));
+            assertThat(cells, hasItem("2:2 4.000=4.0"));
+        }
+    }
+
+    @Test
+    public void streamingReaderBuildsSameModel() throws Exception {
+        SheetModel userModel;
+        try (UserModelReader reader = new UserModelReader(workbook(), FormulaEvaluationPolicy.CACHED_ONLY, true)) {
+            userModel = reader.model(0);
+        }
+        byte[] xlsx;
+        try (XSSFWorkbook wb = workbook()) {
+            xlsx = bytes(wb);
+        }
+        SheetModel streamed;
+        try (WorkbookReader reader = XlsxStreamingReader.open(new ByteArrayInputStream(xlsx))) {
+            streamed = reader.model(0);
+        }
+
+        assertThat(cells(streamed), equalTo(cells(userModel)));
+    }
+
+    @Test
+    public void extractedWorkbookOutlivesReader() throws Exception {
+        ExtractedWorkbook extracted = ExtractedWorkbook.extract(
+                new UserModelReader(workbook(), FormulaEvaluationPolicy.EVALUATE, false), Collections.singleton(0));
+
+        List<String> first = new ArrayList<>();
+        extracted.read(0, recorder(first));
+        List<String> second = new ArrayList<>();
+        extracted.read(0, recorder(second));
+
+        assertThat(second, equalTo(first));
+        assertThat(extracted.getSheetNames(), equalTo(Collections.singletonList("Regions")));
+        assertThat(extracted.usedStyles(Collections.singleton(0)).size(), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sheetNotExtracted() throws Exception {
+        ExtractedWorkbook extracted = ExtractedWorkbook.extract(
+                new UserModelReader(workbook(), FormulaEvaluationPolicy.EVALUATE, false), Collections.emptyList());
+        extracted.model(0);
+    }
+
+    private static List<String> cells(SheetModel model) {
+        List<String> cells = new ArrayList<>();
+        model.replay(recorder(cells));
+        return cells;
+    }
+
+    private static SheetContentHandler recorder(List<String> cells) {
+        return new SheetContentHandler() {
+            private int rowNum;
+
+            @Override
+            public void startSheet(SheetLayout layout) {
+            }
+
+            @Override
+            public void startRow(int rowNum) {
+                this.rowNum = rowNum;
+            }
+
+            @Override
+            public void cell(int column, String text, RenderStyle style) {
+                cells.add(rowNum + ":" + column + " " + text);
+            }
+
+            @Override
+            public void cell(int column, String text, double value, RenderStyle style) {
+                cells.add(rowNum + ":" + column + " " + text + "=" + value);
+            }
+
+            @Override
+            public void endRow(int rowNum) {
+            }
+
+            @Override
+            public void endSheet() {
+            }
+        };
+    }
+
+    private static XSSFWorkbook workbook() {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        Sheet sheet = wb.createSheet("Regions");
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("Region");
+        header.createCell(1).setCellValue("Sales");
+        header.createCell(2).setCellValue("hidden");
+        sheet.addMergedRegion(new CellRangeAddress(0, 0, 1, 2));
+        for (int r = 1; r <= 2; r++) {
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue("north");
+            row.createCell(1).setCellValue(r * 1.5);
+            row.createCell(2).setCellFormula("B" + (r + 1) + "+1");
+        }
+        wb.getCreationHelper().createFormulaEvaluator().evaluateAll();
+        return wb;
+    }
+}
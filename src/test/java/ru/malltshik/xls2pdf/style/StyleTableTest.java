@@ -0,0 +1,118 @@
+package ru.malltshik.xls2pdf.style;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import ru.malltshik.xls2pdf.render.UserModelReader;
+
+import java.awt.Color;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class StyleTableTest {
+
+    @Test
+    public void compileXssfStyle() throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            XSSFFont font = wb.createFont();
+            font.setColor(new XSSFColor(new Color(0xFF, 0, 0)));
+            XSSFCellStyle style = (XSSFCellStyle) styled(wb, font);
+            style.setFillForegroundColor(new XSSFColor(new Color(0xFF, 0xFF, 0)));
+            style.setTopBorderColor(new XSSFColor(new Color(0, 0, 0xFF)));
+
+            StyleTable styles = StyleTable.compile(wb, UserModelReader.helper(wb));
+            assertCompiled(styles, style);
+            assertThat(styles.get(style).getBorderColor(RenderStyle.TOP), equalTo("#0000FF"));
+        }
+    }
+
+    @Test
+    public void compileHssfStyle() throws Exception {
+        try (HSSFWorkbook wb = new HSSFWorkbook()) {
+            Font font = wb.createFont();
+            font.setColor(HSSFColor.HSSFColorPredefined.RED.getIndex());
+            CellStyle style = styled(wb, font);
+            style.setFillForegroundColor(HSSFColor.HSSFColorPredefined.YELLOW.getIndex());
+            style.setTopBorderColor(HSSFColor.HSSFColorPredefined.BLUE.getIndex());
+
+            StyleTable styles = StyleTable.compile(wb, UserModelReader.helper(wb));
+            assertCompiled(styles, style);
+            assertThat(styles.get(style).getBorderColor(RenderStyle.TOP), equalTo("#0000ff"));
+        }
+    }
+
+    @Test
+    public void defaultStyle() throws Exception {
+        for (boolean xlsx : new boolean[]{true, false}) {
+            try (Workbook wb = xlsx ? new XSSFWorkbook() : new HSSFWorkbook()) {
+                StyleTable styles = StyleTable.compile(wb, UserModelReader.helper(wb));
+                RenderStyle style = styles.getDefault();
+                assertThat(styles.size(), equalTo(wb.getNumCellStyles()));
+                assertThat(styles.get(null), sameInstance(style));
+                assertThat(styles.get(styles.size() + 10), sameInstance(style));
+                assertThat(style.getAlignment(), equalTo(HorizontalAlignment.GENERAL));
+                assertThat(style.getInlineAttributes(), equalTo("style=\"text-align: left;\""));
+                assertThat(style.isBold(), equalTo(false));
+                assertThat(style.isWrapText(), equalTo(false));
+                assertThat(style.getFillColor(), nullValue());
+                assertThat(style.getBorder(RenderStyle.TOP), equalTo(BorderStyle.NONE));
+                assertThat(style.getFormat().apply(1.5).text, equalTo("1.5"));
+            }
+        }
+    }
+
+    private static void assertCompiled(StyleTable styles, CellStyle source) {
+        RenderStyle style = styles.get(source);
+        assertThat(style.getIndex(), equalTo(source.getIndex()));
+        assertThat(style.getClassName(), equalTo(String.format("style_%02d", source.getIndex())));
+        assertThat(style.getCss(), containsString("font-weight: bold;"));
+        assertThat(style.getCss(), containsString("font-style: italic;"));
+        assertThat(style.getCss(), containsString("font-size: 12pt;"));
+        assertThat(style.getCss(), containsString("font-family: Arial;"));
+        assertThat(style.getCss(), containsString("border-left: none;"));
+        assertThat(style.getCss(), containsString("solid 1pt;"));
+        assertThat(style.getCss(), containsString("background-color: #ffff00;"));
+        assertThat(style.getCss(), containsString("color: #ff0000;"));
+        assertThat(style.getInlineAttributes(), equalTo("style=\"text-align: right;\""));
+        assertThat(style.getAlignment(), equalTo(HorizontalAlignment.RIGHT));
+        assertThat(style.getVerticalAlignment(), equalTo(VerticalAlignment.TOP));
+        assertThat(style.getRotation(), equalTo((short) 90));
+        assertThat(style.isWrapText(), equalTo(true));
+        assertThat(style.isBold(), equalTo(true));
+        assertThat(style.isItalic(), equalTo(true));
+        assertThat(style.getFontSize(), equalTo((short) 12));
+        assertThat(style.getFontName(), equalTo("Arial"));
+        assertThat(style.getFontColor(), equalTo("#ff0000"));
+        assertThat(style.getFillColor(), equalTo("#ffff00"));
+        assertThat(style.getBorder(RenderStyle.TOP), equalTo(BorderStyle.THIN));
+        assertThat(style.getBorder(RenderStyle.LEFT), equalTo(BorderStyle.NONE));
+        assertThat(style.getFormat().apply(1.5).text, equalTo("1.50"));
+    }
+
+    /**
+     * Bold italic 12pt Arial, right and top aligned, wrapped and rotated, a thin top border, a solid fill
+     * and two decimals.
+     */
+    private static CellStyle styled(Workbook wb, Font font) {
+        font.setFontName("Arial");
+        font.setFontHeightInPoints((short) 12);
+        font.setBold(true);
+        font.setItalic(true);
+        CellStyle style = wb.createCellStyle();
+        style.setFont(font);
+        style.setAlignment(HorizontalAlignment.RIGHT);
+        style.setVerticalAlignment(VerticalAlignment.TOP);
+        style.setWrapText(true);
+        style.setRotation((short) 90);
+        style.setBorderTop(BorderStyle.THIN);
+        style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        style.setDataFormat(wb.createDataFormat().getFormat("0.00"));
+        return style;
+    }
+}
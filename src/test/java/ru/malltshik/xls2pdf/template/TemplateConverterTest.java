@@ -0,0 +1,147 @@
+package ru.malltshik.xls2pdf.template;
+
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import org.jxls.common.Context;
+import ru.malltshik.xls2pdf.converter.ConversionEngine;
+import ru.malltshik.xls2pdf.converter.OutputFormat;
+import ru.malltshik.xls2pdf.converter.Xls2PdfConverter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static ru.malltshik.xls2pdf.TestWorkbooks.bytes;
+
+public class TemplateConverterTest {
+
+    @Test
+    public void convertFilledTemplate() throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        new TemplateConverter().convert(new ByteArrayInputStream(template()), context(), target,
+                OutputFormat.HTML);
+
+        String html = target.toString("UTF-8");
+        assertThat(html, containsString("Ivanov"));
+        assertThat(html, containsString("Petrov"));
+        assertThat(html, containsString("1500"));
+        assertThat(html, not(containsString("${")));
+    }
+
+    @Test
+    public void leaveWorkbookOpen() throws Exception {
+        try (Workbook workbook = TemplateConverter.fill(new ByteArrayInputStream(template()), context())) {
+            ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+            new Xls2PdfConverter(workbook, pdf).convert();
+            PdfReader reader = new PdfReader(pdf.toByteArray());
+            assertThat(PdfTextExtractor.getTextFromPage(reader, 1), containsString("Petrov"));
+            reader.close();
+
+            ByteArrayOutputStream html = new ByteArrayOutputStream();
+            new ConversionEngine().convert(workbook, html, OutputFormat.HTML);
+            assertThat(html.toString("UTF-8"), containsString("Ivanov"));
+            assertThat(workbook.getSheetAt(0).getRow(2).getCell(0).getStringCellValue(), equalTo("Petrov"));
+        }
+    }
+
+    @Test
+    public void fillAllAreasBeforeFormulas() throws Exception {
+        Context context = context();
+        List<Map<String, Object>> bonuses = new ArrayList<>();
+        for (int i = 1; i <= 3; i++)
+            bonuses.add(employee("Bonus " + i, 100 * i));
+        context.putVar("bonuses", bonuses);
+
+        try (Workbook workbook = TemplateConverter.fill(new ByteArrayInputStream(twoAreaTemplate()), context)) {
+            Sheet sheet = workbook.getSheetAt(0);
+            assertThat(sheet.getRow(4).getCell(3).getStringCellValue(), equalTo("Bonus 3"));
+            assertThat(sheet.getRow(3).getCell(1).getCellFormula(), equalTo("SUM(B2:B3)+SUM(E3:E5)"));
+            assertThat(sheet.getRow(5).getCell(4).getCellFormula(), equalTo("SUM(E3:E5)+SUM(B2:B3)"));
+        }
+    }
+
+    private static Context context() {
+        List<Map<String, Object>> employees = new ArrayList<>();
+        employees.add(employee("Ivanov", 1000));
+        employees.add(employee("Petrov", 500));
+        Context context = new Context();
+        context.putVar("employees", employees);
+        return context;
+    }
+
+    private static Map<String, Object> employee(String name, int salary) {
+        Map<String, Object> employee = new HashMap<>();
+        employee.put("name", name);
+        employee.put("salary", salary);
+        return employee;
+    }
+
+    /**
+     * A header, a row per employee and a total below them.
+     */
+    private static byte[] template() throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("Salaries");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Name");
+            header.createCell(1).setCellValue("Salary");
+            Row row = sheet.createRow(1);
+            row.createCell(0).setCellValue("${e.name}");
+            row.createCell(1).setCellValue("${e.salary}");
+            Row total = sheet.createRow(2);
+            total.createCell(0).setCellValue("Total");
+            total.createCell(1).setCellFormula("SUM(B2)");
+            comment(wb, sheet, header.getCell(0), "jx:area(lastCell=\"B3\")");
+            comment(wb, sheet, row.getCell(0), "jx:each(items=\"employees\" var=\"e\" lastCell=\"B2\")");
+            return bytes(wb);
+        }
+    }
+
+    /**
+     * Salaries and bonuses side by side, each total sums both areas.
+     */
+    private static byte[] twoAreaTemplate() throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("Salaries");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Name");
+            header.createCell(1).setCellValue("Salary");
+            header.createCell(3).setCellValue("Bonuses");
+            Row row = sheet.createRow(1);
+            row.createCell(0).setCellValue("${e.name}");
+            row.createCell(1).setCellValue("${e.salary}");
+            row.createCell(3).setCellValue("Name");
+            Row total = sheet.createRow(2);
+            total.createCell(0).setCellValue("Total");
+            total.createCell(1).setCellFormula("SUM(B2)+SUM(E3)");
+            total.createCell(3).setCellValue("${b.name}");
+            total.createCell(4).setCellValue("${b.salary}");
+            Row bonusTotal = sheet.createRow(3);
+            bonusTotal.createCell(3).setCellValue("Total");
+            bonusTotal.createCell(4).setCellFormula("SUM(E3)+SUM(B2)");
+            comment(wb, sheet, header.getCell(0), "jx:area(lastCell=\"B3\")");
+            comment(wb, sheet, row.getCell(0), "jx:each(items=\"employees\" var=\"e\" lastCell=\"B2\")");
+            comment(wb, sheet, header.getCell(3), "jx:area(lastCell=\"E4\")");
+            comment(wb, sheet, total.getCell(3), "jx:each(items=\"bonuses\" var=\"b\" lastCell=\"E3\")");
+            return bytes(wb);
+        }
+    }
+
+    private static void comment(Workbook wb, Sheet sheet, Cell cell, String text) {
+        CreationHelper factory = wb.getCreationHelper();
+        ClientAnchor anchor = factory.createClientAnchor();
+        anchor.setRow1(cell.getRowIndex());
+        anchor.setCol1(cell.getColumnIndex());
+        Comment comment = sheet.createDrawingPatriarch().createCellComment(anchor);
+        comment.setString(factory.createRichTextString(text));
+        cell.setCellComment(comment);
+    }
+}
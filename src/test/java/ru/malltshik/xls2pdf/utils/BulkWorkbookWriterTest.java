@@ -0,0 +1,88 @@
+package ru.malltshik.xls2pdf.utils;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Date;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BulkWorkbookWriterTest {
+
+    @Test
+    public void writeRowsWithFewStyles() throws Exception {
+        CellStyleSpec header = CellStyleSpec.defaults().withBold(true).withBorder(BorderStyle.THIN);
+        Date date = new Date(1500000000000L);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BulkWorkbookWriter writer = new BulkWorkbookWriter(10)) {
+            BulkWorkbookWriter.RowAppender titles = writer.sheet("Payments").row();
+            for (String title : new String[]{"Name", "Amount", "Count", "Id", "Date"})
+                titles.style(header).add(title);
+            for (int r = 1; r <= 5000; r++)
+                writer.appendRow("Item " + r, r * 1.5, r, (long) r << 20, r % 2 == 0 ? null : date);
+            writer.sheet("Empty");
+            assertThat(writer.getRows(), equalTo(5001L));
+            assertThat(writer.getStyles().size(), equalTo(5));
+            writer.write(out);
+        }
+
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            assertThat(wb.getNumberOfSheets(), equalTo(2));
+            assertThat(wb.getNumCellStyles(), equalTo(5));
+            Sheet sheet = wb.getSheet("Payments");
+            assertThat(sheet.getLastRowNum(), equalTo(5000));
+            assertThat(sheet.getRow(0).getCell(1).getCellStyle().getBorderTopEnum(), equalTo(BorderStyle.THIN));
+            assertThat(wb.getFontAt(sheet.getRow(0).getCell(1).getCellStyle().getFontIndex()).getBold(),
+                    equalTo(true));
+            Row row = sheet.getRow(4999);
+            assertThat(row.getCell(0).getStringCellValue(), equalTo("Item 4999"));
+            assertThat(row.getCell(1).getNumericCellValue(), equalTo(4999 * 1.5));
+            assertThat(row.getCell(1).getCellStyle().getDataFormatString(),
+                    equalTo(BulkWorkbookWriter.DOUBLE_FORMAT));
+            assertThat(row.getCell(2).getNumericCellValue(), equalTo(4999.0));
+            assertThat(row.getCell(3).getNumericCellValue(), equalTo((double) (4999L << 20)));
+            assertThat(row.getCell(4).getDateCellValue(), equalTo(date));
+            assertThat(row.getCell(4).getCellStyle().getDataFormatString(),
+                    equalTo(BulkWorkbookWriter.DATE_FORMAT));
+            assertThat(sheet.getRow(5000).getCell(4), nullValue());
+            assertThat(sheet.getRow(5000).getCell(0).getCellTypeEnum(), equalTo(CellType.STRING));
+        }
+    }
+
+    @Test
+    public void internStyles() throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            internStyles(wb, 0);
+        }
+        try (HSSFWorkbook wb = new HSSFWorkbook()) {
+            internStyles(wb, 15);
+        }
+    }
+
+    private static void internStyles(Workbook wb, int defaultIndex) {
+        int created = wb.getNumCellStyles();
+        StyleCache cache = new StyleCache(wb);
+        CellStyleSpec amount = CellStyleSpec.defaults().withFont("Times New Roman", 11).withDataFormat("0.00");
+        assertThat(cache.style(amount), sameInstance(cache.style(CellStyleSpec.defaults()
+                .withDataFormat("0.00").withFont("Times New Roman", 11))));
+        assertThat((int) cache.style(CellStyleSpec.defaults()).getIndex(), equalTo(defaultIndex));
+        assertThat(cache.style(CellStyleSpec.defaults()).getDataFormatString(),
+                equalTo(CellStyleSpec.GENERAL_FORMAT));
+        assertThat(cache.style(amount.withBold(true)).getFontIndex(),
+                not(equalTo(cache.style(amount).getFontIndex())));
+        assertThat(cache.style(amount.withWrapText(true)).getFontIndex(),
+                equalTo(cache.style(amount).getFontIndex()));
+        assertThat(cache.dataFormat("0.00"), equalTo(cache.style(amount).getDataFormat()));
+        assertThat(wb.getNumCellStyles() - created, equalTo(3));
+        assertThat(cache.size(), equalTo(4));
+    }
+}